@@ -1,35 +1,150 @@
 package com.chatbot.api;
 
 
+import com.chatbot.dto.MessageBatchRequest;
+import com.chatbot.dto.MessageBatchResponse;
+import com.chatbot.dto.MessageImportRequest;
+import com.chatbot.dto.MessageJobResponse;
 import com.chatbot.dto.MessageRequest;
 import com.chatbot.dto.MessageResponse;
 import com.chatbot.dto.MessagesResponse;
+import com.chatbot.dto.MessagesSliceResponse;
 import com.chatbot.service.ChatMessageService;
+import com.chatbot.service.HistoryETags;
+import com.chatbot.service.IdempotencyService;
+import com.chatbot.service.MessageJobService;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/chat/session/messages")
 public class ChatMessageController {
 
     private final ChatMessageService chatMessageService;
+    private final MessageJobService messageJobService;
+    private final IdempotencyService idempotencyService;
+
+    @Value("${app.history.closed-page-max-age:1d}")
+    private Duration closedPageMaxAge;
 
-    public ChatMessageController(ChatMessageService chatService) {
+    public ChatMessageController(ChatMessageService chatService, MessageJobService messageJobService,
+                                 IdempotencyService idempotencyService) {
         this.chatMessageService = chatService;
+        this.messageJobService = messageJobService;
+        this.idempotencyService = idempotencyService;
     }
 
+    /**
+     * With an {@code Idempotency-Key} header a retried request gets the first one's reply back, marked
+     * with {@code Idempotent-Replayed: true}, instead of a second turn.
+     */
     @PostMapping
-    public ResponseEntity<MessageResponse> sendMessage(@Valid @RequestBody MessageRequest request) {
-        return ResponseEntity.ok(chatMessageService.sendMessage(request));
+    public CompletableFuture<ResponseEntity<MessageResponse>> sendMessage(
+            @Valid @RequestBody MessageRequest request,
+            @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return chatMessageService.sendMessage(request).thenApply(ResponseEntity::ok);
+        }
+        return idempotencyService.execute(idempotencyKey, request, () -> chatMessageService.sendMessage(request))
+                .thenApply(outcome -> outcome.replayed()
+                        ? ResponseEntity.ok().header(IdempotencyService.REPLAYED_HEADER, "true").body(outcome.response())
+                        : ResponseEntity.ok(outcome.response()));
     }
 
+    /**
+     * Up to {@link MessageBatchRequest#MAX_MESSAGES} turns in one call; always {@code 200}, with a status per item.
+     */
+    @PostMapping("/batch")
+    public CompletableFuture<ResponseEntity<MessageBatchResponse>> sendMessages(@Valid @RequestBody MessageBatchRequest request) {
+        return chatMessageService.sendMessages(request).thenApply(ResponseEntity::ok);
+    }
+
+    /**
+     * Queues the turn and answers {@code 202} right away; poll {@code GET /jobs/{jobId}} for the reply.
+     */
+    @PostMapping("/async")
+    public ResponseEntity<MessageJobResponse> submitMessage(@Valid @RequestBody MessageRequest request) {
+        MessageJobResponse job = messageJobService.submit(request);
+        return ResponseEntity.accepted().location(URI.create("/jobs/" + job.getJobId())).body(job);
+    }
+
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMessage(@Valid @RequestBody MessageRequest request) {
+        return chatMessageService.streamMessage(request);
+    }
+
+    /**
+     * Conditional GET: a page whose end is already followed by newer messages never changes, so it is
+     * served with a {@code c-} ETag and a long {@code Cache-Control}; the tail page gets an {@code o-}
+     * ETag and must be revalidated. A matching {@code If-None-Match} is answered {@code 304} before the
+     * page is read; the long {@code Cache-Control} is only sent when the client named the {@code c-} tag
+     * itself, since {@code *} says nothing about whether the page is closed.
+     */
     @GetMapping("/{sessionId}")
-    public MessagesResponse getSessionMessages(
+    public ResponseEntity<MessagesSliceResponse> getSessionMessages(
+            @PathVariable String sessionId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        HistoryETags.PageETags etags = chatMessageService.historyETags(sessionId, cursor, size);
+        if (HistoryETags.names(ifNoneMatch, etags.closed())) {
+            return historyPage(HttpStatus.NOT_MODIFIED, etags.closed(), closedPageCacheControl(), null);
+        }
+        if (HistoryETags.matches(ifNoneMatch, etags.open())) {
+            return historyPage(HttpStatus.NOT_MODIFIED, etags.open(), CacheControl.noCache(), null);
+        }
+        MessagesSliceResponse page = chatMessageService.listMessages(sessionId, cursor, size);
+        return page.isHasNext()
+                ? historyPage(HttpStatus.OK, etags.closed(), closedPageCacheControl(), page)
+                : historyPage(HttpStatus.OK, etags.open(), CacheControl.noCache(), page);
+    }
+
+    @PostMapping("/{sessionId}/import")
+    public ResponseEntity<Void> importMessages(@PathVariable String sessionId,
+                                               @Valid @RequestBody MessageImportRequest request) {
+        chatMessageService.importMessages(sessionId, request);
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Offset paging with totals, kept for existing clients; slows down on deep pages of long sessions.
+     */
+    @GetMapping(value = "/{sessionId}", params = "page")
+    public ResponseEntity<MessagesResponse> getSessionMessagesPage(
             @PathVariable String sessionId,
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "10") int size) {
-        return chatMessageService.listMessages(sessionId, page, size);
+            @RequestParam(defaultValue = "10") int size,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // the totals change with every append, so these pages are never closed
+        String etag = chatMessageService.historyETags(sessionId, "page", page, size).open();
+        if (HistoryETags.matches(ifNoneMatch, etag)) {
+            return historyPage(HttpStatus.NOT_MODIFIED, etag, CacheControl.noCache(), null);
+        }
+        return historyPage(HttpStatus.OK, etag, CacheControl.noCache(), chatMessageService.listMessages(sessionId, page, size));
+    }
+
+    private CacheControl closedPageCacheControl() {
+        return CacheControl.maxAge(closedPageMaxAge).immutable();
+    }
+
+    // Vary keeps a shared cache from handing a page to a caller without a valid API key
+    private static <T> ResponseEntity<T> historyPage(HttpStatus status, String etag, CacheControl cacheControl, T body) {
+        return ResponseEntity.status(status)
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .varyBy("X-API-KEY")
+                .body(body);
     }
 
 //    @GetMapping("/health")
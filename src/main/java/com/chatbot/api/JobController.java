@@ -0,0 +1,38 @@
+package com.chatbot.api;
+
+import com.chatbot.dto.MessageJobResponse;
+import com.chatbot.service.MessageJobService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+@RequestMapping("/jobs")
+public class JobController {
+
+    private final MessageJobService messageJobService;
+
+    @Value("${app.jobs.max-poll-wait-ms:25000}")
+    private long maxPollWaitMs;
+
+    public JobController(MessageJobService messageJobService) {
+        this.messageJobService = messageJobService;
+    }
+
+    /**
+     * Long poll: answers {@code 200} as soon as the job has finished, or {@code 202} with its current
+     * state after {@code waitMs} (capped at {@code app.jobs.max-poll-wait-ms}; 0 returns at once).
+     */
+    @GetMapping("/{jobId}")
+    public CompletableFuture<ResponseEntity<MessageJobResponse>> getJob(
+            @PathVariable String jobId,
+            @RequestParam(required = false) Long waitMs) {
+        long wait = waitMs == null ? maxPollWaitMs : Math.min(Math.max(0, waitMs), maxPollWaitMs);
+        return messageJobService.poll(jobId, Duration.ofMillis(wait))
+                .thenApply(job -> ResponseEntity.status(job.isFinished() ? HttpStatus.OK : HttpStatus.ACCEPTED).body(job));
+    }
+}
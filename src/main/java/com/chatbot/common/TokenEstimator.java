@@ -0,0 +1,22 @@
+package com.chatbot.common;
+
+public class TokenEstimator {
+
+    // chat-format framing (role markers, separators) per message
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * Rough count for budgeting only: about four characters per token for English text, which is
+     * close enough to the real tokenizer for trimming and quota decisions.
+     */
+    public static int estimate(String text) {
+        return text == null ? 0 : (text.length() + 3) / 4;
+    }
+
+    public static int estimateMessage(String content) {
+        return estimate(content) + MESSAGE_OVERHEAD_TOKENS;
+    }
+}
@@ -0,0 +1,76 @@
+package com.chatbot.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class AsyncConfig {
+
+    private final Environment environment;
+
+    @Value("${app.groq.pool-size:16}")
+    private int groqPoolSize;
+
+    @Value("${app.groq.queue-capacity:500}")
+    private int groqQueueCapacity;
+
+    @Value("${app.stream.pool-size:32}")
+    private int streamPoolSize;
+
+    @Value("${app.stream.queue-capacity:100}")
+    private int streamQueueCapacity;
+
+    @Value("${app.jobs.workers:8}")
+    private int jobWorkers;
+
+    @Value("${app.jobs.queue-capacity:100}")
+    private int jobQueueCapacity;
+
+    public AsyncConfig(Environment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Runs the Groq HTTP client's I/O callbacks (and the whole call in blocking client mode).
+     */
+    @Bean
+    public TaskExecutor groqExecutor() {
+        return newExecutor("groq-", groqPoolSize, groqQueueCapacity);
+    }
+
+    @Bean
+    public TaskExecutor chatStreamExecutor() {
+        return newExecutor("chat-stream-", streamPoolSize, streamQueueCapacity);
+    }
+
+    /**
+     * Runs the turns submitted through the async message API, one worker per turn until its reply is saved.
+     */
+    @Bean
+    public TaskExecutor chatJobExecutor() {
+        return newExecutor("chat-job-", jobWorkers, jobQueueCapacity);
+    }
+
+    /**
+     * With {@code spring.threads.virtual.enabled} every task gets its own virtual thread, so the
+     * pool size and queue capacity settings no longer apply.
+     */
+    private TaskExecutor newExecutor(String threadNamePrefix, int poolSize, int queueCapacity) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            return new VirtualThreadTaskExecutor(threadNamePrefix);
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,114 @@
+package com.chatbot.config;
+
+import com.chatbot.security.JdbcSelectForUpdateBasedProxyManager;
+import com.chatbot.security.RateLimitFilter;
+import io.github.bucket4j.distributed.jdbc.BucketTableSettings;
+import io.github.bucket4j.distributed.jdbc.PrimaryKeyMapper;
+import io.github.bucket4j.distributed.jdbc.SQLProxyConfiguration;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.distributed.proxy.RemoteBucketBuilder;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import io.github.bucket4j.distributed.proxy.optimization.Optimizations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Shares rate-limit buckets between replicas through the application database, so the limit holds
+ * per client across the whole deployment rather than per instance. Buckets are kept with Bucket4j's
+ * {@code SELECT ... FOR UPDATE} protocol, on PostgreSQL or H2.
+ * <p>
+ * {@code app.rate.distributed.optimization} decides how often a request reaches the database. With
+ * {@code batching} (default) and {@code none} every request locks, reads and writes its client's row
+ * in its own transaction; {@code batching} only merges requests of one client that arrive while such
+ * a transaction is already running, so it saves nothing at normal load and only helps against bursts.
+ * {@code delaying} does save round-trips: each replica consumes up to {@code sync-tokens} locally, or
+ * for {@code sync-timeout}, before syncing, so a client can briefly exceed the limit by that much per
+ * replica.
+ * <p>
+ * Every write stamps the row, and rows not written for a full refill period are deleted every
+ * {@code app.rate.distributed.cleanup-interval-ms}; such a bucket is full again anyway, so the next
+ * request simply starts a new one.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.rate.mode", havingValue = "distributed")
+public class DistributedRateLimitConfig {
+
+    public enum Optimization { NONE, BATCHING, DELAYING }
+
+    static final String TABLE = "rate_limit_buckets";
+    static final String TOUCHED_COLUMN = "touched_at";
+
+    private static final Logger logger = LoggerFactory.getLogger(DistributedRateLimitConfig.class);
+
+    @Value("${app.rate.distributed.optimization:batching}")
+    private Optimization optimization;
+
+    @Value("${app.rate.distributed.sync-tokens:5}")
+    private long syncTokens;
+
+    @Value("${app.rate.distributed.sync-timeout:1s}")
+    private Duration syncTimeout;
+
+    @Value("${app.rate.capacity:5}")
+    private long capacity;
+
+    @Value("${app.rate.refill-tokens:5}")
+    private long refillTokens;
+
+    @Value("${app.rate.refill-period-seconds:60}")
+    private long refillPeriodSeconds;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DistributedRateLimitConfig(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Bean
+    public RemoteBucketBuilder<String> rateLimitBucketBuilder(DataSource dataSource) throws MetaDataAccessException {
+        // Bucket4j does not create its table, and ddl-auto only knows about entities
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE
+                + " (id VARCHAR(255) PRIMARY KEY, state BYTEA, " + TOUCHED_COLUMN + " TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        // tables created before rows were stamped; existing rows count as touched now
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " ADD COLUMN IF NOT EXISTS " + TOUCHED_COLUMN
+                + " TIMESTAMP DEFAULT CURRENT_TIMESTAMP");
+
+        SQLProxyConfiguration<String> configuration = SQLProxyConfiguration.builder()
+                .withTableSettings(BucketTableSettings.customSettings(TABLE, "id", "state"))
+                .withPrimaryKeyMapper(PrimaryKeyMapper.STRING)
+                .build(dataSource);
+        String database = JdbcUtils.extractDatabaseMetaData(dataSource, metaData -> metaData.getDatabaseProductName());
+        JdbcSelectForUpdateBasedProxyManager.Dialect dialect = "H2".equals(database)
+                ? JdbcSelectForUpdateBasedProxyManager.Dialect.H2
+                : JdbcSelectForUpdateBasedProxyManager.Dialect.POSTGRESQL;
+        ProxyManager<String> proxyManager = new JdbcSelectForUpdateBasedProxyManager<>(configuration, dialect, TOUCHED_COLUMN);
+        RemoteBucketBuilder<String> builder = proxyManager.builder();
+        logger.info("Distributed rate limiting enabled on {}, optimization={}", database, optimization);
+        return switch (optimization) {
+            case NONE -> builder;
+            case BATCHING -> builder.withOptimization(Optimizations.batching());
+            case DELAYING -> builder.withOptimization(Optimizations.delaying(new DelayParameters(syncTokens, syncTimeout)));
+        };
+    }
+
+    @Scheduled(fixedDelayString = "${app.rate.distributed.cleanup-interval-ms:600000}", initialDelayString = "${app.rate.distributed.cleanup-interval-ms:600000}")
+    public void deleteIdleBuckets() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(RateLimitFilter.fullRefillTime(capacity, refillTokens, refillPeriodSeconds));
+        int deleted = jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE " + TOUCHED_COLUMN + " < ?", cutoff);
+        if (deleted > 0) {
+            logger.info("Deleted {} idle rate-limit buckets", deleted);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.chatbot.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+
+/**
+ * Outcome of one request of a batch, at the same {@code index}. {@code status} is the HTTP status the
+ * single-message endpoint would have answered with; {@code message} and {@code role} are set on 200,
+ * {@code error} otherwise.
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MessageBatchItemResponse {
+    private int index;
+    private String sessionId;
+    private int status;
+    private String message;
+    private String role;
+    private String error;
+
+    public MessageBatchItemResponse(int index, String sessionId, int status, String message, String role, String error) {
+        this.index = index;
+        this.sessionId = sessionId;
+        this.status = status;
+        this.message = message;
+        this.role = role;
+        this.error = error;
+    }
+}
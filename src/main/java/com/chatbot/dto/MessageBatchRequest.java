@@ -0,0 +1,18 @@
+package com.chatbot.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class MessageBatchRequest {
+
+    public static final int MAX_MESSAGES = 500;
+
+    @NotEmpty
+    @Size(max = MAX_MESSAGES)
+    private List<@Valid MessageRequest> messages;
+}
@@ -0,0 +1,18 @@
+package com.chatbot.dto;
+
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+public class MessageBatchResponse {
+    private List<MessageBatchItemResponse> items;
+    private int succeeded;
+    private int failed;
+
+    public MessageBatchResponse(List<MessageBatchItemResponse> items) {
+        this.items = items;
+        this.succeeded = (int) items.stream().filter(item -> item.getStatus() == 200).count();
+        this.failed = items.size() - succeeded;
+    }
+}
@@ -0,0 +1,51 @@
+package com.chatbot.dto;
+
+import com.chatbot.exception.InvalidCursorException;
+import com.chatbot.models.ChatMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Opaque keyset position in a session's history: the {@code (createdAt, id)} of a boundary
+ * message plus whether the page lies after or before it. Serialized as URL-safe base64.
+ */
+public record MessageCursor(Direction direction, LocalDateTime createdAt, long id) {
+
+    public enum Direction { AFTER, BEFORE }
+
+    private static final String SEPARATOR = "|";
+
+    public static MessageCursor after(ChatMessage message) {
+        return new MessageCursor(Direction.AFTER, message.getCreatedAt(), message.getId());
+    }
+
+    public static MessageCursor before(ChatMessage message) {
+        return new MessageCursor(Direction.BEFORE, message.getCreatedAt(), message.getId());
+    }
+
+    public String encode() {
+        String raw = direction.name().charAt(0) + SEPARATOR + createdAt + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MessageCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|");
+            if (parts.length != 3) {
+                throw new InvalidCursorException(cursor);
+            }
+            Direction direction = switch (parts[0]) {
+                case "A" -> Direction.AFTER;
+                case "B" -> Direction.BEFORE;
+                default -> throw new InvalidCursorException(cursor);
+            };
+            return new MessageCursor(direction, LocalDateTime.parse(parts[1]), Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException | DateTimeParseException ex) {
+            throw new InvalidCursorException(cursor);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.chatbot.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Pattern;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class MessageImportRequest {
+
+    @NotEmpty
+    private List<@Valid ImportedMessage> messages;
+
+    @Data
+    public static class ImportedMessage {
+        @NotBlank
+        @Pattern(regexp = "user|assistant")
+        private String role;
+
+        @NotBlank
+        private String message;
+    }
+}
@@ -0,0 +1,39 @@
+package com.chatbot.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+
+/**
+ * State of a turn submitted through {@code POST /chat/session/messages/async}. {@code result} is set once
+ * the job {@code SUCCEEDED}; {@code error} and {@code errorStatus} (the HTTP status the synchronous
+ * endpoint would have answered with) once it {@code FAILED}.
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MessageJobResponse {
+
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    private String jobId;
+    private String sessionId;
+    private Status status;
+    private MessageResponse result;
+    private String error;
+    private Integer errorStatus;
+
+    public MessageJobResponse(String jobId, String sessionId, Status status, MessageResponse result,
+                              String error, Integer errorStatus) {
+        this.jobId = jobId;
+        this.sessionId = sessionId;
+        this.status = status;
+        this.result = result;
+        this.error = error;
+        this.errorStatus = errorStatus;
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return status == Status.SUCCEEDED || status == Status.FAILED;
+    }
+}
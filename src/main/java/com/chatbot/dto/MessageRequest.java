@@ -11,5 +11,10 @@ public class MessageRequest {
     @NotBlank
     private String userMessage;
 
+    /**
+     * Skip the response cache and always ask Groq, e.g. for a "regenerate" action.
+     */
+    private boolean bypassCache;
+
 }
 
@@ -0,0 +1,25 @@
+package com.chatbot.dto;
+
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+public class MessagesSliceResponse {
+    private List<MessageResponse> data;
+    private int size;
+    private boolean hasNext;
+    private boolean hasPrevious;
+    private String nextCursor;
+    private String prevCursor;
+
+    public MessagesSliceResponse(List<MessageResponse> data, int size, boolean hasNext, boolean hasPrevious,
+                                 String nextCursor, String prevCursor) {
+        this.data = data;
+        this.size = size;
+        this.hasNext = hasNext;
+        this.hasPrevious = hasPrevious;
+        this.nextCursor = nextCursor;
+        this.prevCursor = prevCursor;
+    }
+}
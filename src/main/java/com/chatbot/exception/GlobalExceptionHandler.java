@@ -2,11 +2,13 @@ package com.chatbot.exception;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
@@ -27,6 +29,108 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(errorBody, HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<Object> handleInvalidCursor(InvalidCursorException ex) {
+        logger.warn("Invalid cursor: {}", ex.getMessage());
+        Map<String, Object> errorBody = new HashMap<>();
+        errorBody.put("timestamp", LocalDateTime.now());
+        errorBody.put("status", HttpStatus.BAD_REQUEST.value());
+        errorBody.put("error", "Invalid Cursor");
+        errorBody.put("message", ex.getMessage());
+
+        return new ResponseEntity<>(errorBody, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidIdempotencyKeyException.class)
+    public ResponseEntity<Object> handleInvalidIdempotencyKey(InvalidIdempotencyKeyException ex) {
+        logger.warn("Invalid idempotency key: {}", ex.getMessage());
+        Map<String, Object> errorBody = new HashMap<>();
+        errorBody.put("timestamp", LocalDateTime.now());
+        errorBody.put("status", HttpStatus.BAD_REQUEST.value());
+        errorBody.put("error", "Invalid Idempotency Key");
+        errorBody.put("message", ex.getMessage());
+
+        return new ResponseEntity<>(errorBody, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(IdempotencyKeyMismatchException.class)
+    public ResponseEntity<Object> handleIdempotencyKeyMismatch(IdempotencyKeyMismatchException ex) {
+        logger.warn("Idempotency key reused: {}", ex.getMessage());
+        Map<String, Object> errorBody = new HashMap<>();
+        errorBody.put("timestamp", LocalDateTime.now());
+        errorBody.put("status", HttpStatus.UNPROCESSABLE_ENTITY.value());
+        errorBody.put("error", "Idempotency Key Reused");
+        errorBody.put("message", ex.getMessage());
+
+        return new ResponseEntity<>(errorBody, HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @ExceptionHandler(JobNotFoundException.class)
+    public ResponseEntity<Object> handleJobNotFound(JobNotFoundException ex) {
+        logger.warn("Job not found exception: {}", ex.getMessage());
+        Map<String, Object> errorBody = new HashMap<>();
+        errorBody.put("timestamp", LocalDateTime.now());
+        errorBody.put("status", HttpStatus.NOT_FOUND.value());
+        errorBody.put("error", "Job Not Found");
+        errorBody.put("message", ex.getMessage());
+
+        return new ResponseEntity<>(errorBody, HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(JobQueueFullException.class)
+    public ResponseEntity<Object> handleJobQueueFull(JobQueueFullException ex) {
+        logger.warn("Job queue full: {}", ex.getMessage());
+        Map<String, Object> errorBody = new HashMap<>();
+        errorBody.put("timestamp", LocalDateTime.now());
+        errorBody.put("status", HttpStatus.SERVICE_UNAVAILABLE.value());
+        errorBody.put("error", "Job Queue Full");
+        errorBody.put("message", ex.getMessage());
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(ex.getRetryAfter()))
+                .body(errorBody);
+    }
+
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<Object> handleQuotaExceeded(QuotaExceededException ex) {
+        logger.warn("Quota exceeded: {}", ex.getMessage());
+        Map<String, Object> errorBody = new HashMap<>();
+        errorBody.put("timestamp", LocalDateTime.now());
+        errorBody.put("status", HttpStatus.TOO_MANY_REQUESTS.value());
+        errorBody.put("error", "Token Quota Exceeded");
+        errorBody.put("message", ex.getMessage());
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(ex.getRetryAfter()))
+                .body(errorBody);
+    }
+
+    @ExceptionHandler(UpstreamOverloadedException.class)
+    public ResponseEntity<Object> handleUpstreamOverloaded(UpstreamOverloadedException ex) {
+        logger.warn("Upstream overloaded: {}", ex.getMessage());
+        Map<String, Object> errorBody = new HashMap<>();
+        errorBody.put("timestamp", LocalDateTime.now());
+        errorBody.put("status", HttpStatus.SERVICE_UNAVAILABLE.value());
+        errorBody.put("error", "Upstream Overloaded");
+        errorBody.put("message", ex.getMessage());
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(ex.getRetryAfter()))
+                .body(errorBody);
+    }
+
+    @ExceptionHandler(UpstreamException.class)
+    public ResponseEntity<Object> handleUpstream(UpstreamException ex) {
+        logger.warn("Upstream call failed: {}", ex.getMessage(), ex.getCause());
+        Map<String, Object> errorBody = new HashMap<>();
+        errorBody.put("timestamp", LocalDateTime.now());
+        errorBody.put("status", ex.getStatus().value());
+        errorBody.put("error", ex.getStatus().getReasonPhrase());
+        errorBody.put("message", ex.getMessage());
+
+        return new ResponseEntity<>(errorBody, ex.getStatus());
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Object> handleGenericException(Exception ex) {
         logger.error("Unexpected error occurred: ", ex);
@@ -38,4 +142,9 @@ public class GlobalExceptionHandler {
 
         return new ResponseEntity<>(errorBody, HttpStatus.INTERNAL_SERVER_ERROR);
     }
+
+    // whole seconds, rounded up, so a client honouring it never retries too early
+    private static String retryAfterSeconds(Duration retryAfter) {
+        return String.valueOf(Math.max(1, (retryAfter.toMillis() + 999) / 1000));
+    }
 }
@@ -0,0 +1,7 @@
+package com.chatbot.exception;
+
+public class IdempotencyKeyMismatchException extends RuntimeException {
+    public IdempotencyKeyMismatchException(String key) {
+        super("Idempotency key was already used with a different request: " + key);
+    }
+}
@@ -0,0 +1,7 @@
+package com.chatbot.exception;
+
+public class JobNotFoundException extends RuntimeException {
+    public JobNotFoundException(String jobId) {
+        super("Job not found: " + jobId);
+    }
+}
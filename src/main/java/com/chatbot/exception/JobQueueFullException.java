@@ -0,0 +1,17 @@
+package com.chatbot.exception;
+
+import java.time.Duration;
+
+public class JobQueueFullException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public JobQueueFullException(Duration retryAfter) {
+        super("Too many queued message jobs");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
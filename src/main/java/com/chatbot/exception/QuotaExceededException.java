@@ -0,0 +1,17 @@
+package com.chatbot.exception;
+
+import java.time.Duration;
+
+public class QuotaExceededException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public QuotaExceededException(String scope, Duration retryAfter) {
+        super("Token quota exceeded for " + scope);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
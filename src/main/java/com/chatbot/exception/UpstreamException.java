@@ -0,0 +1,20 @@
+package com.chatbot.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Groq could not produce a reply; carries the status we answer with instead of a generic 500.
+ */
+public class UpstreamException extends RuntimeException {
+
+    private final HttpStatus status;
+
+    public UpstreamException(HttpStatus status, String message, Throwable cause) {
+        super(message, cause);
+        this.status = status;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+}
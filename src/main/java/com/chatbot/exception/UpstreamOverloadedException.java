@@ -0,0 +1,27 @@
+package com.chatbot.exception;
+
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+
+public class UpstreamOverloadedException extends UpstreamException {
+
+    private final Duration retryAfter;
+
+    public UpstreamOverloadedException(String message) {
+        this(message, Duration.ofSeconds(1));
+    }
+
+    public UpstreamOverloadedException(String message, Duration retryAfter) {
+        this(message, retryAfter, null);
+    }
+
+    public UpstreamOverloadedException(String message, Duration retryAfter, Throwable cause) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, message, cause);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,214 @@
+package com.chatbot.integration;
+
+import com.chatbot.exception.UpstreamOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * AIMD limit on concurrent Groq calls. Every successful call made while the limit was at least half
+ * used raises it by one; a 429, a 5xx, a timeout or a call slower than {@code slow-call-threshold-ms}
+ * multiplies it by {@code backoff-ratio}. Streaming calls are timed to their first token, since a long
+ * reply takes long to stream without Groq being overloaded. Callers over the limit wait in a short FIFO queue for up to
+ * {@code max-wait-ms}; once {@code max-queue} callers are waiting, further ones are shed at once with
+ * {@link UpstreamOverloadedException}. The limit is published as {@code groq.limiter.limit}.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long slowCallThresholdNanos;
+    private final int maxQueue;
+    private final Duration maxWait;
+    private final Deque<CompletableFuture<Permit>> waiters = new ArrayDeque<>();
+    private final Counter rejected;
+
+    private double limit;
+    private int inFlight;
+
+    public AdaptiveConcurrencyLimiter(@Value("${app.groq.limiter.enabled:true}") boolean enabled,
+                                      @Value("${app.groq.limiter.initial-limit:16}") int initialLimit,
+                                      @Value("${app.groq.limiter.min-limit:2}") int minLimit,
+                                      @Value("${app.groq.limiter.max-limit:64}") int maxLimit,
+                                      @Value("${app.groq.limiter.backoff-ratio:0.9}") double backoffRatio,
+                                      @Value("${app.groq.limiter.slow-call-threshold-ms:20000}") long slowCallThresholdMs,
+                                      @Value("${app.groq.limiter.max-queue:100}") int maxQueue,
+                                      @Value("${app.groq.limiter.max-wait-ms:2000}") long maxWaitMs,
+                                      MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.slowCallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowCallThresholdMs);
+        this.maxQueue = maxQueue;
+        this.maxWait = Duration.ofMillis(maxWaitMs);
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        Gauge.builder("groq.limiter.limit", this, AdaptiveConcurrencyLimiter::limit)
+                .description("Concurrent Groq calls currently allowed")
+                .register(meterRegistry);
+        Gauge.builder("groq.limiter.inflight", this, AdaptiveConcurrencyLimiter::inFlight)
+                .description("Groq calls currently in flight")
+                .register(meterRegistry);
+        Gauge.builder("groq.limiter.queued", this, AdaptiveConcurrencyLimiter::queued)
+                .description("Callers waiting for a Groq call slot")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("groq.limiter.rejected")
+                .description("Calls shed because the queue was full or the wait timed out")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Completes with a permit once a call slot is free. The caller must hand the call's outcome back
+     * through {@link Permit#release(Throwable)} exactly once.
+     */
+    public CompletableFuture<Permit> acquire() {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(new Permit(false));
+        }
+        CompletableFuture<Permit> waiter;
+        synchronized (this) {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(new Permit(true));
+            }
+            if (waiters.size() >= maxQueue) {
+                rejected.increment();
+                return CompletableFuture.failedFuture(new UpstreamOverloadedException("Groq call queue is full"));
+            }
+            waiter = new CompletableFuture<>();
+            waiters.addLast(waiter);
+        }
+        return waiter.orTimeout(maxWait.toMillis(), TimeUnit.MILLISECONDS).exceptionallyCompose(ex -> {
+            if (!(unwrap(ex) instanceof TimeoutException)) {
+                return CompletableFuture.failedFuture(ex);
+            }
+            synchronized (this) {
+                waiters.remove(waiter);
+            }
+            rejected.increment();
+            return CompletableFuture.failedFuture(new UpstreamOverloadedException("Timed out waiting for a Groq call slot"));
+        });
+    }
+
+    private void onComplete(long latencyNanos, Throwable failure) {
+        Throwable cause = failure == null ? null : unwrap(failure);
+        boolean dropped = cause != null ? isOverload(cause) : latencyNanos > slowCallThresholdNanos;
+        synchronized (this) {
+            int inFlightBefore = inFlight--;
+            if (dropped) {
+                double previous = limit;
+                limit = Math.max(minLimit, limit * backoffRatio);
+                logger.debug("Groq overload signal ({}), limit {} -> {}", cause != null ? cause.getClass().getSimpleName() : "slow call",
+                        (int) previous, (int) limit);
+            } else if (cause == null && inFlightBefore * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+        }
+        grantWaiting();
+    }
+
+    // completes waiters outside the lock, since their continuations start the next upstream call
+    private void grantWaiting() {
+        while (true) {
+            CompletableFuture<Permit> waiter;
+            synchronized (this) {
+                if (inFlight >= (int) limit || waiters.isEmpty()) {
+                    return;
+                }
+                waiter = waiters.pollFirst();
+                inFlight++;
+            }
+            if (!waiter.complete(new Permit(true))) {
+                // timed out in the meantime; hand the slot to the next waiter
+                synchronized (this) {
+                    inFlight--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Client errors other than 429 say nothing about Groq's capacity and leave the limit alone.
+     */
+    private static boolean isOverload(Throwable cause) {
+        if (cause instanceof HttpStatusCodeException status) {
+            return status.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value()
+                    || status instanceof HttpServerErrorException;
+        }
+        return cause instanceof HttpTimeoutException
+                || cause instanceof ResourceAccessException
+                || cause instanceof IOException;
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+    synchronized int limit() {
+        return (int) limit;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    synchronized int queued() {
+        return waiters.size();
+    }
+
+    /**
+     * One granted call slot; remembers when it was granted so the latency excludes queueing time.
+     */
+    public final class Permit {
+
+        private final boolean counted;
+        private final long grantedAt = System.nanoTime();
+        private volatile long firstTokenAt = -1;
+
+        private Permit(boolean counted) {
+            this.counted = counted;
+        }
+
+        /**
+         * Marks a streamed token; the first one ends the latency that is compared with the slow-call threshold.
+         */
+        public void firstToken() {
+            if (firstTokenAt < 0) {
+                firstTokenAt = System.nanoTime();
+            }
+        }
+
+        /**
+         * @param failure the call's exception, or {@code null} if it succeeded
+         */
+        public void release(Throwable failure) {
+            if (counted) {
+                long end = firstTokenAt;
+                onComplete((end < 0 ? System.nanoTime() : end) - grantedAt, failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.chatbot.integration;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+/**
+ * Exact-match cache of Groq replies keyed on the normalized prompt, model and temperature.
+ * Entries expire after {@code app.cache.ttl} and the least recently used ones are evicted past
+ * {@code app.cache.max-size}. Hit, miss and eviction counts are published as {@code cache.*}
+ * meters tagged {@code cache=groq.responses}.
+ */
+@Component
+public class ChatResponseCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final boolean enabled;
+    private final Cache<Key, String> cache;
+
+    @Autowired
+    public ChatResponseCache(@Value("${app.cache.enabled:true}") boolean enabled,
+                             @Value("${app.cache.max-size:10000}") long maxSize,
+                             @Value("${app.cache.ttl:10m}") Duration ttl,
+                             MeterRegistry meterRegistry) {
+        this(enabled, maxSize, ttl, meterRegistry, Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+    ChatResponseCache(boolean enabled, long maxSize, Duration ttl, MeterRegistry meterRegistry,
+                      Ticker ticker, Executor maintenanceExecutor) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .ticker(ticker)
+                .executor(maintenanceExecutor)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "groq.responses");
+    }
+
+    public Optional<String> get(Key key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(cache.getIfPresent(key));
+    }
+
+    public void put(Key key, String reply) {
+        if (enabled) {
+            cache.put(key, reply);
+        }
+    }
+
+    long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+    /**
+     * Unicode NFC, trimmed, inner whitespace collapsed and lower-cased, so {@code "Hi "} and
+     * {@code "hi"} share an entry.
+     */
+    static String normalize(String prompt) {
+        String composed = Normalizer.normalize(prompt, Normalizer.Form.NFC).strip();
+        return WHITESPACE.matcher(composed).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Identity of a completion request; also used to coalesce identical in-flight calls. Earlier
+     * turns are folded into a digest, so the first message of every session shares one key space
+     * while follow-ups only match the exact same conversation.
+     */
+    public record Key(String context, String prompt, String model, double temperature) {
+
+        public static Key of(String prompt, String model, double temperature) {
+            return new Key("", normalize(prompt), model, temperature);
+        }
+
+        public static Key of(List<ChatTurn> conversation, String model, double temperature) {
+            ChatTurn latest = conversation.get(conversation.size() - 1);
+            return new Key(digest(conversation.subList(0, conversation.size() - 1)), normalize(latest.content()), model, temperature);
+        }
+
+        private static String digest(List<ChatTurn> turns) {
+            if (turns.isEmpty()) {
+                return "";
+            }
+            try {
+                MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+                for (ChatTurn turn : turns) {
+                    sha256.update(turn.role().getBytes(StandardCharsets.UTF_8));
+                    sha256.update((byte) 0);
+                    sha256.update(turn.content().getBytes(StandardCharsets.UTF_8));
+                    sha256.update((byte) 0);
+                }
+                return HexFormat.of().formatHex(sha256.digest());
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+}
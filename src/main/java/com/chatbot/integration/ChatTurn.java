@@ -0,0 +1,7 @@
+package com.chatbot.integration;
+
+/**
+ * One message of the conversation sent to Groq; serializes as {@code {"role": ..., "content": ...}}.
+ */
+public record ChatTurn(String role, String content) {
+}
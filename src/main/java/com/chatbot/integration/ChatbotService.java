@@ -1,60 +1,383 @@
 package com.chatbot.integration;
 
+import com.chatbot.common.TokenEstimator;
+import com.chatbot.security.TokenQuota;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.*;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 
 @Service
 public class ChatbotService {
 
+    /**
+     * {@code BLOCKING} issues every call through {@link RestTemplate} on the {@code groqExecutor} pool;
+     * {@code ASYNC} uses the JDK {@link HttpClient} so no thread is parked while Groq is generating.
+     */
+    public enum ClientMode { BLOCKING, ASYNC }
+
+    private static final double TEMPERATURE = 0.7;
+    private static final String NO_RESPONSE = "No response from Groq";
+    private static final String SSE_DATA_PREFIX = "data:";
+    private static final String SSE_DONE = "[DONE]";
+    private static final Logger logger = LoggerFactory.getLogger(ChatbotService.class);
+
+    /**
+     * A reply plus the {@code usage.total_tokens} Groq billed for it, or 0 when the response carried no usage.
+     * {@code fallback} marks replies from a fallback model, which are not cached.
+     */
+    private record Completion(String content, long totalTokens, boolean fallback) {
+    }
+
     private final RestTemplate restTemplate;
-    @Value("${app.groq-api-url}")
-    private String groqApiUrl;
-    @Value("${app.groq-api-key}")
-    private String groqApiKey;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final GroqResponseParser responseParser;
+    private final Executor groqExecutor;
+    private final ChatResponseCache responseCache;
+    private final RequestCoalescer coalescer;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final UpstreamRouter router;
+    private final UpstreamResilience resilience;
+    private final Duration readTimeout;
+    @Value("${app.groq.client-mode:async}")
+    private ClientMode clientMode;
 
-    public ChatbotService(RestTemplateBuilder builder) {
-        this.restTemplate = builder.build();
+    public ChatbotService(RestTemplateBuilder builder, ObjectMapper objectMapper,
+                          @Qualifier("groqExecutor") Executor groqExecutor,
+                          ChatResponseCache responseCache,
+                          RequestCoalescer coalescer,
+                          AdaptiveConcurrencyLimiter limiter,
+                          UpstreamRouter router,
+                          UpstreamResilience resilience,
+                          @Value("${app.groq.connect-timeout-ms:5000}") long connectTimeoutMs,
+                          @Value("${app.groq.read-timeout-ms:60000}") long readTimeoutMs) {
+        Duration connectTimeout = Duration.ofMillis(connectTimeoutMs);
+        this.readTimeout = Duration.ofMillis(readTimeoutMs);
+        this.restTemplate = builder
+                .setConnectTimeout(connectTimeout)
+                .setReadTimeout(readTimeout)
+                .build();
+        // the JDK client keeps idle connections alive in its own pool and multiplexes over HTTP/2,
+        // so concurrent chats share a handful of sockets to Groq instead of one per request
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .executor(groqExecutor)
+                .build();
+        this.objectMapper = objectMapper;
+        this.responseParser = new GroqResponseParser(objectMapper.getFactory());
+        this.groqExecutor = groqExecutor;
+        this.responseCache = responseCache;
+        this.coalescer = coalescer;
+        this.limiter = limiter;
+        this.router = router;
+        this.resilience = resilience;
     }
 
 
-    public String ask(String userMessage) {
-        System.out.println("groqApiKey: "+groqApiKey);
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBearerAuth(groqApiKey);
+    /**
+     * Settles {@code quota} with the tokens Groq reports. Cache hits and callers attached to someone
+     * else's in-flight call did not cost anything and get it released.
+     *
+     * @param conversation prior turns followed by the new user message, oldest first
+     * @param bypassCache  skip the response cache lookup and in-flight coalescing and always call
+     *                     Groq; the fresh reply still replaces the cached one
+     */
+    public CompletableFuture<String> askAsync(List<ChatTurn> conversation, boolean bypassCache, TokenQuota.Reservation quota) {
+        ChatResponseCache.Key key = ChatResponseCache.Key.of(conversation, router.defaultModel(), TEMPERATURE);
+        if (bypassCache) {
+            return charged(call(conversation), quota).thenApply(completion -> remember(key, completion));
+        }
+        Optional<String> cached = responseCache.get(key);
+        if (cached.isPresent()) {
+            quota.release();
+            return CompletableFuture.completedFuture(cached.get());
+        }
+        AtomicBoolean leader = new AtomicBoolean();
+        return coalescer.coalesce(key, () -> {
+            leader.set(true);
+            return charged(call(conversation), quota).thenApply(completion -> remember(key, completion));
+        }).whenComplete((botReply, ex) -> {
+            if (!leader.get()) {
+                quota.release();
+            }
+        });
+    }
 
-        Map<String, Object> requestBody = Map.of(
-                "model", "allam-2-7b", // example Groq model
-                "messages", List.of(
-                        Map.of("role", "user", "content", userMessage)
-                ),
-                "temperature", 0.7
-        );
+    /**
+     * Sends the conversation with {@code stream: true} and hands every content delta to {@code onToken}
+     * as soon as Groq emits it. Returns the full concatenated reply once the stream is finished, and
+     * settles {@code quota} like {@link #askAsync}.
+     */
+    public String streamAsk(List<ChatTurn> conversation, boolean bypassCache, TokenQuota.Reservation quota,
+                            Consumer<String> onToken) {
+        ChatResponseCache.Key key = ChatResponseCache.Key.of(conversation, router.defaultModel(), TEMPERATURE);
+        if (!bypassCache) {
+            Optional<String> cached = responseCache.get(key);
+            if (cached.isPresent()) {
+                quota.release();
+                onToken.accept(cached.get());
+                return cached.get();
+            }
+        }
+        // once a token reached the client a retry would repeat it, so only failures before that are retried
+        AtomicBoolean forwarded = new AtomicBoolean();
+        Consumer<String> forwarding = token -> {
+            forwarded.set(true);
+            onToken.accept(token);
+        };
+        Completion completion;
+        try {
+            completion = resilience.executeBlocking(
+                    () -> limited(conversation, (target, firstToken) -> stream(target, conversation, token -> {
+                        firstToken.run();
+                        forwarding.accept(token);
+                    })), () -> !forwarded.get());
+        } catch (RuntimeException ex) {
+            quota.release();
+            throw ex;
+        }
+        quota.settle(tokensUsed(completion, quota));
+        return remember(key, completion);
+    }
 
-        HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+    private Completion stream(UpstreamTarget target, List<ChatTurn> conversation, Consumer<String> onToken) {
+        HttpHeaders headers = buildHeaders(target);
+        headers.setAccept(List.of(MediaType.TEXT_EVENT_STREAM));
+        return post(target, headers, buildRequestBody(target, conversation, true),
+                response -> readStream(target, response.getBody(), onToken));
+    }
 
-        ResponseEntity<Map> response = restTemplate.exchange(
-                groqApiUrl,
-                HttpMethod.POST,
-                request,
-                Map.class
-        );
+    private Completion post(UpstreamTarget target, HttpHeaders headers, GroqChatRequest requestBody,
+                            ResponseExtractor<Completion> extractor) {
+        try {
+            return restTemplate.execute(
+                    target.url(),
+                    HttpMethod.POST,
+                    request -> {
+                        request.getHeaders().putAll(headers);
+                        objectMapper.writeValue(request.getBody(), requestBody);
+                    },
+                    (ClientHttpResponse response) -> {
+                        target.pacer().observe(response.getHeaders());
+                        return extractor.extractData(response);
+                    }
+            );
+        } catch (HttpStatusCodeException ex) {
+            target.pacer().observe(ex.getResponseHeaders());
+            throw ex;
+        }
+    }
+
+    private CompletableFuture<Completion> charged(CompletableFuture<Completion> call, TokenQuota.Reservation quota) {
+        return call.whenComplete((completion, ex) -> {
+            if (ex != null) {
+                quota.release();
+            } else {
+                quota.settle(tokensUsed(completion, quota));
+            }
+        });
+    }
+
+    // without a usage block, charge the prompt estimate plus an estimate of the reply
+    private static long tokensUsed(Completion completion, TokenQuota.Reservation quota) {
+        return completion.totalTokens() > 0
+                ? completion.totalTokens()
+                : quota.estimatedTokens() + TokenEstimator.estimate(completion.content());
+    }
+
+    private CompletableFuture<Completion> call(List<ChatTurn> conversation) {
+        return resilience.execute(() -> attempt(conversation));
+    }
 
-        if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-            var choices = (List<Map<String, Object>>) response.getBody().get("choices");
-            if (choices != null && !choices.isEmpty()) {
-                Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
-                return message != null ? (String) message.get("content") : "No response";
+    /**
+     * Starts one upstream attempt on the target {@link UpstreamRouter} picks, once that target's rate-limit
+     * window has room for it ({@link UpstreamRateLimitPacer}) and {@link AdaptiveConcurrencyLimiter} grants
+     * a slot, and reports its outcome back to both so they can adapt.
+     */
+    private CompletableFuture<Completion> attempt(List<ChatTurn> conversation) {
+        UpstreamRouter.Lease lease = router.acquire();
+        UpstreamTarget target = lease.target();
+        return target.pacer().admit(promptTokens(conversation)).thenCompose(admitted -> limiter.acquire()).thenCompose(permit -> {
+            lease.started();
+            CompletableFuture<Completion> upstream;
+            try {
+                upstream = clientMode == ClientMode.BLOCKING
+                        ? CompletableFuture.supplyAsync(() -> exchange(target, conversation), groqExecutor)
+                        : send(target, conversation);
+            } catch (RuntimeException ex) {
+                permit.release(ex);
+                throw ex;
             }
+            return upstream.whenComplete((completion, ex) -> permit.release(ex));
+        }).whenComplete((completion, ex) -> lease.release(ex));
+    }
+
+    /**
+     * Blocking counterpart of {@link #attempt(List)}, for paths that already run on a worker thread.
+     * {@code upstream} gets a callback to run on every streamed token, so a stream reports its
+     * time-to-first-token rather than its full length as latency.
+     */
+    private <T> T limited(List<ChatTurn> conversation, BiFunction<UpstreamTarget, Runnable, T> upstream) {
+        UpstreamRouter.Lease lease = router.acquire();
+        AdaptiveConcurrencyLimiter.Permit permit;
+        try {
+            permit = lease.target().pacer().admit(promptTokens(conversation)).thenCompose(admitted -> limiter.acquire()).join();
+        } catch (CompletionException ex) {
+            RuntimeException failure = ex.getCause() instanceof RuntimeException cause ? cause : ex;
+            lease.release(failure);
+            throw failure;
         }
-        return "No response from Groq";
+        lease.started();
+        try {
+            T result = upstream.apply(lease.target(), () -> {
+                permit.firstToken();
+                lease.firstToken();
+            });
+            permit.release(null);
+            lease.release(null);
+            return result;
+        } catch (RuntimeException ex) {
+            permit.release(ex);
+            lease.release(ex);
+            throw ex;
+        }
+    }
+
+    private static long promptTokens(List<ChatTurn> conversation) {
+        return conversation.stream().mapToLong(turn -> TokenEstimator.estimateMessage(turn.content())).sum();
+    }
+
+    private CompletableFuture<Completion> send(UpstreamTarget target, List<ChatTurn> conversation) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(target.url()))
+                .timeout(readTimeout)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + target.apiKey())
+                .POST(HttpRequest.BodyPublishers.ofByteArray(writeJson(buildRequestBody(target, conversation, false))))
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> readResponse(target, response));
+    }
+
+    private String remember(ChatResponseCache.Key key, Completion completion) {
+        // the key names the default model, so a fallback model's reply must not answer for it later
+        if (!NO_RESPONSE.equals(completion.content()) && !completion.fallback()) {
+            responseCache.put(key, completion.content());
+        }
+        return completion.content();
+    }
+
+    private Completion exchange(UpstreamTarget target, List<ChatTurn> conversation) {
+        return post(target, buildHeaders(target), buildRequestBody(target, conversation, false),
+                response -> completion(target, responseParser.parseCompletion(response.getBody())));
+    }
+
+    private Completion readResponse(UpstreamTarget target, HttpResponse<byte[]> response) {
+        HttpStatusCode status = HttpStatusCode.valueOf(response.statusCode());
+        HttpHeaders headers = new HttpHeaders();
+        response.headers().map().forEach(headers::addAll);
+        target.pacer().observe(headers);
+        if (status.isError()) {
+            // surface the same exception types RestTemplate raises, so callers see no difference between modes
+            String statusText = status instanceof HttpStatus known ? known.getReasonPhrase() : "";
+            throw status.is4xxClientError()
+                    ? HttpClientErrorException.create(status, statusText, headers, response.body(), StandardCharsets.UTF_8)
+                    : HttpServerErrorException.create(status, statusText, headers, response.body(), StandardCharsets.UTF_8);
+        }
+        try {
+            return completion(target, responseParser.parseCompletion(response.body()));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Completion completion(UpstreamTarget target, GroqReply reply) {
+        if (reply.truncated()) {
+            logger.warn("Groq reply from {} was cut off at {} completion tokens", target.name(), reply.usage().completionTokens());
+        }
+        return new Completion(reply.content() != null ? reply.content() : NO_RESPONSE, reply.usage().totalTokens(), target.fallback());
+    }
+
+    private Completion readStream(UpstreamTarget target, InputStream body, Consumer<String> onToken) throws IOException {
+        StringBuilder reply = new StringBuilder();
+        GroqUsage usage = GroqUsage.NONE;
+        String finishReason = null;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith(SSE_DATA_PREFIX)) {
+                continue;
+            }
+            String data = line.substring(SSE_DATA_PREFIX.length()).trim();
+            if (SSE_DONE.equals(data)) {
+                break;
+            }
+            GroqReply chunk = responseParser.parseChunk(data);
+            if (chunk.content() != null && !chunk.content().isEmpty()) {
+                reply.append(chunk.content());
+                onToken.accept(chunk.content());
+            }
+            // usage arrives on the last chunk only
+            if (chunk.usage().totalTokens() > 0) {
+                usage = chunk.usage();
+            }
+            if (chunk.finishReason() != null) {
+                finishReason = chunk.finishReason();
+            }
+        }
+        return completion(target, new GroqReply(reply.length() > 0 ? reply.toString() : null, finishReason, usage));
+    }
+
+    private byte[] writeJson(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Could not serialize Groq request", ex);
+        }
+    }
+
+    private HttpHeaders buildHeaders(UpstreamTarget target) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(target.apiKey());
+        return headers;
+    }
+
+    private GroqChatRequest buildRequestBody(UpstreamTarget target, List<ChatTurn> conversation, boolean stream) {
+        return new GroqChatRequest(target.model(), conversation, TEMPERATURE, stream);
     }
 
 }
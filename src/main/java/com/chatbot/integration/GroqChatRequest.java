@@ -0,0 +1,9 @@
+package com.chatbot.integration;
+
+import java.util.List;
+
+/**
+ * Body of a Groq {@code /chat/completions} call; serializes with the OpenAI field names.
+ */
+public record GroqChatRequest(String model, List<ChatTurn> messages, double temperature, boolean stream) {
+}
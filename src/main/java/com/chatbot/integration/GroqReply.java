@@ -0,0 +1,17 @@
+package com.chatbot.integration;
+
+/**
+ * What we keep of a Groq completion, or of one streamed chunk: the first choice's content (the delta
+ * for chunks, {@code null} when absent), its {@code finish_reason} and the reported usage.
+ */
+public record GroqReply(String content, String finishReason, GroqUsage usage) {
+
+    static final GroqReply EMPTY = new GroqReply(null, null, GroqUsage.NONE);
+
+    /**
+     * Groq stopped because the reply hit {@code max_tokens} or the context window.
+     */
+    public boolean truncated() {
+        return "length".equals(finishReason);
+    }
+}
@@ -0,0 +1,154 @@
+package com.chatbot.integration;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Pulls {@code choices[0].message.content} (or {@code delta.content} for stream chunks),
+ * {@code choices[0].finish_reason} and {@code usage} out of a Groq response with Jackson's streaming
+ * parser, skipping everything else without materializing it. Groq puts a stream's usage under
+ * {@code x_groq.usage}; OpenAI-style servers at the top level, which is used when the former is absent.
+ */
+public final class GroqResponseParser {
+
+    private final JsonFactory jsonFactory;
+
+    public GroqResponseParser(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    public GroqReply parseCompletion(InputStream body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return read(parser, "message");
+        }
+    }
+
+    public GroqReply parseCompletion(byte[] body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            return read(parser, "message");
+        }
+    }
+
+    /**
+     * Parses the JSON of one {@code data:} line of a streamed completion.
+     */
+    public GroqReply parseChunk(String data) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(data)) {
+            return read(parser, "delta");
+        }
+    }
+
+    private static GroqReply read(JsonParser parser, String messageField) throws IOException {
+        JsonToken first = parser.nextToken();
+        if (first == null) {
+            return GroqReply.EMPTY;
+        }
+        if (first != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a Groq response object");
+        }
+        String[] choice = new String[2];
+        GroqUsage usage = null;
+        GroqUsage groqUsage = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "choices" -> readChoices(parser, value, messageField, choice);
+                case "usage" -> usage = readUsage(parser, value);
+                case "x_groq" -> groqUsage = readGroqExtension(parser, value);
+                default -> parser.skipChildren();
+            }
+        }
+        GroqUsage reported = groqUsage != null ? groqUsage : usage;
+        return new GroqReply(choice[0], choice[1], reported != null ? reported : GroqUsage.NONE);
+    }
+
+    // fills choice with the first element's content and finish_reason
+    private static void readChoices(JsonParser parser, JsonToken value, String messageField, String[] choice) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        boolean first = true;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (!first || parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            first = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken fieldValue = parser.nextToken();
+                if (field.equals(messageField) && fieldValue == JsonToken.START_OBJECT) {
+                    choice[0] = readContent(parser);
+                } else if (field.equals("finish_reason") && fieldValue == JsonToken.VALUE_STRING) {
+                    choice[1] = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static String readContent(JsonParser parser) throws IOException {
+        String content = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("content") && value == JsonToken.VALUE_STRING) {
+                content = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return content;
+    }
+
+    private static GroqUsage readUsage(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        long prompt = 0;
+        long completion = 0;
+        long total = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken number = parser.nextToken();
+            if (!number.isNumeric()) {
+                parser.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case "prompt_tokens" -> prompt = parser.getLongValue();
+                case "completion_tokens" -> completion = parser.getLongValue();
+                case "total_tokens" -> total = parser.getLongValue();
+                default -> { }
+            }
+        }
+        return new GroqUsage(prompt, completion, total);
+    }
+
+    private static GroqUsage readGroqExtension(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        GroqUsage usage = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken fieldValue = parser.nextToken();
+            if (field.equals("usage")) {
+                usage = readUsage(parser, fieldValue);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return usage;
+    }
+}
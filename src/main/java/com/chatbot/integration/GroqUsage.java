@@ -0,0 +1,9 @@
+package com.chatbot.integration;
+
+/**
+ * The {@code usage} block of a Groq response; all zero when the response carried none.
+ */
+public record GroqUsage(long promptTokens, long completionTokens, long totalTokens) {
+
+    public static final GroqUsage NONE = new GroqUsage(0, 0, 0);
+}
@@ -0,0 +1,63 @@
+package com.chatbot.integration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for upstream calls: while a call for a key is in flight, later callers with the
+ * same key attach to its future instead of issuing their own request. The key is dropped as soon
+ * as the call completes, so the next caller after that goes through the response cache again.
+ */
+@Component
+public class RequestCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    private final Map<Object, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+
+    public RequestCoalescer(MeterRegistry meterRegistry) {
+        this.coalesced = Counter.builder("groq.requests.coalesced")
+                .description("Upstream calls avoided by attaching to an identical in-flight call")
+                .register(meterRegistry);
+        meterRegistry.gaugeMapSize("groq.requests.inflight.keys", List.of(), inFlight);
+    }
+
+    public CompletableFuture<String> coalesce(Object key, Supplier<CompletableFuture<String>> call) {
+        CompletableFuture<String> leader = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, leader);
+        if (existing != null) {
+            coalesced.increment();
+            logger.debug("Attached to in-flight upstream call for key={}", key);
+            // a copy, so one follower cancelling cannot fail the shared call for everybody else
+            return existing.copy();
+        }
+        try {
+            call.get().whenComplete((reply, ex) -> {
+                inFlight.remove(key, leader);
+                if (ex != null) {
+                    leader.completeExceptionally(ex);
+                } else {
+                    leader.complete(reply);
+                }
+            });
+        } catch (RuntimeException ex) {
+            inFlight.remove(key, leader);
+            leader.completeExceptionally(ex);
+        }
+        return leader.copy();
+    }
+
+    int inFlightCount() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,38 @@
+package com.chatbot.integration;
+
+/**
+ * Caps extra upstream attempts (retries and hedges) at a fraction of the original calls: every call
+ * deposits {@code ratio} of an attempt, every retry or hedge withdraws a whole one. The balance starts
+ * at, and never exceeds, {@code burst}, so a quiet service can still retry a few failures while a
+ * failing one adds at most {@code ratio} extra load on top of its traffic.
+ */
+final class RetryBudget {
+
+    private static final long UNIT = 1000;
+
+    private final long depositPerCall;
+    private final long maxBalance;
+    private long balance;
+
+    RetryBudget(double ratio, int burst) {
+        this.depositPerCall = Math.round(ratio * UNIT);
+        this.maxBalance = burst * UNIT;
+        this.balance = maxBalance;
+    }
+
+    synchronized void onCall() {
+        balance = Math.min(maxBalance, balance + depositPerCall);
+    }
+
+    synchronized boolean tryWithdraw() {
+        if (balance < UNIT) {
+            return false;
+        }
+        balance -= UNIT;
+        return true;
+    }
+
+    synchronized double available() {
+        return (double) balance / UNIT;
+    }
+}
@@ -0,0 +1,164 @@
+package com.chatbot.integration;
+
+import com.chatbot.exception.UpstreamOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Count-based circuit breaker over the last {@code window-size} Groq attempts. Once at least
+ * {@code minimum-calls} were recorded and {@code failure-rate-threshold} percent of them failed, the
+ * circuit opens and every call fails fast for {@code open-duration-ms}. After that up to
+ * {@code half-open-calls} trial calls go through: if all succeed the circuit closes, a single failure
+ * opens it again. The state is published as {@code groq.circuit.state} (0 closed, 1 open, 2 half-open).
+ */
+@Component
+public class UpstreamCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamCircuitBreaker.class);
+
+    private final boolean enabled;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+    private final LongSupplier clock;
+    private final Counter rejected;
+
+    // guarded by this: ring buffer of the latest outcomes, true = failure
+    private final boolean[] outcomes;
+    private int recorded;
+    private int next;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+
+    @Autowired
+    public UpstreamCircuitBreaker(@Value("${app.groq.circuit-breaker.enabled:true}") boolean enabled,
+                                  @Value("${app.groq.circuit-breaker.window-size:20}") int windowSize,
+                                  @Value("${app.groq.circuit-breaker.minimum-calls:10}") int minimumCalls,
+                                  @Value("${app.groq.circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold,
+                                  @Value("${app.groq.circuit-breaker.open-duration-ms:30000}") long openDurationMs,
+                                  @Value("${app.groq.circuit-breaker.half-open-calls:2}") int halfOpenCalls,
+                                  MeterRegistry meterRegistry) {
+        this(enabled, windowSize, minimumCalls, failureRateThreshold, openDurationMs, halfOpenCalls, meterRegistry, System::nanoTime);
+    }
+
+    UpstreamCircuitBreaker(boolean enabled, int windowSize, int minimumCalls, int failureRateThreshold, long openDurationMs,
+                           int halfOpenCalls, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.enabled = enabled;
+        this.outcomes = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMs);
+        this.halfOpenCalls = halfOpenCalls;
+        this.clock = clock;
+        Gauge.builder("groq.circuit.state", this, breaker -> breaker.state().ordinal())
+                .description("Groq circuit breaker state: 0 closed, 1 open, 2 half-open")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("groq.circuit.rejected")
+                .description("Calls failed fast because the Groq circuit was open")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Lets the attempt through or throws while the circuit is open. Every admitted attempt must be
+     * followed by {@link #onSuccess()} or {@link #onFailure()}.
+     *
+     * @throws UpstreamOverloadedException while the circuit is open or the half-open trials are taken
+     */
+    public synchronized void acquire() {
+        if (!enabled) {
+            return;
+        }
+        if (state == State.OPEN) {
+            long remaining = openedAt + openDurationNanos - clock.getAsLong();
+            if (remaining > 0) {
+                rejected.increment();
+                throw new UpstreamOverloadedException("Groq circuit breaker is open", Duration.ofNanos(remaining));
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsStarted >= halfOpenCalls) {
+                rejected.increment();
+                throw new UpstreamOverloadedException("Groq circuit breaker is testing recovery");
+            }
+            trialsStarted++;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (!enabled) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (++trialsSucceeded >= halfOpenCalls) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (!enabled) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN);
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && recorded >= minimumCalls && failures * 100 >= failureRateThreshold * recorded) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void record(boolean failure) {
+        if (recorded == outcomes.length) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void transitionTo(State target) {
+        logger.warn("Groq circuit breaker {} -> {}", state, target);
+        state = target;
+        trialsStarted = 0;
+        trialsSucceeded = 0;
+        if (target == State.OPEN) {
+            openedAt = clock.getAsLong();
+        }
+        if (target == State.CLOSED) {
+            recorded = 0;
+            next = 0;
+            failures = 0;
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+}
@@ -0,0 +1,234 @@
+package com.chatbot.integration;
+
+import com.chatbot.exception.UpstreamOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Paces Groq calls by the {@code x-ratelimit-*} headers of its responses, so we wait for the provider's
+ * window to reset instead of firing a request that would come back as a 429. Every response refreshes
+ * the remaining request and token counts; between responses each admitted call is deducted locally,
+ * with its estimated prompt size for the token budget. A call that cannot be admitted waits until the
+ * relevant reset, but never past {@code max-wait-ms} from its first attempt; after that it fails with
+ * {@link UpstreamOverloadedException}. Groq keeps these windows per API key, so {@link UpstreamRouter}
+ * holds one instance per target, shared by all request threads.
+ */
+public class UpstreamRateLimitPacer {
+
+    static final String LIMIT_REQUESTS = "x-ratelimit-limit-requests";
+    static final String LIMIT_TOKENS = "x-ratelimit-limit-tokens";
+    static final String REMAINING_REQUESTS = "x-ratelimit-remaining-requests";
+    static final String REMAINING_TOKENS = "x-ratelimit-remaining-tokens";
+    static final String RESET_REQUESTS = "x-ratelimit-reset-requests";
+    static final String RESET_TOKENS = "x-ratelimit-reset-tokens";
+
+    private static final long UNKNOWN = -1;
+    // Groq writes resets as Go durations, e.g. "2m59.56s", "7.66s" or "120ms"
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamRateLimitPacer.class);
+
+    private final boolean enabled;
+    private final long maxWaitNanos;
+    private final LongSupplier clock;
+    private final Counter delayed;
+    private final Counter rejected;
+
+    // guarded by this; *ResetAt are System.nanoTime() instants
+    private long requestLimit = UNKNOWN;
+    private long tokenLimit = UNKNOWN;
+    private long remainingRequests = UNKNOWN;
+    private long remainingTokens = UNKNOWN;
+    private long requestsResetAt;
+    private long tokensResetAt;
+    private long blockedUntil;
+    private boolean requestsRefilled;
+    private boolean tokensRefilled;
+
+    public UpstreamRateLimitPacer(boolean enabled, long maxWaitMs, String target, MeterRegistry meterRegistry) {
+        this(enabled, maxWaitMs, target, meterRegistry, System::nanoTime);
+    }
+
+    UpstreamRateLimitPacer(boolean enabled, long maxWaitMs, String target, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.enabled = enabled;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.clock = clock;
+        long now = clock.getAsLong();
+        this.requestsResetAt = now;
+        this.tokensResetAt = now;
+        this.blockedUntil = now;
+        Gauge.builder("groq.ratelimit.remaining", this, pacer -> pacer.remaining(true))
+                .description("Requests Groq reported as remaining in its current window")
+                .tag("kind", "requests")
+                .tag("target", target)
+                .register(meterRegistry);
+        Gauge.builder("groq.ratelimit.remaining", this, pacer -> pacer.remaining(false))
+                .description("Tokens Groq reported as remaining in its current window")
+                .tag("kind", "tokens")
+                .tag("target", target)
+                .register(meterRegistry);
+        this.delayed = Counter.builder("groq.pacing.delayed")
+                .description("Calls held back until Groq's rate-limit window reset")
+                .tag("target", target)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("groq.pacing.rejected")
+                .description("Calls refused because Groq's window would not reset within max-wait-ms")
+                .tag("target", target)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Completes once a call costing about {@code estimatedTokens} fits in Groq's current window, or
+     * fails with {@link UpstreamOverloadedException} if it would not fit before the deadline.
+     */
+    public CompletableFuture<Void> admit(long estimatedTokens) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return admit(estimatedTokens, clock.getAsLong() + maxWaitNanos, false);
+    }
+
+    private CompletableFuture<Void> admit(long estimatedTokens, long deadline, boolean waited) {
+        long waitNanos = tryReserve(estimatedTokens);
+        if (waitNanos == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (clock.getAsLong() + waitNanos - deadline > 0) {
+            rejected.increment();
+            logger.warn("Groq rate limit reached, next window in {} ms", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            return CompletableFuture.failedFuture(
+                    new UpstreamOverloadedException("Groq rate limit reached", Duration.ofNanos(waitNanos)));
+        }
+        if (!waited) {
+            delayed.increment();
+        }
+        return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS))
+                .thenCompose(ignored -> admit(estimatedTokens, deadline, true));
+    }
+
+    /**
+     * Deducts the call from the known budgets, or returns how long to wait before trying again.
+     */
+    synchronized long tryReserve(long estimatedTokens) {
+        long now = clock.getAsLong();
+        if (blockedUntil - now > 0) {
+            return blockedUntil - now;
+        }
+        // a window that has reset is full again; count down from its limit until the next response
+        if (!requestsRefilled && requestsResetAt - now <= 0 && requestLimit != UNKNOWN) {
+            remainingRequests = requestLimit;
+            requestsRefilled = true;
+        }
+        if (!tokensRefilled && tokensResetAt - now <= 0 && tokenLimit != UNKNOWN) {
+            remainingTokens = tokenLimit;
+            tokensRefilled = true;
+        }
+        if (remainingRequests == 0 && requestsResetAt - now > 0) {
+            return requestsResetAt - now;
+        }
+        if (remainingTokens != UNKNOWN && remainingTokens < estimatedTokens && tokensResetAt - now > 0) {
+            return tokensResetAt - now;
+        }
+        if (remainingRequests > 0) {
+            remainingRequests--;
+        }
+        if (remainingTokens > 0) {
+            remainingTokens = Math.max(0, remainingTokens - estimatedTokens);
+        }
+        return 0;
+    }
+
+    /**
+     * Whether a call would have to wait right now, without reserving anything; lets the router prefer
+     * targets with room in their window.
+     */
+    public synchronized boolean throttled() {
+        if (!enabled) {
+            return false;
+        }
+        long now = clock.getAsLong();
+        return blockedUntil - now > 0
+                || (remainingRequests == 0 && requestsResetAt - now > 0)
+                || (remainingTokens == 0 && tokensResetAt - now > 0);
+    }
+
+    /**
+     * Takes the provider's view of the windows from any Groq response, including errors; a 429's
+     * {@code Retry-After} holds back every call until it has passed.
+     */
+    public synchronized void observe(HttpHeaders headers) {
+        if (!enabled || headers == null) {
+            return;
+        }
+        long now = clock.getAsLong();
+        requestLimit = longHeader(headers, LIMIT_REQUESTS, requestLimit);
+        tokenLimit = longHeader(headers, LIMIT_TOKENS, tokenLimit);
+        remainingRequests = longHeader(headers, REMAINING_REQUESTS, remainingRequests);
+        remainingTokens = longHeader(headers, REMAINING_TOKENS, remainingTokens);
+        Duration requestsReset = parseDuration(headers.getFirst(RESET_REQUESTS));
+        if (requestsReset != null) {
+            requestsResetAt = now + requestsReset.toNanos();
+            requestsRefilled = false;
+        }
+        Duration tokensReset = parseDuration(headers.getFirst(RESET_TOKENS));
+        if (tokensReset != null) {
+            tokensResetAt = now + tokensReset.toNanos();
+            tokensRefilled = false;
+        }
+        String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (retryAfter != null) {
+            try {
+                blockedUntil = now + TimeUnit.MILLISECONDS.toNanos((long) (Double.parseDouble(retryAfter.trim()) * 1000));
+            } catch (NumberFormatException ex) {
+                logger.debug("Ignoring non-numeric Retry-After from Groq: {}", retryAfter);
+            }
+        }
+    }
+
+    private static long longHeader(HttpHeaders headers, String name, long current) {
+        String value = headers.getFirst(name);
+        if (value == null) {
+            return current;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            return current;
+        }
+    }
+
+    static Duration parseDuration(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        Matcher matcher = DURATION_PART.matcher(value.trim());
+        double millis = 0;
+        boolean matched = false;
+        while (matcher.find()) {
+            matched = true;
+            double amount = Double.parseDouble(matcher.group(1));
+            millis += switch (matcher.group(2)) {
+                case "h" -> amount * 3_600_000;
+                case "m" -> amount * 60_000;
+                case "s" -> amount * 1_000;
+                default -> amount;
+            };
+        }
+        return matched ? Duration.ofNanos((long) (millis * 1_000_000)) : null;
+    }
+
+    private synchronized double remaining(boolean requests) {
+        long value = requests ? remainingRequests : remainingTokens;
+        return value == UNKNOWN ? Double.NaN : value;
+    }
+}
@@ -0,0 +1,318 @@
+package com.chatbot.integration;
+
+import com.chatbot.exception.UpstreamException;
+import com.chatbot.exception.UpstreamOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Retries, hedging and circuit breaking around one logical Groq call.
+ * <ul>
+ *     <li>Retries: up to {@code app.groq.retry.max-attempts} attempts on 408/429/5xx and I/O failures,
+ *     with full-jitter exponential backoff, each one paid for from a shared {@link RetryBudget}.</li>
+ *     <li>Hedging (off by default, since a hedge is billed like any other call): if an attempt is still
+ *     running after the p95 of recent successful latencies, a second one is started from the same
+ *     budget and the first success wins.</li>
+ *     <li>Circuit breaking: see {@link UpstreamCircuitBreaker}.</li>
+ * </ul>
+ * Failures that survive all of this come out as {@link UpstreamException}: 503 for overload, 504 for
+ * timeouts and 502 for anything else Groq got wrong.
+ */
+@Component
+public class UpstreamResilience {
+
+    private static final Set<Integer> RETRYABLE_STATUSES = Set.of(408, 429, 500, 502, 503, 504);
+    private static final int LATENCY_SAMPLES = 100;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamResilience.class);
+
+    private final UpstreamCircuitBreaker circuitBreaker;
+    private final RetryBudget retryBudget;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final boolean hedgingEnabled;
+    private final long hedgeMinDelayNanos;
+    private final Counter retries;
+    private final Counter retriesDenied;
+    private final Counter hedgesFired;
+    private final Counter hedgesWon;
+
+    // guarded by this: ring buffer of recent successful attempt latencies
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int latencyCount;
+    private int latencyNext;
+
+    public UpstreamResilience(UpstreamCircuitBreaker circuitBreaker,
+                              @Value("${app.groq.retry.max-attempts:3}") int maxAttempts,
+                              @Value("${app.groq.retry.initial-backoff-ms:200}") long initialBackoffMs,
+                              @Value("${app.groq.retry.max-backoff-ms:2000}") long maxBackoffMs,
+                              @Value("${app.groq.retry.budget-ratio:0.1}") double budgetRatio,
+                              @Value("${app.groq.retry.budget-burst:10}") int budgetBurst,
+                              @Value("${app.groq.hedging.enabled:false}") boolean hedgingEnabled,
+                              @Value("${app.groq.hedging.min-delay-ms:1000}") long hedgeMinDelayMs,
+                              MeterRegistry meterRegistry) {
+        this.circuitBreaker = circuitBreaker;
+        this.retryBudget = new RetryBudget(budgetRatio, budgetBurst);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.hedgingEnabled = hedgingEnabled;
+        this.hedgeMinDelayNanos = TimeUnit.MILLISECONDS.toNanos(hedgeMinDelayMs);
+        Gauge.builder("groq.retry.budget", retryBudget, RetryBudget::available)
+                .description("Retries and hedges that may currently be spent")
+                .register(meterRegistry);
+        this.retries = retryCounter(meterRegistry, "attempted");
+        this.retriesDenied = retryCounter(meterRegistry, "budget-exhausted");
+        this.hedgesFired = Counter.builder("groq.hedges").tag("outcome", "fired")
+                .description("Hedged Groq calls started").register(meterRegistry);
+        this.hedgesWon = Counter.builder("groq.hedges").tag("outcome", "won")
+                .description("Hedged Groq calls that answered first").register(meterRegistry);
+    }
+
+    private static Counter retryCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("groq.retries")
+                .description("Groq retries, by whether the retry budget allowed them")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs {@code attempt} with retries and, if enabled, hedging. Each invocation of the supplier must
+     * start a fresh upstream call.
+     */
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> attempt) {
+        retryBudget.onCall();
+        return execute(attempt, 1).exceptionallyCompose(ex -> CompletableFuture.failedFuture(translate(ex)));
+    }
+
+    private <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> attempt, int attemptNo) {
+        return hedged(attempt).exceptionallyCompose(ex -> {
+            if (!shouldRetry(ex, attemptNo)) {
+                return CompletableFuture.failedFuture(ex);
+            }
+            long backoff = backoffMillis(attemptNo);
+            logger.debug("Retrying Groq call (attempt {}) in {} ms after {}", attemptNo + 1, backoff, unwrap(ex).toString());
+            return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS))
+                    .thenCompose(ignored -> execute(attempt, attemptNo + 1));
+        });
+    }
+
+    /**
+     * Blocking variant for calls that already run on a worker thread, such as streaming. No hedging;
+     * {@code retryable} lets the caller veto a retry, e.g. once tokens were already forwarded.
+     */
+    public <T> T executeBlocking(Supplier<T> attempt, BooleanSupplier retryable) {
+        retryBudget.onCall();
+        for (int attemptNo = 1; ; attemptNo++) {
+            try {
+                return guarded(attempt);
+            } catch (RuntimeException ex) {
+                if (!retryable.getAsBoolean() || !shouldRetry(ex, attemptNo)) {
+                    throw translate(ex);
+                }
+                try {
+                    Thread.sleep(backoffMillis(attemptNo));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw translate(ex);
+                }
+            }
+        }
+    }
+
+    private <T> T guarded(Supplier<T> attempt) {
+        circuitBreaker.acquire();
+        try {
+            T result = attempt.get();
+            // not sampled for hedging: blocking calls include streams, which take far longer by nature
+            circuitBreaker.onSuccess();
+            return result;
+        } catch (RuntimeException ex) {
+            recordOutcome(ex);
+            throw ex;
+        }
+    }
+
+    private <T> CompletableFuture<T> guardedAsync(Supplier<CompletableFuture<T>> attempt) {
+        try {
+            circuitBreaker.acquire();
+        } catch (UpstreamOverloadedException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        long start = System.nanoTime();
+        CompletableFuture<T> call;
+        try {
+            call = attempt.get();
+        } catch (RuntimeException ex) {
+            recordOutcome(ex);
+            return CompletableFuture.failedFuture(ex);
+        }
+        return call.whenComplete((result, ex) -> {
+            if (ex == null) {
+                circuitBreaker.onSuccess();
+                recordLatency(System.nanoTime() - start);
+            } else {
+                recordOutcome(ex);
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> hedged(Supplier<CompletableFuture<T>> attempt) {
+        CompletableFuture<T> primary = guardedAsync(attempt);
+        long hedgeDelay = hedgeDelayNanos();
+        if (hedgeDelay <= 0 || primary.isDone()) {
+            return primary;
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<T>> hedge = new AtomicReference<>();
+        primary.whenComplete((value, ex) -> {
+            if (ex == null) {
+                CompletableFuture<T> secondary = hedge.get();
+                if (result.complete(value) && secondary != null) {
+                    secondary.cancel(true);
+                }
+            } else if (hedge.get() == null || hedge.get().isCompletedExceptionally()) {
+                result.completeExceptionally(ex);
+            }
+        });
+        CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.NANOSECONDS).execute(() -> {
+            if (primary.isDone() || !retryBudget.tryWithdraw()) {
+                return;
+            }
+            hedgesFired.increment();
+            CompletableFuture<T> secondary = guardedAsync(attempt);
+            hedge.set(secondary);
+            secondary.whenComplete((value, ex) -> {
+                if (ex == null) {
+                    if (result.complete(value)) {
+                        hedgesWon.increment();
+                        primary.cancel(true);
+                    }
+                } else if (primary.isCompletedExceptionally()) {
+                    result.completeExceptionally(ex);
+                }
+            });
+        });
+        return result;
+    }
+
+    private boolean shouldRetry(Throwable ex, int attemptNo) {
+        if (attemptNo >= maxAttempts || !isRetryable(unwrap(ex))) {
+            return false;
+        }
+        if (!retryBudget.tryWithdraw()) {
+            retriesDenied.increment();
+            return false;
+        }
+        retries.increment();
+        return true;
+    }
+
+    // full jitter: uniformly random up to the exponential cap, so retries from many callers spread out
+    private long backoffMillis(int attemptNo) {
+        long cap = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attemptNo - 1, 20));
+        return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private void recordOutcome(Throwable ex) {
+        Throwable cause = unwrap(ex);
+        if (cause instanceof UpstreamOverloadedException) {
+            // shed locally by the circuit, pacer or limiter; says nothing new about Groq
+            return;
+        }
+        if (isRetryable(cause)) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        latencies[latencyNext] = nanos;
+        latencyNext = (latencyNext + 1) % latencies.length;
+        latencyCount = Math.min(latencyCount + 1, latencies.length);
+    }
+
+    /**
+     * p95 of recent successful attempts, never below {@code min-delay-ms}; 0 when hedging is off or
+     * there is not enough history to tell what slow means yet.
+     */
+    synchronized long hedgeDelayNanos() {
+        if (!hedgingEnabled || latencyCount < MIN_LATENCY_SAMPLES) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        return Math.max(hedgeMinDelayNanos, sorted[(int) Math.ceil(0.95 * sorted.length) - 1]);
+    }
+
+    static boolean isRetryable(Throwable cause) {
+        if (cause instanceof HttpStatusCodeException status) {
+            return RETRYABLE_STATUSES.contains(status.getStatusCode().value());
+        }
+        // IOException covers HttpTimeoutException; an unparseable reply arrives as UncheckedIOException and is not retried
+        return cause instanceof ResourceAccessException || cause instanceof IOException;
+    }
+
+    private static RuntimeException translate(Throwable ex) {
+        Throwable cause = unwrap(ex);
+        if (cause instanceof UpstreamException upstream) {
+            return upstream;
+        }
+        if (cause instanceof HttpStatusCodeException status) {
+            int code = status.getStatusCode().value();
+            if (code == HttpStatus.TOO_MANY_REQUESTS.value() || code == HttpStatus.SERVICE_UNAVAILABLE.value()) {
+                return new UpstreamOverloadedException("Groq is overloaded (" + code + ")", retryAfter(status), status);
+            }
+            return new UpstreamException(HttpStatus.BAD_GATEWAY, "Groq returned " + code, status);
+        }
+        if (cause instanceof HttpTimeoutException
+                || (cause instanceof ResourceAccessException && cause.getCause() instanceof SocketTimeoutException)) {
+            return new UpstreamException(HttpStatus.GATEWAY_TIMEOUT, "Groq did not answer in time", cause);
+        }
+        if (cause instanceof RestClientException || cause instanceof IOException || cause instanceof UncheckedIOException) {
+            return new UpstreamException(HttpStatus.BAD_GATEWAY, "Groq call failed: " + cause.getMessage(), cause);
+        }
+        return cause instanceof RuntimeException runtime ? runtime : new CompletionException(cause);
+    }
+
+    private static Duration retryAfter(HttpStatusCodeException status) {
+        HttpHeaders headers = status.getResponseHeaders();
+        String value = headers != null ? headers.getFirst(HttpHeaders.RETRY_AFTER) : null;
+        try {
+            return value != null ? Duration.ofSeconds(Math.max(1, Long.parseLong(value.trim()))) : Duration.ofSeconds(1);
+        } catch (NumberFormatException ex) {
+            return Duration.ofSeconds(1);
+        }
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+}
@@ -0,0 +1,309 @@
+package com.chatbot.integration;
+
+import com.chatbot.exception.UpstreamOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Spreads Groq calls over a pool of {@link UpstreamTarget}s configured under {@code app.groq.targets}
+ * (each a url, api-key and model; unset fields fall back to {@code app.groq-api-url},
+ * {@code app.groq-api-key} and {@code app.groq.model}). Without that list there is a single target, plus
+ * a fallback one when {@code app.groq.fallback-model} is set.
+ * <p>
+ * Each call goes to the primary target with the lowest score: its outstanding calls for
+ * {@code least-outstanding}, or its EWMA latency weighted by outstanding calls for {@code ewma}. Targets
+ * whose rate-limit window is exhausted are skipped while others have room; a target that failed
+ * {@code eject-after-failures} times in a row is taken out for {@code ejection-ms}. Once the best
+ * primary already has {@code fallback-outstanding} calls in flight, or none is healthy, calls go to a
+ * fallback target instead.
+ */
+@Component
+public class UpstreamRouter {
+
+    public enum Strategy { LEAST_OUTSTANDING, EWMA }
+
+    /**
+     * One entry of {@code app.groq.targets}; blank fields take the single-endpoint defaults.
+     */
+    public record TargetProperties(String name, String url, String apiKey, String model, boolean fallback) {
+    }
+
+    // weight of the newest sample; ~0.3 forgets a latency spike after a handful of calls
+    private static final double EWMA_WEIGHT = 0.3;
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamRouter.class);
+
+    private final List<UpstreamTarget> targets;
+    private final Strategy strategy;
+    private final int ejectAfterFailures;
+    private final long ejectionNanos;
+    private final int fallbackOutstanding;
+    private final LongSupplier clock;
+    private final Counter fallbacks;
+    private final Map<UpstreamTarget, Counter> ejections = new HashMap<>();
+
+    @Autowired
+    public UpstreamRouter(Environment environment,
+                          @Value("${app.groq-api-url}") String defaultUrl,
+                          @Value("${app.groq-api-key}") String defaultApiKey,
+                          @Value("${app.groq.model:allam-2-7b}") String defaultModel,
+                          @Value("${app.groq.fallback-model:}") String fallbackModel,
+                          @Value("${app.groq.routing.strategy:ewma}") Strategy strategy,
+                          @Value("${app.groq.routing.eject-after-failures:3}") int ejectAfterFailures,
+                          @Value("${app.groq.routing.ejection-ms:30000}") long ejectionMs,
+                          @Value("${app.groq.routing.fallback-outstanding:8}") int fallbackOutstanding,
+                          @Value("${app.groq.pacing.enabled:true}") boolean pacingEnabled,
+                          @Value("${app.groq.pacing.max-wait-ms:5000}") long pacingMaxWaitMs,
+                          MeterRegistry meterRegistry) {
+        this(configuredTargets(environment, defaultUrl, defaultApiKey, defaultModel, fallbackModel), strategy,
+                ejectAfterFailures, ejectionMs, fallbackOutstanding, pacingEnabled, pacingMaxWaitMs, meterRegistry, System::nanoTime);
+    }
+
+    public UpstreamRouter(List<TargetProperties> targets, Strategy strategy, int ejectAfterFailures, long ejectionMs,
+                          int fallbackOutstanding, boolean pacingEnabled, long pacingMaxWaitMs, MeterRegistry meterRegistry) {
+        this(targets, strategy, ejectAfterFailures, ejectionMs, fallbackOutstanding, pacingEnabled, pacingMaxWaitMs,
+                meterRegistry, System::nanoTime);
+    }
+
+    UpstreamRouter(List<TargetProperties> targets, Strategy strategy, int ejectAfterFailures, long ejectionMs,
+                   int fallbackOutstanding, boolean pacingEnabled, long pacingMaxWaitMs, MeterRegistry meterRegistry,
+                   LongSupplier clock) {
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("At least one Groq target is required");
+        }
+        this.strategy = strategy;
+        this.ejectAfterFailures = Math.max(1, ejectAfterFailures);
+        this.ejectionNanos = TimeUnit.MILLISECONDS.toNanos(ejectionMs);
+        this.fallbackOutstanding = fallbackOutstanding;
+        this.clock = clock;
+        this.targets = new ArrayList<>(targets.size());
+        for (TargetProperties properties : targets) {
+            UpstreamTarget target = new UpstreamTarget(properties.name(), properties.url(), properties.apiKey(),
+                    properties.model(), properties.fallback(),
+                    new UpstreamRateLimitPacer(pacingEnabled, pacingMaxWaitMs, properties.name(), meterRegistry, clock));
+            this.targets.add(target);
+            Gauge.builder("groq.upstream.outstanding", this, router -> router.outstanding(target))
+                    .description("Groq calls in flight per target")
+                    .tag("target", target.name())
+                    .register(meterRegistry);
+            Gauge.builder("groq.upstream.latency", this, router -> router.ewmaLatencyMillis(target))
+                    .description("EWMA latency of successful Groq calls per target, in milliseconds")
+                    .tag("target", target.name())
+                    .register(meterRegistry);
+            ejections.put(target, Counter.builder("groq.upstream.ejections")
+                    .description("Times a Groq target was taken out of rotation after repeated failures")
+                    .tag("target", target.name())
+                    .register(meterRegistry));
+        }
+        this.fallbacks = Counter.builder("groq.upstream.fallbacks")
+                .description("Calls sent to a fallback model because the primary targets were busy or unhealthy")
+                .register(meterRegistry);
+    }
+
+    private static List<TargetProperties> configuredTargets(Environment environment, String defaultUrl, String defaultApiKey,
+                                                            String defaultModel, String fallbackModel) {
+        List<TargetProperties> configured = Binder.get(environment)
+                .bind("app.groq.targets", Bindable.listOf(TargetProperties.class))
+                .orElseGet(List::of);
+        List<TargetProperties> targets = new ArrayList<>();
+        for (int i = 0; i < configured.size(); i++) {
+            TargetProperties target = configured.get(i);
+            targets.add(new TargetProperties(
+                    orDefault(target.name(), "target-" + i),
+                    orDefault(target.url(), defaultUrl),
+                    orDefault(target.apiKey(), defaultApiKey),
+                    orDefault(target.model(), defaultModel),
+                    target.fallback()));
+        }
+        if (targets.isEmpty()) {
+            targets.add(new TargetProperties("default", defaultUrl, defaultApiKey, defaultModel, false));
+            if (fallbackModel != null && !fallbackModel.isBlank()) {
+                targets.add(new TargetProperties("fallback", defaultUrl, defaultApiKey, fallbackModel, true));
+            }
+        }
+        return targets;
+    }
+
+    private static String orDefault(String value, String fallback) {
+        return value == null || value.isBlank() ? fallback : value;
+    }
+
+    /**
+     * The model callers ask for: that of the first primary target. Replies from fallback targets are
+     * not cached under it.
+     */
+    public String defaultModel() {
+        return targets.stream().filter(target -> !target.fallback()).findFirst().orElse(targets.get(0)).model();
+    }
+
+    /**
+     * Picks the target for one upstream attempt. The returned lease must be released exactly once.
+     */
+    public synchronized Lease acquire() {
+        long now = clock.getAsLong();
+        UpstreamTarget primary = best(false, now);
+        UpstreamTarget chosen = primary;
+        if (primary == null || primary.outstanding >= fallbackOutstanding) {
+            UpstreamTarget fallback = best(true, now);
+            if (fallback != null && (primary == null || fallback.outstanding < fallbackOutstanding)) {
+                chosen = fallback;
+                fallbacks.increment();
+            }
+        }
+        if (chosen == null) {
+            // every target is out or throttled; try the least loaded one rather than refusing outright
+            chosen = targets.stream().min(scoreOrder()).orElseThrow();
+        }
+        chosen.outstanding++;
+        return new Lease(chosen);
+    }
+
+    private UpstreamTarget best(boolean fallback, long now) {
+        return targets.stream()
+                .filter(target -> target.fallback() == fallback && available(target, now))
+                .min(scoreOrder())
+                .orElse(null);
+    }
+
+    private boolean available(UpstreamTarget target, long now) {
+        if (target.ejected) {
+            if (target.ejectedUntil - now > 0) {
+                return false;
+            }
+            // back in rotation; one more failure run will take it out again
+            target.ejected = false;
+            target.consecutiveFailures = 0;
+            logger.info("Groq target {} is back in rotation", target.name());
+        }
+        return !target.pacer().throttled();
+    }
+
+    private Comparator<UpstreamTarget> scoreOrder() {
+        return Comparator.comparingDouble(this::score).thenComparingInt(target -> target.outstanding);
+    }
+
+    private double score(UpstreamTarget target) {
+        return switch (strategy) {
+            case LEAST_OUTSTANDING -> target.outstanding;
+            // unsampled targets score 0 and get probed first
+            case EWMA -> target.ewmaLatencyNanos * (target.outstanding + 1);
+        };
+    }
+
+    private synchronized void complete(UpstreamTarget target, long latencyNanos, Throwable failure) {
+        target.outstanding--;
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause == null) {
+            target.consecutiveFailures = 0;
+            if (latencyNanos >= 0) {
+                target.ewmaLatencyNanos = target.sampled
+                        ? target.ewmaLatencyNanos + EWMA_WEIGHT * (latencyNanos - target.ewmaLatencyNanos)
+                        : latencyNanos;
+                target.sampled = true;
+            }
+            return;
+        }
+        if (cause instanceof UpstreamOverloadedException || cause instanceof CancellationException) {
+            // shed locally or abandoned for a hedge; says nothing about this target
+            return;
+        }
+        if (!unhealthy(cause)) {
+            target.consecutiveFailures = 0;
+            return;
+        }
+        if (++target.consecutiveFailures >= ejectAfterFailures && !target.ejected) {
+            target.ejected = true;
+            target.ejectedUntil = clock.getAsLong() + ejectionNanos;
+            ejections.get(target).increment();
+            logger.warn("Groq target {} failed {} times in a row, out of rotation for {} ms", target.name(),
+                    target.consecutiveFailures, TimeUnit.NANOSECONDS.toMillis(ejectionNanos));
+        }
+    }
+
+    // transient failures, plus a rejected key: that one is specific to the target, not the request
+    private static boolean unhealthy(Throwable cause) {
+        if (cause instanceof HttpStatusCodeException status
+                && (status.getStatusCode().value() == 401 || status.getStatusCode().value() == 403)) {
+            return true;
+        }
+        return UpstreamResilience.isRetryable(cause);
+    }
+
+    synchronized boolean ejected(UpstreamTarget target) {
+        return target.ejected && target.ejectedUntil - clock.getAsLong() > 0;
+    }
+
+    List<UpstreamTarget> targets() {
+        return List.copyOf(targets);
+    }
+
+    private synchronized double outstanding(UpstreamTarget target) {
+        return target.outstanding;
+    }
+
+    private synchronized double ewmaLatencyMillis(UpstreamTarget target) {
+        return target.sampled ? target.ewmaLatencyNanos / 1_000_000.0 : Double.NaN;
+    }
+
+    /**
+     * One attempt's claim on a target. Call {@link #started()} right before the request goes out so
+     * only Groq's own latency is sampled, and {@link #release(Throwable)} with the outcome. A stream also
+     * calls {@link #firstToken()}, so it is sampled up to its first token rather than its full length.
+     */
+    public final class Lease {
+
+        private final UpstreamTarget target;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile long startedAt = -1;
+        private volatile long firstTokenAt = -1;
+
+        private Lease(UpstreamTarget target) {
+            this.target = target;
+        }
+
+        public UpstreamTarget target() {
+            return target;
+        }
+
+        public void started() {
+            startedAt = clock.getAsLong();
+        }
+
+        public void firstToken() {
+            if (firstTokenAt < 0) {
+                firstTokenAt = clock.getAsLong();
+            }
+        }
+
+        /**
+         * @param failure the attempt's failure, or {@code null} on success
+         */
+        public void release(Throwable failure) {
+            if (released.compareAndSet(false, true)) {
+                long start = startedAt;
+                long end = firstTokenAt < 0 ? clock.getAsLong() : firstTokenAt;
+                complete(target, start < 0 ? -1 : end - start, failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.chatbot.integration;
+
+/**
+ * One Groq endpoint, API key and model that {@link UpstreamRouter} can send a call to, with its own
+ * {@link UpstreamRateLimitPacer} since Groq meters each key separately. The load and health figures
+ * below are guarded by the owning router.
+ */
+public final class UpstreamTarget {
+
+    private final String name;
+    private final String url;
+    private final String apiKey;
+    private final String model;
+    private final boolean fallback;
+    private final UpstreamRateLimitPacer pacer;
+
+    int outstanding;
+    double ewmaLatencyNanos;
+    boolean sampled;
+    int consecutiveFailures;
+    long ejectedUntil;
+    boolean ejected;
+
+    UpstreamTarget(String name, String url, String apiKey, String model, boolean fallback, UpstreamRateLimitPacer pacer) {
+        this.name = name;
+        this.url = url;
+        this.apiKey = apiKey;
+        this.model = model;
+        this.fallback = fallback;
+        this.pacer = pacer;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String url() {
+        return url;
+    }
+
+    public String apiKey() {
+        return apiKey;
+    }
+
+    public String model() {
+        return model;
+    }
+
+    /**
+     * A cheaper or faster model only used once the primary targets are busy or all unhealthy.
+     */
+    public boolean fallback() {
+        return fallback;
+    }
+
+    public UpstreamRateLimitPacer pacer() {
+        return pacer;
+    }
+}
@@ -8,13 +8,19 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "chat_messages")
+@Table(name = "chat_messages",
+        indexes = {
+                @Index(name = "idx_chat_messages_session_created", columnList = "session_id, created_at, id"),
+                @Index(name = "idx_chat_messages_session_seq", columnList = "session_id, seq")
+        })
 @Getter
 @Setter
 public class ChatMessage {
 
+    // pooled sequence instead of IDENTITY: ids are known before the INSERT, so Hibernate can batch them
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "chat_messages_seq")
+    @SequenceGenerator(name = "chat_messages_seq", sequenceName = "chat_messages_seq", allocationSize = 50)
     private Long id;
     @NotNull
     private String sessionId;
@@ -24,6 +30,8 @@ public class ChatMessage {
     @NotNull
     private String message;
     private LocalDateTime createdAt = LocalDateTime.now();
+    // position within the session, 1-based; null for rows written before it existed
+    private Long seq;
 
 }
 
@@ -1,5 +1,6 @@
 package com.chatbot.models;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
@@ -22,6 +23,9 @@ public class ChatSession {
 
     private LocalDateTime createdAt;
     private boolean favorite;
+    // set by a soft delete; the row goes away once SessionPurger has removed its messages
+    @Column(columnDefinition = "boolean default false not null")
+    private boolean deleted;
 
     public ChatSession() {
         this.sessionId = UUID.randomUUID().toString();
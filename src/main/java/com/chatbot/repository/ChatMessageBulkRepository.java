@@ -0,0 +1,14 @@
+package com.chatbot.repository;
+
+import com.chatbot.models.ChatMessage;
+
+import java.util.List;
+
+public interface ChatMessageBulkRepository {
+
+    /**
+     * Inserts the messages in large JDBC batches without keeping them in the persistence context.
+     * Meant for imports; returns the number of rows written.
+     */
+    int bulkInsert(List<ChatMessage> messages);
+}
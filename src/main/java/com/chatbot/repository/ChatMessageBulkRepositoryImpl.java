@@ -0,0 +1,42 @@
+package com.chatbot.repository;
+
+import com.chatbot.models.ChatMessage;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+class ChatMessageBulkRepositoryImpl implements ChatMessageBulkRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.persistence.import-batch-size:1000}")
+    private int importBatchSize;
+
+    @Override
+    @Transactional
+    public int bulkInsert(List<ChatMessage> messages) {
+        Session session = entityManager.unwrap(Session.class);
+        Integer previous = session.getJdbcBatchSize();
+        // a bigger batch than the global one; flushing and clearing per batch keeps memory flat
+        session.setJdbcBatchSize(importBatchSize);
+        try {
+            for (int i = 0; i < messages.size(); i++) {
+                entityManager.persist(messages.get(i));
+                if ((i + 1) % importBatchSize == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+            }
+            entityManager.flush();
+            entityManager.clear();
+        } finally {
+            session.setJdbcBatchSize(previous);
+        }
+        return messages.size();
+    }
+}
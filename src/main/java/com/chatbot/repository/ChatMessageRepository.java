@@ -3,14 +3,70 @@ package com.chatbot.repository;
 import com.chatbot.models.ChatMessage;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
-public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
+public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>, ChatMessageBulkRepository {
     List<ChatMessage> findBySessionIdOrderByCreatedAtAsc(String sessionId);
 
     Page<ChatMessage> findBySessionId(String sessionId, Pageable pageable);
 
-    void deleteBySessionId(String sessionId);
+    List<ChatMessage> findBySessionIdOrderByCreatedAtDescIdDesc(String sessionId, Pageable pageable);
+
+    // served by idx_chat_messages_session_seq without touching the session's other rows
+    @Query("select max(m.seq) from ChatMessage m where m.sessionId = :sessionId")
+    Long findMaxSeq(@Param("sessionId") String sessionId);
+
+    /**
+     * Highest seq of the session; older rows without one count as numbered by position, which costs a
+     * count only until the session's first numbered message is stored.
+     */
+    default long findLastSeq(String sessionId) {
+        Long seq = findMaxSeq(sessionId);
+        return seq != null ? seq : countBySessionId(sessionId);
+    }
+
+    @Query("select max(m.createdAt) from ChatMessage m where m.sessionId = :sessionId")
+    LocalDateTime findLastCreatedAt(@Param("sessionId") String sessionId);
+
+    // keyset pages over (createdAt, id), served by idx_chat_messages_session_created; a Slice skips the count query
+
+    @Query("select m from ChatMessage m where m.sessionId = :sessionId order by m.createdAt asc, m.id asc")
+    Slice<ChatMessage> findFirstSlice(@Param("sessionId") String sessionId, Pageable pageable);
+
+    @Query("select m from ChatMessage m where m.sessionId = :sessionId"
+            + " and (m.createdAt > :createdAt or (m.createdAt = :createdAt and m.id > :id))"
+            + " order by m.createdAt asc, m.id asc")
+    Slice<ChatMessage> findSliceAfter(@Param("sessionId") String sessionId, @Param("createdAt") LocalDateTime createdAt,
+                                      @Param("id") long id, Pageable pageable);
+
+    @Query("select m from ChatMessage m where m.sessionId = :sessionId"
+            + " and (m.createdAt < :createdAt or (m.createdAt = :createdAt and m.id < :id))"
+            + " order by m.createdAt desc, m.id desc")
+    Slice<ChatMessage> findSliceBefore(@Param("sessionId") String sessionId, @Param("createdAt") LocalDateTime createdAt,
+                                       @Param("id") long id, Pageable pageable);
+
+    long countBySessionId(String sessionId);
+
+    // reads at most threshold + 1 index entries, where a count would walk every message of the session
+    @Query(nativeQuery = true, value = "select exists (select 1 from chat_messages where session_id = :sessionId"
+            + " limit 1 offset :threshold)")
+    boolean hasMoreMessagesThan(@Param("sessionId") String sessionId, @Param("threshold") long threshold);
+
+    // one DELETE statement; the derived delete would load and remove every entity individually
+    @Modifying
+    @Query("delete from ChatMessage m where m.sessionId = :sessionId")
+    int deleteBySessionId(@Param("sessionId") String sessionId);
+
+    // bounded chunk for the background purge of soft-deleted sessions, so no single transaction runs long
+    @Modifying
+    @Query(nativeQuery = true, value = "delete from chat_messages where id in"
+            + " (select id from chat_messages where session_id = :sessionId limit :limit)")
+    int deleteChunkBySessionId(@Param("sessionId") String sessionId, @Param("limit") int limit);
 }
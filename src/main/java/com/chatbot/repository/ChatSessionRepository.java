@@ -1,7 +1,34 @@
 package com.chatbot.repository;
 
 import com.chatbot.models.ChatSession;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 public interface ChatSessionRepository extends JpaRepository<ChatSession, String> {
+
+    // sessions marked deleted are invisible to the API while their messages are being purged
+
+    Optional<ChatSession> findBySessionIdAndDeletedFalse(String sessionId);
+
+    boolean existsBySessionIdAndDeletedFalse(String sessionId);
+
+    @Query("select s.sessionId from ChatSession s where s.deleted = false")
+    List<String> findAllSessionIds();
+
+    @Query("select s.sessionId from ChatSession s where s.deleted = false and s.sessionId in :sessionIds")
+    List<String> findExistingSessionIds(@Param("sessionIds") Collection<String> sessionIds);
+
+    @Query("select s.sessionId from ChatSession s where s.deleted = true")
+    List<String> findDeletedSessionIds(Pageable pageable);
+
+    @Modifying
+    @Query("update ChatSession s set s.deleted = true where s.sessionId = :sessionId")
+    int markDeleted(@Param("sessionId") String sessionId);
 }
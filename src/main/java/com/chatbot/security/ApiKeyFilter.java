@@ -12,6 +12,10 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
 
 @Component
@@ -37,8 +41,21 @@ public class ApiKeyFilter extends OncePerRequestFilter {
             return;
         }
         UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(
-                "apiKeyUser", null, List.of(new SimpleGrantedAuthority("ROLE_USER")));
+                fingerprint(key), null, List.of(new SimpleGrantedAuthority("ROLE_USER")));
         SecurityContextHolder.getContext().setAuthentication(auth);
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * Stable, non-reversible name for an API key, used as the principal so per-key limits never keep
+     * the key itself in memory or logs.
+     */
+    static String fingerprint(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return "key-" + HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
 }
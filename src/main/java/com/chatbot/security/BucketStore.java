@@ -0,0 +1,108 @@
+package com.chatbot.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.github.bucket4j.Bucket;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Per-client rate-limit buckets, bounded in both time and count. A bucket left alone for
+ * {@code idleTimeout} has refilled completely, so dropping it is indistinguishable from keeping it;
+ * past {@code maxBuckets} the least valuable entries are evicted, which keeps memory flat no matter
+ * how many distinct client addresses show up. Buckets that can go into debt take an {@code idleNanos}
+ * function instead, which is asked on every access how long that bucket needs to refill. In distributed mode the entries are proxies to the
+ * shared state, kept so their batching/delaying optimization state survives between requests.
+ * Size and eviction counts are published as {@code cache.*} meters tagged with the store name,
+ * {@code rate.limit.buckets} by default.
+ */
+public class BucketStore implements MeterBinder {
+
+    private final Cache<String, Bucket> buckets;
+    private final Function<String, ? extends Bucket> bucketFactory;
+    private final String name;
+
+    public BucketStore(Function<String, ? extends Bucket> bucketFactory, long maxBuckets, Duration idleTimeout) {
+        this("rate.limit.buckets", bucketFactory, maxBuckets, idleTimeout);
+    }
+
+    public BucketStore(String name, Function<String, ? extends Bucket> bucketFactory, long maxBuckets, Duration idleTimeout) {
+        this(name, bucketFactory, maxBuckets, idleTimeout, Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+    BucketStore(Function<String, ? extends Bucket> bucketFactory, long maxBuckets, Duration idleTimeout, Ticker ticker, Executor executor) {
+        this("rate.limit.buckets", bucketFactory, maxBuckets, idleTimeout, ticker, executor);
+    }
+
+    public BucketStore(String name, Function<String, ? extends Bucket> bucketFactory, long maxBuckets, ToLongFunction<Bucket> idleNanos) {
+        this(name, bucketFactory, maxBuckets, idleNanos, Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+    BucketStore(Function<String, ? extends Bucket> bucketFactory, long maxBuckets, ToLongFunction<Bucket> idleNanos, Ticker ticker,
+                Executor executor) {
+        this("rate.limit.buckets", bucketFactory, maxBuckets, idleNanos, ticker, executor);
+    }
+
+    private BucketStore(String name, Function<String, ? extends Bucket> bucketFactory, long maxBuckets, Duration idleTimeout,
+                        Ticker ticker, Executor executor) {
+        this(name, bucketFactory, maxBuckets, bucket -> idleTimeout.toNanos(), ticker, executor);
+    }
+
+    private BucketStore(String name, Function<String, ? extends Bucket> bucketFactory, long maxBuckets, ToLongFunction<Bucket> idleNanos,
+                        Ticker ticker, Executor executor) {
+        this.name = name;
+        this.bucketFactory = bucketFactory;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxBuckets)
+                .expireAfter(new Expiry<String, Bucket>() {
+                    @Override
+                    public long expireAfterCreate(String key, Bucket bucket, long currentTime) {
+                        return idleNanos.applyAsLong(bucket);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Bucket bucket, long currentTime, long currentDuration) {
+                        return idleNanos.applyAsLong(bucket);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Bucket bucket, long currentTime, long currentDuration) {
+                        return idleNanos.applyAsLong(bucket);
+                    }
+                })
+                .ticker(ticker)
+                .executor(executor)
+                .recordStats()
+                .build();
+    }
+
+    public Bucket resolve(String clientKey) {
+        return buckets.get(clientKey, bucketFactory);
+    }
+
+    /**
+     * Re-evaluates the idle time of a bucket changed outside {@link #resolve}, e.g. one pushed into debt.
+     */
+    public void touch(String clientKey) {
+        buckets.getIfPresent(clientKey);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, buckets, name);
+    }
+
+    long size() {
+        buckets.cleanUp();
+        return buckets.estimatedSize();
+    }
+}
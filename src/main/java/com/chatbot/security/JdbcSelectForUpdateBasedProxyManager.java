@@ -0,0 +1,153 @@
+package com.chatbot.security;
+
+import io.github.bucket4j.BucketExceptions;
+import io.github.bucket4j.distributed.jdbc.SQLProxyConfiguration;
+import io.github.bucket4j.distributed.proxy.generic.select_for_update.AbstractSelectForUpdateBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.select_for_update.LockAndGetResult;
+import io.github.bucket4j.distributed.proxy.generic.select_for_update.SelectForUpdateBasedTransaction;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.text.MessageFormat;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Bucket4j's {@code SELECT ... FOR UPDATE} protocol for PostgreSQL and H2. It does what Bucket4j's
+ * {@code PostgreSQLSelectForUpdateBasedProxyManager} does, and in addition stamps every write into the
+ * {@code touchedColumn}, so rows of clients that went quiet can be found and deleted; Bucket4j 8.10
+ * has no expiry for JDBC buckets. H2, which has no {@code INSERT ... ON CONFLICT}, inserts with
+ * {@code MERGE} instead.
+ */
+public class JdbcSelectForUpdateBasedProxyManager<K> extends AbstractSelectForUpdateBasedProxyManager<K> {
+
+    public enum Dialect { POSTGRESQL, H2 }
+
+    private final SQLProxyConfiguration<K> configuration;
+    private final String removeSql;
+    private final String updateSql;
+    private final String insertSql;
+    private final String selectSql;
+
+    public JdbcSelectForUpdateBasedProxyManager(SQLProxyConfiguration<K> configuration, Dialect dialect, String touchedColumn) {
+        super(configuration.getClientSideConfig());
+        this.configuration = configuration;
+        String table = configuration.getTableName();
+        String id = configuration.getIdName();
+        String state = configuration.getStateName();
+        this.removeSql = MessageFormat.format("DELETE FROM {0} WHERE {1} = ?", table, id);
+        this.updateSql = MessageFormat.format("UPDATE {0} SET {1} = ?, {2} = ? WHERE {3} = ?", table, state, touchedColumn, id);
+        this.insertSql = switch (dialect) {
+            case POSTGRESQL -> MessageFormat.format("INSERT INTO {0} ({1}, {2}, {3}) VALUES (?, NULL, ?)"
+                    + " ON CONFLICT ({1}) DO NOTHING", table, id, state, touchedColumn);
+            case H2 -> MessageFormat.format("MERGE INTO {0} t USING (VALUES (CAST(? AS VARCHAR), CAST(? AS TIMESTAMP))) s(k, touched)"
+                    + " ON t.{1} = s.k WHEN NOT MATCHED THEN INSERT ({1}, {2}, {3}) VALUES (s.k, NULL, s.touched)",
+                    table, id, state, touchedColumn);
+        };
+        this.selectSql = MessageFormat.format("SELECT {0} FROM {1} WHERE {2} = ? FOR UPDATE", state, table, id);
+    }
+
+    @Override
+    protected SelectForUpdateBasedTransaction allocateTransaction(K key, Optional<Long> requestTimeoutNanos) {
+        Connection connection;
+        try {
+            connection = configuration.getDataSource().getConnection();
+        } catch (SQLException ex) {
+            throw new BucketExceptions.BucketExecutionException(ex);
+        }
+        return new SelectForUpdateBasedTransaction() {
+            @Override
+            public void begin(Optional<Long> timeoutNanos) {
+                try {
+                    connection.setAutoCommit(false);
+                } catch (SQLException ex) {
+                    throw new BucketExceptions.BucketExecutionException(ex);
+                }
+            }
+
+            @Override
+            public void rollback() {
+                try {
+                    connection.rollback();
+                } catch (SQLException ex) {
+                    throw new BucketExceptions.BucketExecutionException(ex);
+                }
+            }
+
+            @Override
+            public void commit(Optional<Long> timeoutNanos) {
+                try {
+                    connection.commit();
+                } catch (SQLException ex) {
+                    throw new BucketExceptions.BucketExecutionException(ex);
+                }
+            }
+
+            @Override
+            public LockAndGetResult tryLockAndGet(Optional<Long> timeoutNanos) {
+                try (PreparedStatement statement = connection.prepareStatement(selectSql)) {
+                    applyTimeout(statement, timeoutNanos);
+                    configuration.getPrimaryKeyMapper().set(statement, 1, key);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        return rs.next() ? LockAndGetResult.locked(rs.getBytes(configuration.getStateName()))
+                                : LockAndGetResult.notLocked();
+                    }
+                } catch (SQLException ex) {
+                    throw new BucketExceptions.BucketExecutionException(ex);
+                }
+            }
+
+            @Override
+            public boolean tryInsertEmptyData(Optional<Long> timeoutNanos) {
+                try (PreparedStatement statement = connection.prepareStatement(insertSql)) {
+                    applyTimeout(statement, timeoutNanos);
+                    configuration.getPrimaryKeyMapper().set(statement, 1, key);
+                    statement.setObject(2, LocalDateTime.now());
+                    return statement.executeUpdate() > 0;
+                } catch (SQLIntegrityConstraintViolationException ex) {
+                    // another replica inserted the row first; the caller retries the lock
+                    return false;
+                } catch (SQLException ex) {
+                    throw new BucketExceptions.BucketExecutionException(ex);
+                }
+            }
+
+            @Override
+            public void update(byte[] data, RemoteBucketState newState, Optional<Long> timeoutNanos) {
+                try (PreparedStatement statement = connection.prepareStatement(updateSql)) {
+                    applyTimeout(statement, timeoutNanos);
+                    statement.setBytes(1, data);
+                    statement.setObject(2, LocalDateTime.now());
+                    configuration.getPrimaryKeyMapper().set(statement, 3, key);
+                    statement.executeUpdate();
+                } catch (SQLException ex) {
+                    throw new BucketExceptions.BucketExecutionException(ex);
+                }
+            }
+
+            @Override
+            public void release() {
+                try {
+                    connection.close();
+                } catch (SQLException ex) {
+                    throw new BucketExceptions.BucketExecutionException(ex);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void removeProxy(K key) {
+        try (Connection connection = configuration.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(removeSql)) {
+            configuration.getPrimaryKeyMapper().set(statement, 1, key);
+            statement.executeUpdate();
+        } catch (SQLException ex) {
+            throw new BucketExceptions.BucketExecutionException(ex);
+        }
+    }
+}
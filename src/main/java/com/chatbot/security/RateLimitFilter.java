@@ -2,41 +2,77 @@ package com.chatbot.security;
 
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
 import io.github.bucket4j.Refill;
+import io.github.bucket4j.distributed.proxy.RemoteBucketBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.time.Duration;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Component
-public class RateLimitFilter extends OncePerRequestFilter {
-    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+public class RateLimitFilter extends OncePerRequestFilter implements MeterBinder {
+    private final BucketStore buckets;
 
-    @Value("${app.rate.capacity:5}")
-    private long capacity;
+    private final long capacity;
 
-    @Value("${app.rate.refill-tokens:5}")
-    private long refillTokens;
+    private final long refillTokens;
 
-    @Value("${app.rate.refill-period-seconds:60}")
-    private long refillPeriodSeconds;
+    private final long refillPeriodSeconds;
+
+    public RateLimitFilter(@Value("${app.rate.capacity:5}") long capacity,
+                           @Value("${app.rate.refill-tokens:5}") long refillTokens,
+                           @Value("${app.rate.refill-period-seconds:60}") long refillPeriodSeconds,
+                           @Value("${app.rate.max-buckets:100000}") long maxBuckets,
+                           ObjectProvider<RemoteBucketBuilder<String>> distributedBuckets) {
+        this.capacity = capacity;
+        this.refillTokens = refillTokens;
+        this.refillPeriodSeconds = refillPeriodSeconds;
+        // only present with app.rate.mode=distributed; buckets then live in the shared database
+        RemoteBucketBuilder<String> remote = distributedBuckets.getIfAvailable();
+        this.buckets = remote == null
+                ? new BucketStore(clientIp -> createNewBucket(), maxBuckets, fullRefillTime(capacity, refillTokens, refillPeriodSeconds))
+                : new BucketStore(clientIp -> remote.build(clientIp, this::bucketConfiguration), maxBuckets,
+                        fullRefillTime(capacity, refillTokens, refillPeriodSeconds));
+    }
 
     private Bucket createNewBucket() {
+        return Bucket.builder().addLimit(limit()).build();
+    }
+
+    private BucketConfiguration bucketConfiguration() {
+        return BucketConfiguration.builder().addLimit(limit()).build();
+    }
+
+    private Bandwidth limit() {
         Refill refill = Refill.intervally(refillTokens, Duration.ofSeconds(refillPeriodSeconds));
-        Bandwidth limit = Bandwidth.classic(capacity, refill);
-        return Bucket.builder().addLimit(limit).build();
+        return Bandwidth.classic(capacity, refill);
+    }
+
+    /**
+     * How long an untouched bucket takes to be full again; after that it can be dropped and recreated.
+     */
+    public static Duration fullRefillTime(long capacity, long refillTokens, long refillPeriodSeconds) {
+        long periods = (capacity + refillTokens - 1) / refillTokens;
+        return Duration.ofSeconds(periods * refillPeriodSeconds);
     }
 
     private Bucket resolveBucket(String clientIp) {
-        return buckets.computeIfAbsent(clientIp, ip -> createNewBucket());
+        return buckets.resolve(clientIp);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        buckets.bindTo(registry);
     }
 
     @Override
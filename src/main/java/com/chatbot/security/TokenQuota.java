@@ -0,0 +1,177 @@
+package com.chatbot.security;
+
+import com.chatbot.exception.QuotaExceededException;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Groq tokens-per-minute budgets per API key and per session. {@link #reserve} charges the estimated
+ * prompt size before the upstream call and rejects the turn with {@link QuotaExceededException} when
+ * either budget is short; the returned {@link Reservation} is then settled against the {@code usage}
+ * Groq reports, or released when no upstream call was made. Overspending puts a bucket into debt, so
+ * the next turns wait for it instead of the caller being charged twice.
+ */
+@Component
+public class TokenQuota {
+
+    static final String ANONYMOUS = "anonymous";
+    private static final Duration WINDOW = Duration.ofMinutes(1);
+    private static final Logger logger = LoggerFactory.getLogger(TokenQuota.class);
+
+    private final boolean enabled;
+    private final long apiKeyTokensPerMinute;
+    private final long sessionTokensPerMinute;
+    private final BucketStore apiKeyBuckets;
+    private final BucketStore sessionBuckets;
+    private final Counter apiKeyRejected;
+    private final Counter sessionRejected;
+
+    public TokenQuota(@Value("${app.quota.enabled:true}") boolean enabled,
+                      @Value("${app.quota.api-key-tokens-per-minute:30000}") long apiKeyTokensPerMinute,
+                      @Value("${app.quota.session-tokens-per-minute:6000}") long sessionTokensPerMinute,
+                      @Value("${app.quota.max-buckets:100000}") long maxBuckets,
+                      MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.apiKeyTokensPerMinute = apiKeyTokensPerMinute;
+        this.sessionTokensPerMinute = sessionTokensPerMinute;
+        this.apiKeyBuckets = new BucketStore("quota.api.key.buckets", key -> bucket(apiKeyTokensPerMinute), maxBuckets,
+                bucket -> idleNanos(bucket, apiKeyTokensPerMinute));
+        this.sessionBuckets = new BucketStore("quota.session.buckets", key -> bucket(sessionTokensPerMinute), maxBuckets,
+                bucket -> idleNanos(bucket, sessionTokensPerMinute));
+        this.apiKeyBuckets.bindTo(meterRegistry);
+        this.sessionBuckets.bindTo(meterRegistry);
+        this.apiKeyRejected = rejectedCounter(meterRegistry, "api-key");
+        this.sessionRejected = rejectedCounter(meterRegistry, "session");
+    }
+
+    private static Bucket bucket(long tokensPerMinute) {
+        return Bucket.builder()
+                .addLimit(Bandwidth.builder().capacity(tokensPerMinute).refillGreedy(tokensPerMinute, WINDOW).build())
+                .build();
+    }
+
+    /**
+     * How long a bucket must stay cached: until it is full again, debt from {@link Reservation#settle}
+     * included, plus one window for the charge that may follow the lookup. Dropping it earlier would
+     * forgive the debt, since a new bucket starts full.
+     */
+    private static long idleNanos(Bucket bucket, long tokensPerMinute) {
+        return bucket.estimateAbilityToConsume(tokensPerMinute).getNanosToWaitForRefill() + WINDOW.toNanos();
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String scope) {
+        return Counter.builder("chat.quota.rejected")
+                .description("Turns refused before the upstream call because a token budget was exhausted")
+                .tag("scope", scope)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Charges {@code estimatedTokens} against the caller's API key and the session. A prompt larger than
+     * a whole budget is charged the full budget, so it can still go through once the bucket is full.
+     *
+     * @throws QuotaExceededException if either budget cannot cover the estimate right now
+     */
+    public Reservation reserve(String sessionId, long estimatedTokens) {
+        if (!enabled) {
+            return Reservation.NONE;
+        }
+        Charge apiKey = charge(apiKeyBuckets, caller(), Math.min(estimatedTokens, apiKeyTokensPerMinute),
+                apiKeyRejected, "API key");
+        try {
+            Charge session = charge(sessionBuckets, sessionId, Math.min(estimatedTokens, sessionTokensPerMinute),
+                    sessionRejected, "session " + sessionId);
+            return new Reservation(List.of(apiKey, session));
+        } catch (QuotaExceededException ex) {
+            apiKey.refund();
+            throw ex;
+        }
+    }
+
+    private Charge charge(BucketStore store, String key, long tokens, Counter rejected, String scope) {
+        Bucket bucket = store.resolve(key);
+        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(tokens);
+        if (!probe.isConsumed()) {
+            rejected.increment();
+            logger.warn("Token quota exceeded for {}: needed {} tokens", scope, tokens);
+            throw new QuotaExceededException(scope, Duration.ofNanos(probe.getNanosToWaitForRefill()));
+        }
+        return new Charge(store, key, bucket, tokens);
+    }
+
+    // ApiKeyFilter authenticates with the key's fingerprint as the principal name
+    private static String caller() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : ANONYMOUS;
+    }
+
+    private record Charge(BucketStore store, String key, Bucket bucket, long tokens) {
+
+        void refund() {
+            if (tokens > 0) {
+                bucket.addTokens(tokens);
+            }
+        }
+
+        void adjust(long actualTokens) {
+            long delta = actualTokens - tokens;
+            if (delta > 0) {
+                bucket.consumeIgnoringRateLimits(delta);
+                store.touch(key);
+            } else if (delta < 0) {
+                bucket.addTokens(-delta);
+            }
+        }
+    }
+
+    /**
+     * Tokens held for one turn. Exactly one of {@link #settle} or {@link #release} takes effect; later
+     * calls are ignored, so coalesced and failed paths can both call it safely.
+     */
+    public static final class Reservation {
+
+        public static final Reservation NONE = new Reservation(List.of());
+
+        private final List<Charge> charges;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Reservation(List<Charge> charges) {
+            this.charges = charges;
+        }
+
+        public long estimatedTokens() {
+            return charges.stream().mapToLong(Charge::tokens).max().orElse(0);
+        }
+
+        /**
+         * Replaces the estimate with what Groq actually billed for the turn.
+         */
+        public void settle(long actualTokens) {
+            if (done.compareAndSet(false, true)) {
+                charges.forEach(charge -> charge.adjust(actualTokens));
+            }
+        }
+
+        /**
+         * Gives the estimate back, e.g. for a cache hit or a call that never reached Groq.
+         */
+        public void release() {
+            if (done.compareAndSet(false, true)) {
+                charges.forEach(Charge::refund);
+            }
+        }
+    }
+}
@@ -2,70 +2,415 @@ package com.chatbot.service;
 
 
 import com.chatbot.common.Constants;
+import com.chatbot.common.TokenEstimator;
+import com.chatbot.dto.MessageBatchItemResponse;
+import com.chatbot.dto.MessageBatchRequest;
+import com.chatbot.dto.MessageBatchResponse;
+import com.chatbot.dto.MessageCursor;
+import com.chatbot.dto.MessageImportRequest;
 import com.chatbot.dto.MessageRequest;
 import com.chatbot.dto.MessageResponse;
 import com.chatbot.dto.MessagesResponse;
+import com.chatbot.dto.MessagesSliceResponse;
+import com.chatbot.exception.QuotaExceededException;
 import com.chatbot.exception.SessionNotFoundException;
+import com.chatbot.integration.ChatTurn;
 import com.chatbot.integration.ChatbotService;
 import com.chatbot.models.ChatMessage;
 import com.chatbot.repository.ChatMessageRepository;
-import com.chatbot.repository.ChatSessionRepository;
+import com.chatbot.security.TokenQuota;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Service
 public class ChatMessageService {
 
     private static final Logger logger = LoggerFactory.getLogger(ChatMessageService.class);
     private final ChatMessageRepository messageRepo;
-    private final ChatSessionRepository sessionRepo;
+    private final SessionRegistry sessionRegistry;
     private final ChatbotService chatClient;
+    private final ConversationContextBuilder contextBuilder;
+    private final ChatMessageWriter messageWriter;
+    private final TokenQuota tokenQuota;
+    private final SessionLanes sessionLanes;
+    private final HistoryETags historyETags;
+    private final TaskExecutor streamExecutor;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.stream.timeout-ms:120000}")
+    private long streamTimeoutMs;
 
-    public ChatMessageService(ChatMessageRepository messageRepo, ChatSessionRepository sessionRepo, ChatbotService chatClient) {
+    @Value("${app.batch.max-concurrency:8}")
+    private int batchMaxConcurrency;
+
+    public ChatMessageService(ChatMessageRepository messageRepo, SessionRegistry sessionRegistry, ChatbotService chatClient,
+                              ConversationContextBuilder contextBuilder, ChatMessageWriter messageWriter, TokenQuota tokenQuota,
+                              SessionLanes sessionLanes, HistoryETags historyETags, @Qualifier("chatStreamExecutor") TaskExecutor streamExecutor,
+                              PlatformTransactionManager transactionManager) {
         this.messageRepo = messageRepo;
-        this.sessionRepo = sessionRepo;
+        this.sessionRegistry = sessionRegistry;
         this.chatClient = chatClient;
+        this.contextBuilder = contextBuilder;
+        this.messageWriter = messageWriter;
+        this.tokenQuota = tokenQuota;
+        this.sessionLanes = sessionLanes;
+        this.historyETags = historyETags;
+        this.streamExecutor = streamExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
-    public MessageResponse sendMessage(MessageRequest request) {
+    /**
+     * Validates the session on the calling thread and returns while the Groq call is still in flight.
+     * Once the reply arrives, the user and assistant messages are handed to {@link ChatMessageWriter}
+     * together, so no pooled connection is held while waiting. A turn over the caller's token quota
+     * fails fast with {@link QuotaExceededException} before anything is sent upstream.
+     * <p>
+     * Turns of one session run through its {@link SessionLanes} lane, so a second send waits for the
+     * first reply instead of interleaving with it; the synchronous checks then fail the future instead.
+     */
+    public CompletableFuture<MessageResponse> sendMessage(MessageRequest request) {
 
         logger.info("Received message for sessionId={}: {}", request.getSessionId(), request.getUserMessage());
 
-        validateSession(request.getSessionId());
+        return sessionLanes.submit(request.getSessionId(), () -> {
+            ChatMessage userMessage = newMessage(request.getSessionId(), request.getUserMessage(), Constants.USER_ROLE);
+            List<ChatTurn> conversation = beginTurn(request);
+            TokenQuota.Reservation quota = reserveTokens(request.getSessionId(), conversation);
+
+            return chatClient.askAsync(conversation, request.isBypassCache(), quota).thenApply(botReply -> {
+                completeTurn(userMessage, botReply);
+                logger.info("Responded to sessionId={} with message: {}", request.getSessionId(), botReply);
+                return new MessageResponse(request.getSessionId(), botReply, Constants.ASSISTANT_ROLE);
+            }).whenComplete((response, ex) -> {
+                if (ex != null) {
+                    abandonTurn(request.getSessionId());
+                }
+            });
+        });
+    }
+
+    /**
+     * Streams the reply as {@code token} events while Groq generates it, followed by a single
+     * {@code done} event carrying the persisted assistant reply. The session is validated when the turn
+     * reaches the front of its lane: on an idle lane that is still the calling thread, so a bad session id
+     * surfaces as a regular 404; behind another turn it ends the stream with the error instead.
+     */
+    public SseEmitter streamMessage(MessageRequest request) {
+
+        logger.info("Received streaming message for sessionId={}: {}", request.getSessionId(), request.getUserMessage());
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        sessionLanes.submit(request.getSessionId(), () -> {
+            ChatMessage userMessage = newMessage(request.getSessionId(), request.getUserMessage(), Constants.USER_ROLE);
+            List<ChatTurn> conversation = beginTurn(request);
+            TokenQuota.Reservation quota = reserveTokens(request.getSessionId(), conversation);
+
+            try {
+                return CompletableFuture.runAsync(() -> {
+                    try {
+                        String botReply = chatClient.streamAsk(conversation, request.isBypassCache(), quota, token -> sendEvent(emitter, "token", token));
+                        completeTurn(userMessage, botReply);
+                        sendEvent(emitter, "done", new MessageResponse(request.getSessionId(), botReply, Constants.ASSISTANT_ROLE));
+                        emitter.complete();
+                        logger.info("Streamed reply to sessionId={}", request.getSessionId());
+                    } catch (Exception ex) {
+                        logger.error("Streaming failed for sessionId={}", request.getSessionId(), ex);
+                        abandonTurn(request.getSessionId());
+                        emitter.completeWithError(ex);
+                    }
+                }, streamExecutor);
+            } catch (RejectedExecutionException ex) {
+                // the stream never started, so hand back what the turn reserved before failing it
+                logger.warn("Stream executor rejected the turn for sessionId={}", request.getSessionId());
+                quota.release();
+                abandonTurn(request.getSessionId());
+                throw ex;
+            }
+        }).exceptionally(ex -> {
+            // only reached when the turn waited behind another one and then failed to start
+            emitter.completeWithError(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            return null;
+        });
+        return emitter;
+    }
+
+    /**
+     * Sends many turns in one call. All sessions are checked with one lookup; unknown ones fail their
+     * items with 404 without touching Groq. Turns of different sessions go upstream in parallel, at most
+     * {@code app.batch.max-concurrency} at a time, while turns of the same session run in request order,
+     * through the same {@link SessionLanes} lane as single sends, so each one sees the previous reply.
+     * Every successful turn is persisted in a single batched write once all have finished. Failures are
+     * reported per item and never fail the whole batch.
+     */
+    public CompletableFuture<MessageBatchResponse> sendMessages(MessageBatchRequest batch) {
+        List<MessageRequest> requests = batch.getMessages();
+        logger.info("Received batch of {} messages", requests.size());
+
+        Set<String> existing = sessionRegistry.existing(requests.stream().map(MessageRequest::getSessionId).collect(Collectors.toSet()));
+        MessageBatchItemResponse[] results = new MessageBatchItemResponse[requests.size()];
+        AtomicReferenceArray<List<ChatMessage>> turns = new AtomicReferenceArray<>(requests.size());
+        Map<String, List<Integer>> lanes = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            String sessionId = requests.get(i).getSessionId();
+            if (existing.contains(sessionId)) {
+                lanes.computeIfAbsent(sessionId, id -> new ArrayList<>()).add(i);
+            } else {
+                SessionNotFoundException notFound = new SessionNotFoundException(sessionId);
+                results[i] = new MessageBatchItemResponse(i, sessionId, FailureStatus.of(notFound), null, null, notFound.getMessage());
+            }
+        }
+
+        Queue<List<Integer>> pending = new ConcurrentLinkedQueue<>(lanes.values());
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.min(Math.max(1, batchMaxConcurrency), Math.max(1, lanes.size()))];
+        for (int w = 0; w < workers.length; w++) {
+            workers[w] = nextLane(pending, requests, results, turns);
+        }
+        return CompletableFuture.allOf(workers).thenApply(done -> {
+            List<ChatMessage> messages = IntStream.range(0, turns.length())
+                    .mapToObj(turns::get)
+                    .filter(Objects::nonNull)
+                    .flatMap(List::stream)
+                    .toList();
+            if (!messages.isEmpty()) {
+                try {
+                    messageWriter.write(messages);
+                } catch (RuntimeException ex) {
+                    messages.stream()
+                            .collect(Collectors.groupingBy(ChatMessage::getSessionId, LinkedHashMap::new, Collectors.toList()))
+                            .forEach(sessionLanes::unstamp);
+                    lanes.keySet().forEach(this::abandonTurn);
+                    throw ex;
+                }
+            }
+            logger.info("Batch of {} messages done, {} turns saved", requests.size(), messages.size() / 2);
+            return new MessageBatchResponse(List.of(results));
+        });
+    }
 
-        saveMessage(request.getSessionId(), request.getUserMessage(), Constants.USER_ROLE);
+    // one worker: takes a session's items, runs them in order, then moves on to the next session
+    private CompletableFuture<Void> nextLane(Queue<List<Integer>> pending, List<MessageRequest> requests,
+                                             MessageBatchItemResponse[] results, AtomicReferenceArray<List<ChatMessage>> turns) {
+        List<Integer> lane = pending.poll();
+        if (lane == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (int index : lane) {
+            MessageRequest request = requests.get(index);
+            chain = chain.thenCompose(previous ->
+                    sessionLanes.submit(request.getSessionId(), () -> batchTurn(index, request, results, turns)));
+        }
+        return chain.thenCompose(done -> nextLane(pending, requests, results, turns));
+    }
 
-        String botReply = chatClient.ask(request.getUserMessage());
+    private CompletableFuture<Void> batchTurn(int index, MessageRequest request, MessageBatchItemResponse[] results,
+                                              AtomicReferenceArray<List<ChatMessage>> turns) {
+        String sessionId = request.getSessionId();
+        ChatMessage userMessage = newMessage(sessionId, request.getUserMessage(), Constants.USER_ROLE);
+        CompletableFuture<String> reply;
+        try {
+            List<ChatTurn> conversation = contextBuilder.prepare(sessionId, new ChatTurn(Constants.USER_ROLE, request.getUserMessage()));
+            reply = chatClient.askAsync(conversation, request.isBypassCache(), reserveTokens(sessionId, conversation));
+        } catch (RuntimeException ex) {
+            reply = CompletableFuture.failedFuture(ex);
+        }
+        return reply.handle((botReply, ex) -> {
+            if (ex == null) {
+                List<ChatMessage> turn = List.of(userMessage, newMessage(sessionId, botReply, Constants.ASSISTANT_ROLE));
+                sessionLanes.stamp(sessionId, turn);
+                contextBuilder.record(sessionId, new ChatTurn(Constants.ASSISTANT_ROLE, botReply), turn.get(1).getSeq());
+                turns.set(index, turn);
+                results[index] = new MessageBatchItemResponse(index, sessionId, 200, botReply, Constants.ASSISTANT_ROLE, null);
+            } else {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                logger.warn("Batch item {} for sessionId={} failed: {}", index, sessionId, cause.getMessage());
+                abandonTurn(sessionId);
+                results[index] = new MessageBatchItemResponse(index, sessionId, FailureStatus.of(cause), null, null, cause.getMessage());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Appends already-existing history to a session, e.g. when migrating conversations from another
+     * system. Rows go through {@link ChatMessageRepository#bulkInsert(List)} in large batches.
+     */
+    public int importMessages(String sessionId, MessageImportRequest request) {
+        logger.info("Importing {} messages into sessionId={}", request.getMessages().size(), sessionId);
+        validateSession(sessionId);
+        List<ChatMessage> messages = request.getMessages().stream()
+                .map(item -> newMessage(sessionId, item.getMessage(), item.getRole()))
+                .toList();
+        sessionLanes.stamp(sessionId, messages);
+        int imported;
+        try {
+            imported = messageRepo.bulkInsert(messages);
+        } catch (RuntimeException ex) {
+            sessionLanes.unstamp(sessionId, messages);
+            throw ex;
+        }
+        // the cached window no longer matches the stored history
+        contextBuilder.evict(sessionId);
+        return imported;
+    }
 
-        saveMessage(request.getSessionId(), botReply, Constants.ASSISTANT_ROLE);
-        logger.info("Responded to sessionId={} with message: {}", request.getSessionId(), botReply);
-        return new MessageResponse(request.getSessionId(), botReply, "assistant");
+    /**
+     * ETags of the history page with the given bounds, e.g. cursor and size, worked out without
+     * reading the page so an unchanged one can be answered {@code 304} right away.
+     */
+    public HistoryETags.PageETags historyETags(String sessionId, Object... bounds) {
+        validateSession(sessionId);
+        return historyETags.forPage(sessionId, bounds);
     }
 
     public MessagesResponse listMessages(String sessionId, int page, int size) {
         logger.info("Fetching chat messages for sessionId={} with Page={} and size={}", sessionId, page, size);
         validateSession(sessionId);
         int pageNo = page < 1 ? 0 : page - 1;
-        Pageable pageable = PageRequest.of(pageNo, size, Sort.Direction.ASC, "createdAt");
+        Pageable pageable = PageRequest.of(pageNo, size, Sort.Direction.ASC, "createdAt", "id");
         return new MessagesResponse(messageRepo.findBySessionId(sessionId, pageable));
     }
 
-    private void saveMessage(String sessionId, String message, String role) {
+    /**
+     * Keyset variant of {@link #listMessages(String, int, int)}: costs the same for the last page of a
+     * long session as for the first, and never runs a count query. Without a cursor the oldest
+     * messages come first; follow {@code nextCursor}/{@code prevCursor} from there.
+     */
+    public MessagesSliceResponse listMessages(String sessionId, String cursor, int size) {
+        logger.info("Fetching chat messages for sessionId={} with cursor={} and size={}", sessionId, cursor, size);
+        validateSession(sessionId);
+        Pageable limit = PageRequest.of(0, size);
+        if (cursor == null || cursor.isBlank()) {
+            return forwardSlice(messageRepo.findFirstSlice(sessionId, limit), false, null);
+        }
+        MessageCursor position = MessageCursor.decode(cursor);
+        if (position.direction() == MessageCursor.Direction.AFTER) {
+            return forwardSlice(messageRepo.findSliceAfter(sessionId, position.createdAt(), position.id(), limit), true, cursor);
+        }
+        return backwardSlice(messageRepo.findSliceBefore(sessionId, position.createdAt(), position.id(), limit));
+    }
+
+    private MessagesSliceResponse forwardSlice(Slice<ChatMessage> slice, boolean hasPrevious, String requestCursor) {
+        List<ChatMessage> messages = slice.getContent();
+        if (messages.isEmpty()) {
+            // keep handing out the same cursor, so a client can poll for messages appended later
+            return new MessagesSliceResponse(List.of(), 0, false, hasPrevious, requestCursor, null);
+        }
+        // the tail page still gets a nextCursor for the same reason
+        String nextCursor = MessageCursor.after(messages.get(messages.size() - 1)).encode();
+        String prevCursor = hasPrevious ? MessageCursor.before(messages.get(0)).encode() : null;
+        return new MessagesSliceResponse(toResponses(messages), messages.size(), slice.hasNext(), hasPrevious, nextCursor, prevCursor);
+    }
+
+    private MessagesSliceResponse backwardSlice(Slice<ChatMessage> slice) {
+        List<ChatMessage> messages = new ArrayList<>(slice.getContent());
+        Collections.reverse(messages);
+        if (messages.isEmpty()) {
+            return new MessagesSliceResponse(List.of(), 0, true, false, null, null);
+        }
+        String nextCursor = MessageCursor.after(messages.get(messages.size() - 1)).encode();
+        String prevCursor = slice.hasNext() ? MessageCursor.before(messages.get(0)).encode() : null;
+        return new MessagesSliceResponse(toResponses(messages), messages.size(), true, slice.hasNext(), nextCursor, prevCursor);
+    }
+
+    private List<MessageResponse> toResponses(List<ChatMessage> messages) {
+        return messages.stream()
+                .map(item -> new MessageResponse(item.getSessionId(), item.getMessage(), item.getRole()))
+                .toList();
+    }
+
+    /**
+     * Returns the conversation for the upstream call: the session's recent turns plus the new user message.
+     */
+    private List<ChatTurn> beginTurn(MessageRequest request) {
+        return transactionTemplate.execute(status -> {
+            validateSession(request.getSessionId());
+            return contextBuilder.prepare(request.getSessionId(),
+                    new ChatTurn(Constants.USER_ROLE, request.getUserMessage()));
+        });
+    }
+
+    private TokenQuota.Reservation reserveTokens(String sessionId, List<ChatTurn> conversation) {
+        long promptTokens = conversation.stream().mapToLong(turn -> TokenEstimator.estimateMessage(turn.content())).sum();
+        try {
+            return tokenQuota.reserve(sessionId, promptTokens);
+        } catch (QuotaExceededException ex) {
+            abandonTurn(sessionId);
+            throw ex;
+        }
+    }
+
+    private void completeTurn(ChatMessage userMessage, String botReply) {
+        ChatMessage assistantMessage = newMessage(userMessage.getSessionId(), botReply, Constants.ASSISTANT_ROLE);
+        List<ChatMessage> turn = List.of(userMessage, assistantMessage);
+        sessionLanes.stamp(userMessage.getSessionId(), turn);
+        try {
+            messageWriter.write(turn);
+        } catch (RuntimeException ex) {
+            sessionLanes.unstamp(userMessage.getSessionId(), turn);
+            throw ex;
+        }
+        contextBuilder.record(userMessage.getSessionId(), new ChatTurn(Constants.ASSISTANT_ROLE, botReply), assistantMessage.getSeq());
+        logger.debug("Saved turn for sessionId={}", userMessage.getSessionId());
+    }
+
+    /**
+     * Nothing was persisted for a failed turn; drop the cached window so it does not keep the
+     * unanswered user message.
+     */
+    private void abandonTurn(String sessionId) {
+        contextBuilder.evict(sessionId);
+    }
+
+    private ChatMessage newMessage(String sessionId, String message, String role) {
         ChatMessage chatMessage = new ChatMessage();
         chatMessage.setSessionId(sessionId);
         chatMessage.setRole(role);
         chatMessage.setMessage(message);
-        messageRepo.save(chatMessage);
-        logger.debug("Saved message for sessionId={}", sessionId);
+        return chatMessage;
     }
 
 
-    private void validateSession(String sessionId) {
-        if (!sessionRepo.existsById(sessionId)) {
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException ex) {
+            // client went away; abort the upstream read instead of generating tokens nobody receives
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    void validateSession(String sessionId) {
+        if (!sessionRegistry.exists(sessionId)) {
             logger.warn("Session not found: {}", sessionId);
             throw new SessionNotFoundException(sessionId);
         }
@@ -0,0 +1,279 @@
+package com.chatbot.service;
+
+import com.chatbot.models.ChatMessage;
+import com.chatbot.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import jakarta.validation.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists the messages of a completed chat turn. In {@code sync} mode (the default) the write happens
+ * on the calling thread. In {@code write-behind} mode turns are queued and a background writer saves
+ * them in batches of up to {@code batch-size} messages, no later than {@code max-lag} after they were
+ * queued, so the reply does not wait for the database.
+ * <p>
+ * A full queue blocks the caller for up to {@code offer-timeout} and then writes inline, which slows
+ * producers down instead of dropping messages. A batch that fails {@code max-retries} times in a row
+ * is saved one message per transaction; a message the database rejects outright (constraint or
+ * validation failure) is logged and dropped so it cannot stall the queue, anything else is retried.
+ * On shutdown the queue is drained before the context closes. Queued messages are lost if the process dies, and history reads may trail the reply by up
+ * to {@code max-lag}.
+ */
+@Component
+public class ChatMessageWriter {
+
+    public enum WriteMode { SYNC, WRITE_BEHIND }
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMessageWriter.class);
+    // queued on close so a writer parked in poll() notices the shutdown without waiting out max-lag
+    private static final PendingTurn WAKE_UP = new PendingTurn(List.of(), 0);
+
+    private final ChatMessageRepository messageRepo;
+    private final TransactionTemplate transactionTemplate;
+    private final WriteMode mode;
+    private final int batchSize;
+    private final int maxRetries;
+    private final long maxLagNanos;
+    private final Duration offerTimeout;
+    private final Duration shutdownTimeout;
+    private final BlockingQueue<PendingTurn> queue;
+    // queued or being flushed, by session, so a cold context load can still see them
+    private final Map<String, List<ChatMessage>> unsaved = new ConcurrentHashMap<>();
+    private final Timer flushTimer;
+    private final Counter overflow;
+    private final Counter dropped;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public ChatMessageWriter(ChatMessageRepository messageRepo,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.persistence.write-mode:sync}") WriteMode mode,
+                             @Value("${app.persistence.write-behind.batch-size:100}") int batchSize,
+                             @Value("${app.persistence.write-behind.queue-capacity:5000}") int queueCapacity,
+                             @Value("${app.persistence.write-behind.max-lag:500ms}") Duration maxLag,
+                             @Value("${app.persistence.write-behind.max-retries:3}") int maxRetries,
+                             @Value("${app.persistence.write-behind.offer-timeout:2s}") Duration offerTimeout,
+                             @Value("${app.persistence.write-behind.shutdown-timeout:10s}") Duration shutdownTimeout) {
+        this.messageRepo = messageRepo;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.mode = mode;
+        this.batchSize = batchSize;
+        this.maxRetries = Math.max(1, maxRetries);
+        this.maxLagNanos = maxLag.toNanos();
+        this.offerTimeout = offerTimeout;
+        this.shutdownTimeout = shutdownTimeout;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushTimer = Timer.builder("chat.messages.writebehind.flush")
+                .description("Time to persist one write-behind batch")
+                .register(meterRegistry);
+        this.overflow = Counter.builder("chat.messages.writebehind.overflow")
+                .description("Turns written inline because the write-behind queue stayed full")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("chat.messages.writebehind.dropped")
+                .description("Write-behind messages dropped because the database rejected them")
+                .register(meterRegistry);
+        meterRegistry.gaugeCollectionSize("chat.messages.writebehind.queue.depth", List.of(), queue);
+
+        if (mode == WriteMode.WRITE_BEHIND) {
+            writer = Thread.ofPlatform().name("chat-message-writer").daemon().start(this::drainLoop);
+            logger.info("Write-behind enabled: batchSize={}, queueCapacity={}, maxLag={}", batchSize, queueCapacity, maxLag);
+        } else {
+            writer = null;
+        }
+    }
+
+    /**
+     * Saves the messages together, in one transaction and one JDBC batch. In write-behind mode this
+     * returns once they are queued.
+     */
+    public void write(List<ChatMessage> messages) {
+        if (writer == null || !running) {
+            saveNow(messages);
+            return;
+        }
+        try {
+            track(messages);
+            if (queue.offer(new PendingTurn(messages, System.nanoTime()), offerTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                return;
+            }
+            untrack(messages);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        overflow.increment();
+        logger.warn("Write-behind queue full, writing {} messages inline", messages.size());
+        saveNow(messages);
+    }
+
+    /**
+     * Messages of the session handed to {@link #write(List)} but not committed yet, in write order;
+     * always empty in {@code sync} mode.
+     */
+    public List<ChatMessage> unsaved(String sessionId) {
+        List<ChatMessage> messages = unsaved.get(sessionId);
+        if (messages == null) {
+            return List.of();
+        }
+        synchronized (messages) {
+            return List.copyOf(messages);
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        queue.offer(WAKE_UP);
+        try {
+            writer.join(shutdownTimeout);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            logger.error("Write-behind writer did not drain within {}; {} queued turns are lost", shutdownTimeout, queue.size());
+        }
+    }
+
+    int queueDepth() {
+        return queue.size();
+    }
+
+    private void drainLoop() {
+        List<ChatMessage> batch = new ArrayList<>();
+        long deadline = 0;
+        int failures = 0;
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    PendingTurn first = queue.poll(maxLagNanos, TimeUnit.NANOSECONDS);
+                    if (first == null || first == WAKE_UP) {
+                        continue;
+                    }
+                    batch.addAll(first.messages());
+                    deadline = first.enqueuedAt() + maxLagNanos;
+                }
+                // top the batch up until it is full or its oldest turn is due
+                while (batch.size() < batchSize) {
+                    long wait = running ? deadline - System.nanoTime() : 0;
+                    PendingTurn next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.addAll(next.messages());
+                }
+                if (flush(batch)) {
+                    batch.clear();
+                    failures = 0;
+                    continue;
+                }
+                if (++failures >= maxRetries) {
+                    flushOneByOne(batch);
+                    failures = 0;
+                }
+                if (!batch.isEmpty()) {
+                    // keep what is left and retry; meanwhile the queue fills up and pushes back on callers
+                    TimeUnit.NANOSECONDS.sleep(maxLagNanos);
+                }
+            } catch (InterruptedException ex) {
+                running = false;
+            }
+        }
+    }
+
+    private boolean flush(List<ChatMessage> batch) {
+        long start = System.nanoTime();
+        try {
+            saveNow(List.copyOf(batch));
+            untrack(batch);
+            logger.debug("Flushed {} messages", batch.size());
+            return true;
+        } catch (RuntimeException ex) {
+            logger.error("Write-behind flush of {} messages failed, will retry", batch.size(), ex);
+            return false;
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Saves each message in its own transaction so one bad row cannot fail the others. Saved and
+     * rejected messages leave the batch; the ones that failed for another reason stay for the retry.
+     */
+    private void flushOneByOne(List<ChatMessage> batch) {
+        logger.warn("Write-behind batch failed {} times, saving its {} messages one by one", maxRetries, batch.size());
+        for (ChatMessage message : List.copyOf(batch)) {
+            try {
+                saveNow(List.of(message));
+            } catch (RuntimeException ex) {
+                if (!isRejected(ex)) {
+                    continue;
+                }
+                dropped.increment();
+                logger.error("Dropping message sessionId={} seq={} role={}: rejected by the database",
+                        message.getSessionId(), message.getSeq(), message.getRole(), ex);
+            }
+            batch.remove(message);
+            untrack(List.of(message));
+        }
+    }
+
+    // the row itself is at fault, so retrying cannot help; connection and lock errors are not
+    private static boolean isRejected(RuntimeException ex) {
+        return ex instanceof DataIntegrityViolationException
+                || ex instanceof ConstraintViolationException
+                || (ex instanceof NonTransientDataAccessException && !(ex instanceof NonTransientDataAccessResourceException));
+    }
+
+    private void saveNow(List<ChatMessage> messages) {
+        transactionTemplate.executeWithoutResult(status -> messageRepo.saveAll(messages));
+    }
+
+    private void track(List<ChatMessage> messages) {
+        for (ChatMessage message : messages) {
+            unsaved.compute(message.getSessionId(), (sessionId, pending) -> {
+                List<ChatMessage> list = pending != null ? pending : new ArrayList<>();
+                synchronized (list) {
+                    list.add(message);
+                }
+                return list;
+            });
+        }
+    }
+
+    private void untrack(List<ChatMessage> messages) {
+        for (ChatMessage message : messages) {
+            unsaved.computeIfPresent(message.getSessionId(), (sessionId, pending) -> {
+                synchronized (pending) {
+                    pending.remove(message);
+                    return pending.isEmpty() ? null : pending;
+                }
+            });
+        }
+    }
+
+    private record PendingTurn(List<ChatMessage> messages, long enqueuedAt) {
+    }
+}
@@ -0,0 +1,132 @@
+package com.chatbot.service;
+
+import com.chatbot.common.TokenEstimator;
+import com.chatbot.integration.ChatTurn;
+import com.chatbot.models.ChatMessage;
+import com.chatbot.repository.ChatMessageRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Keeps a rolling, token-budgeted window of recent turns per session in memory, so building the
+ * prompt for a follow-up costs a single index lookup instead of reading history. That lookup compares
+ * the session's last stored {@code seq} with the last one the window has seen; only a cold session
+ * (first message after start-up or after the window was evicted), or one another instance has added
+ * turns to since, reads the repository, and then just the latest {@code cold-load-limit} rows plus
+ * whatever is still waiting in the write-behind queue.
+ */
+@Component
+public class ConversationContextBuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationContextBuilder.class);
+
+    private final ChatMessageRepository messageRepo;
+    private final ChatMessageWriter messageWriter;
+    private final Cache<String, Window> windows;
+    private final int maxTokens;
+    private final int coldLoadLimit;
+
+    public ConversationContextBuilder(ChatMessageRepository messageRepo, ChatMessageWriter messageWriter,
+                                      @Value("${app.context.max-tokens:3000}") int maxTokens,
+                                      @Value("${app.context.cold-load-limit:50}") int coldLoadLimit,
+                                      @Value("${app.context.max-sessions:10000}") long maxSessions,
+                                      @Value("${app.context.idle-ttl:30m}") Duration idleTtl) {
+        this.messageRepo = messageRepo;
+        this.messageWriter = messageWriter;
+        this.maxTokens = maxTokens;
+        this.coldLoadLimit = coldLoadLimit;
+        this.windows = Caffeine.newBuilder()
+                .maximumSize(maxSessions)
+                .expireAfterAccess(idleTtl)
+                .build();
+    }
+
+    /**
+     * Appends the new user turn to the session window and returns the conversation to send,
+     * oldest first. Must run before the user message is persisted, so a cold load does not pick it
+     * up a second time. Turns of one session must not be prepared concurrently; {@link SessionLanes}
+     * sees to that.
+     */
+    public List<ChatTurn> prepare(String sessionId, ChatTurn userTurn) {
+        long storedSeq = messageRepo.findLastSeq(sessionId);
+        Window window = windows.getIfPresent(sessionId);
+        // behind only when turns were stored without passing through this window, i.e. by another
+        // instance; turns of this one that are not stored yet leave the window ahead, which is fine
+        if (window == null || window.lastSeq < storedSeq) {
+            window = loadWindow(sessionId, storedSeq);
+            windows.put(sessionId, window);
+        }
+        synchronized (window) {
+            window.add(userTurn, maxTokens);
+            return window.snapshot();
+        }
+    }
+
+    /**
+     * Appends a reply to the session window once its turn has been given its {@code seq}.
+     */
+    public void record(String sessionId, ChatTurn turn, long seq) {
+        Window window = windows.getIfPresent(sessionId);
+        if (window != null) {
+            synchronized (window) {
+                window.add(turn, maxTokens);
+                window.lastSeq = Math.max(window.lastSeq, seq);
+            }
+        }
+    }
+
+    public void evict(String sessionId) {
+        windows.invalidate(sessionId);
+    }
+
+    private Window loadWindow(String sessionId, long storedSeq) {
+        List<ChatMessage> latest = messageRepo.findBySessionIdOrderByCreatedAtDescIdDesc(sessionId, PageRequest.of(0, coldLoadLimit));
+        List<ChatMessage> queued = messageWriter.unsaved(sessionId);
+        logger.debug("Cold context load for sessionId={}: {} stored and {} queued messages", sessionId, latest.size(), queued.size());
+        Window window = new Window();
+        window.lastSeq = storedSeq;
+        for (int i = latest.size() - 1; i >= 0; i--) {
+            ChatMessage message = latest.get(i);
+            window.add(new ChatTurn(message.getRole(), message.getMessage()), maxTokens);
+        }
+        for (ChatMessage message : queued) {
+            // a flush may have committed it between the two reads
+            if (message.getSeq() != null && message.getSeq() > storedSeq) {
+                window.add(new ChatTurn(message.getRole(), message.getMessage()), maxTokens);
+                window.lastSeq = Math.max(window.lastSeq, message.getSeq());
+            }
+        }
+        return window;
+    }
+
+    private static final class Window {
+        private final Deque<ChatTurn> turns = new ArrayDeque<>();
+        private int tokens;
+        // highest seq among the turns this window has seen
+        private long lastSeq;
+
+        void add(ChatTurn turn, int maxTokens) {
+            turns.addLast(turn);
+            tokens += TokenEstimator.estimateMessage(turn.content());
+            // drop the oldest turns first, but never the one just added
+            while (tokens > maxTokens && turns.size() > 1) {
+                tokens -= TokenEstimator.estimateMessage(turns.removeFirst().content());
+            }
+        }
+
+        List<ChatTurn> snapshot() {
+            return new ArrayList<>(turns);
+        }
+    }
+}
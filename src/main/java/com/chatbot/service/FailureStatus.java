@@ -0,0 +1,29 @@
+package com.chatbot.service;
+
+import com.chatbot.exception.QuotaExceededException;
+import com.chatbot.exception.SessionNotFoundException;
+import com.chatbot.exception.UpstreamException;
+import org.springframework.http.HttpStatus;
+
+/**
+ * The HTTP status {@code GlobalExceptionHandler} would answer a failed turn with, for APIs that report
+ * failures per item instead of as the response status.
+ */
+final class FailureStatus {
+
+    private FailureStatus() {
+    }
+
+    static int of(Throwable failure) {
+        if (failure instanceof SessionNotFoundException) {
+            return HttpStatus.NOT_FOUND.value();
+        }
+        if (failure instanceof QuotaExceededException) {
+            return HttpStatus.TOO_MANY_REQUESTS.value();
+        }
+        if (failure instanceof UpstreamException upstream) {
+            return upstream.getStatus().value();
+        }
+        return HttpStatus.INTERNAL_SERVER_ERROR.value();
+    }
+}
@@ -0,0 +1,112 @@
+package com.chatbot.service;
+
+import com.chatbot.repository.ChatMessageRepository;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.function.Supplier;
+
+/**
+ * Strong ETags for pages of a session's history, computed without loading the page. History is
+ * append-only, so a page whose end is already followed by more messages never changes again: its
+ * {@code c-} tag depends only on the session and the page bounds. Any other page carries an {@code o-}
+ * tag that also includes the {@code seq} and {@code createdAt} of the session's latest message, so it
+ * changes with the next append. Ids are not used: each instance draws them from its own block of the
+ * sequence, so a new message can have a lower id than an older one.
+ * <p>
+ * Both values are read from the database, with two index lookups, for every open tag rather than
+ * remembered, so appends made through any instance, or by write-behind after the reply, change the tag
+ * as soon as they commit. A request answered from the closed tag never reads them.
+ */
+@Component
+public class HistoryETags {
+
+    /**
+     * The two possible tags of one page; the open one is only worked out when first asked for.
+     */
+    public static final class PageETags {
+
+        private final String closed;
+        private final Supplier<String> openSupplier;
+        private String open;
+
+        public PageETags(String closed, Supplier<String> openSupplier) {
+            this.closed = closed;
+            this.openSupplier = openSupplier;
+        }
+
+        public String closed() {
+            return closed;
+        }
+
+        public String open() {
+            if (open == null) {
+                open = openSupplier.get();
+            }
+            return open;
+        }
+    }
+
+    private final ChatMessageRepository messageRepo;
+
+    public HistoryETags(ChatMessageRepository messageRepo) {
+        this.messageRepo = messageRepo;
+    }
+
+    /**
+     * Both possible tags of the page with the given bounds; which one applies is only known once the
+     * page is loaded. Ask for the open tag before the page is read, so it never claims newer content.
+     */
+    public PageETags forPage(String sessionId, Object... bounds) {
+        String page = sessionId + "|" + Arrays.deepToString(bounds);
+        return new PageETags("c-" + digest(page), () -> {
+            long lastSeq = messageRepo.findLastSeq(sessionId);
+            return "o-" + lastSeq + "-" + digest(page + "|" + messageRepo.findLastCreatedAt(sessionId));
+        });
+    }
+
+    /**
+     * Weak comparison as required for {@code If-None-Match}: a {@code W/} prefix is ignored and
+     * {@code *} matches any tag.
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        return matches(ifNoneMatch, etag, true);
+    }
+
+    /**
+     * Like {@link #matches(String, String)}, but only true when the client actually sent this tag, so
+     * {@code *} does not count. Use it where the matched tag decides how the answer may be cached.
+     */
+    public static boolean names(String ifNoneMatch, String etag) {
+        return matches(ifNoneMatch, etag, false);
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag, boolean wildcard) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if ((wildcard && tag.equals("*")) || tag.equals("\"" + etag + "\"")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String digest(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 12));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.chatbot.service;
+
+import com.chatbot.dto.MessageRequest;
+import com.chatbot.dto.MessageResponse;
+import com.chatbot.exception.IdempotencyKeyMismatchException;
+import com.chatbot.exception.InvalidIdempotencyKeyException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Makes {@code POST /chat/session/messages} safe to retry under an {@code Idempotency-Key} header. The
+ * first request with a key runs normally; duplicates arriving while it is in flight wait for its
+ * outcome, and later ones get the stored {@link MessageResponse} back without calling Groq or writing
+ * rows again. Keys are scoped to the caller's API key, and a key reused with a different session or
+ * message is refused. Failed requests are forgotten, so a retry after a failure really runs again.
+ * <p>
+ * Responses are kept in memory, at most {@code app.idempotency.max-keys} of them for
+ * {@code app.idempotency.ttl}. With {@code app.idempotency.store=jdbc} they are also written to the
+ * {@value #TABLE} table of the application database, so replays survive restarts and work across
+ * instances; waiting on an in-flight duplicate still only happens within one instance.
+ */
+@Service
+public class IdempotencyService {
+
+    public enum StoreMode { MEMORY, JDBC }
+
+    public record Outcome(MessageResponse response, boolean replayed) {
+    }
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    static final String TABLE = "idempotency_keys";
+    static final int MAX_KEY_LENGTH = 255;
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+
+    private final Cache<String, Entry> entries;
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration ttl;
+    private final Counter replays;
+    private final Counter mismatches;
+
+    public IdempotencyService(DataSource dataSource, MeterRegistry meterRegistry,
+                              @Value("${app.idempotency.store:memory}") StoreMode store,
+                              @Value("${app.idempotency.max-keys:100000}") long maxKeys,
+                              @Value("${app.idempotency.ttl:24h}") Duration ttl) {
+        this.ttl = ttl;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterWrite(ttl)
+                .build();
+        if (store == StoreMode.JDBC) {
+            jdbcTemplate = new JdbcTemplate(dataSource);
+            // optional table, so it is not an entity that ddl-auto would always create
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (id VARCHAR(512) PRIMARY KEY,"
+                    + " fingerprint VARCHAR(64) NOT NULL, session_id VARCHAR(255) NOT NULL, message TEXT NOT NULL,"
+                    + " role VARCHAR(32) NOT NULL, created_at TIMESTAMP NOT NULL)");
+            logger.info("Idempotency keys are persisted in {}", TABLE);
+        } else {
+            jdbcTemplate = null;
+        }
+        this.replays = Counter.builder("chat.idempotency.replayed")
+                .description("Duplicate submissions answered with the first request's response")
+                .register(meterRegistry);
+        this.mismatches = Counter.builder("chat.idempotency.mismatched")
+                .description("Submissions refused because their idempotency key belongs to another request")
+                .register(meterRegistry);
+        meterRegistry.gauge("chat.idempotency.keys", entries, Cache::estimatedSize);
+    }
+
+    /**
+     * Runs {@code call} for the first request with the key, otherwise returns that request's outcome.
+     *
+     * @throws InvalidIdempotencyKeyException  for a blank or overlong key
+     * @throws IdempotencyKeyMismatchException when the key was used for a different request
+     */
+    public CompletableFuture<Outcome> execute(String key, MessageRequest request, Supplier<CompletableFuture<MessageResponse>> call) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException(HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        String id = currentCaller() + "|" + key;
+        Entry entry = new Entry(fingerprint(request), new CompletableFuture<>());
+        Entry existing = entries.asMap().putIfAbsent(id, entry);
+        if (existing != null) {
+            return replay(key, existing, entry.fingerprint);
+        }
+
+        MessageResponse stored;
+        try {
+            stored = load(id, entry.fingerprint, key);
+        } catch (IdempotencyKeyMismatchException ex) {
+            entries.asMap().remove(id, entry);
+            entry.response.completeExceptionally(ex);
+            throw ex;
+        }
+        if (stored != null) {
+            entry.response.complete(stored);
+            replays.increment();
+            return CompletableFuture.completedFuture(new Outcome(stored, true));
+        }
+
+        CompletableFuture<MessageResponse> response;
+        try {
+            response = call.get();
+        } catch (RuntimeException ex) {
+            entries.asMap().remove(id, entry);
+            entry.response.completeExceptionally(ex);
+            throw ex;
+        }
+        response.whenComplete((value, ex) -> {
+            if (ex != null) {
+                entries.asMap().remove(id, entry);
+                entry.response.completeExceptionally(ex);
+            } else {
+                save(id, entry.fingerprint, value);
+                entry.response.complete(value);
+            }
+        });
+        return entry.response.copy().thenApply(value -> new Outcome(value, false));
+    }
+
+    @Scheduled(fixedDelayString = "${app.idempotency.cleanup-interval-ms:600000}", initialDelayString = "${app.idempotency.cleanup-interval-ms:600000}")
+    public void deleteExpired() {
+        if (jdbcTemplate == null) {
+            return;
+        }
+        int deleted = jdbcTemplate.update("DELETE FROM " + TABLE + " WHERE created_at < ?", LocalDateTime.now().minus(ttl));
+        if (deleted > 0) {
+            logger.info("Deleted {} expired idempotency keys", deleted);
+        }
+    }
+
+    private CompletableFuture<Outcome> replay(String key, Entry existing, String fingerprint) {
+        if (!existing.fingerprint.equals(fingerprint)) {
+            mismatches.increment();
+            throw new IdempotencyKeyMismatchException(key);
+        }
+        replays.increment();
+        logger.debug("Replaying response for idempotency key {}", key);
+        // a copy, so one caller cancelling cannot fail the shared outcome for the others
+        return existing.response.copy().thenApply(value -> new Outcome(value, true));
+    }
+
+    private MessageResponse load(String id, String fingerprint, String key) {
+        if (jdbcTemplate == null) {
+            return null;
+        }
+        List<StoredResponse> rows;
+        try {
+            rows = jdbcTemplate.query(
+                    "SELECT fingerprint, session_id, message, role FROM " + TABLE + " WHERE id = ? AND created_at >= ?",
+                    (rs, rowNum) -> new StoredResponse(rs.getString("fingerprint"),
+                            new MessageResponse(rs.getString("session_id"), rs.getString("message"), rs.getString("role"))),
+                    id, LocalDateTime.now().minus(ttl));
+        } catch (DataAccessException ex) {
+            // better to risk a duplicate turn than to fail the request over the idempotency table
+            logger.warn("Could not look up idempotency key", ex);
+            return null;
+        }
+        if (rows.isEmpty()) {
+            return null;
+        }
+        if (!rows.get(0).fingerprint().equals(fingerprint)) {
+            mismatches.increment();
+            throw new IdempotencyKeyMismatchException(key);
+        }
+        return rows.get(0).response();
+    }
+
+    private void save(String id, String fingerprint, MessageResponse response) {
+        if (jdbcTemplate == null) {
+            return;
+        }
+        try {
+            jdbcTemplate.update("INSERT INTO " + TABLE + " (id, fingerprint, session_id, message, role, created_at)"
+                            + " VALUES (?, ?, ?, ?, ?, ?)",
+                    id, fingerprint, response.getSessionId(), response.getMessage(), response.getRole(), LocalDateTime.now());
+        } catch (DuplicateKeyException ex) {
+            // another instance answered the same key first; its row stays the one replayed
+        } catch (DataAccessException ex) {
+            // the reply itself succeeded; only cross-instance replays of this key are lost
+            logger.warn("Could not persist idempotency key", ex);
+        }
+    }
+
+    private static String fingerprint(MessageRequest request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(request.getSessionId().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(request.getUserMessage().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String currentCaller() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : "";
+    }
+
+    private record Entry(String fingerprint, CompletableFuture<MessageResponse> response) {
+    }
+
+    private record StoredResponse(String fingerprint, MessageResponse response) {
+    }
+}
@@ -0,0 +1,193 @@
+package com.chatbot.service;
+
+import com.chatbot.dto.MessageJobResponse;
+import com.chatbot.dto.MessageRequest;
+import com.chatbot.dto.MessageResponse;
+import com.chatbot.exception.JobNotFoundException;
+import com.chatbot.exception.JobQueueFullException;
+import com.chatbot.exception.SessionNotFoundException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs chat turns in the background for clients that would rather poll than hold a connection open for
+ * the whole generation. Each job occupies one of {@code app.jobs.workers} workers until its reply is
+ * saved; at most {@code app.jobs.queue-capacity} more may wait, and further submissions are refused with
+ * {@link JobQueueFullException} so queueing delay stays bounded. The session is checked on the
+ * submitting thread, and the caller's security context travels with the job so token quotas are still
+ * charged to the right API key.
+ * <p>
+ * Jobs are kept in memory for {@code app.jobs.result-ttl} after their last change and are only visible
+ * to the caller that submitted them; with several instances a client must poll the one it submitted to.
+ */
+@Service
+public class MessageJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageJobService.class);
+    // weight of the newest job duration in the Retry-After estimate
+    private static final double EWMA_WEIGHT = 0.2;
+
+    private final ChatMessageService chatMessageService;
+    private final TaskExecutor jobExecutor;
+    private final int workers;
+    private final int maxAdmitted;
+    private final Cache<String, Job> jobs;
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final Counter rejected;
+    private volatile double averageJobMillis = 1000;
+
+    public MessageJobService(ChatMessageService chatMessageService,
+                             @Qualifier("chatJobExecutor") TaskExecutor jobExecutor,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.jobs.workers:8}") int workers,
+                             @Value("${app.jobs.queue-capacity:100}") int queueCapacity,
+                             @Value("${app.jobs.max-jobs:10000}") long maxJobs,
+                             @Value("${app.jobs.result-ttl:10m}") Duration resultTtl) {
+        this.chatMessageService = chatMessageService;
+        this.jobExecutor = jobExecutor;
+        this.workers = Math.max(1, workers);
+        this.maxAdmitted = this.workers + queueCapacity;
+        this.jobs = Caffeine.newBuilder()
+                .maximumSize(maxJobs)
+                .expireAfterWrite(resultTtl)
+                .build();
+        Gauge.builder("chat.jobs.queued", this, service -> service.admitted.get() - service.running.get())
+                .description("Message jobs waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("chat.jobs.running", running, AtomicInteger::get)
+                .description("Message jobs being generated")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("chat.jobs.rejected")
+                .description("Message jobs refused because the queue was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues the turn and returns its job at once.
+     *
+     * @throws SessionNotFoundException for an unknown session, before anything is queued
+     * @throws JobQueueFullException    when every worker is busy and the queue is full
+     */
+    public MessageJobResponse submit(MessageRequest request) {
+        chatMessageService.validateSession(request.getSessionId());
+        if (admitted.incrementAndGet() > maxAdmitted) {
+            admitted.decrementAndGet();
+            rejected.increment();
+            throw new JobQueueFullException(retryAfter());
+        }
+        Job job = new Job(UUID.randomUUID().toString(), request.getSessionId(), currentCaller());
+        jobs.put(job.id, job);
+        try {
+            jobExecutor.execute(new DelegatingSecurityContextRunnable(() -> run(job, request)));
+        } catch (TaskRejectedException ex) {
+            admitted.decrementAndGet();
+            jobs.invalidate(job.id);
+            rejected.increment();
+            throw new JobQueueFullException(retryAfter());
+        }
+        logger.info("Queued job={} for sessionId={}", job.id, request.getSessionId());
+        return job.snapshot();
+    }
+
+    /**
+     * Completes with the job's state once it has finished, or after {@code wait} with its current state.
+     */
+    public CompletableFuture<MessageJobResponse> poll(String jobId, Duration wait) {
+        Job job = jobs.getIfPresent(jobId);
+        if (job == null || !Objects.equals(job.owner, currentCaller())) {
+            throw new JobNotFoundException(jobId);
+        }
+        if (job.done.isDone() || wait.isZero() || wait.isNegative()) {
+            return CompletableFuture.completedFuture(job.snapshot());
+        }
+        return job.done.handle((result, ex) -> job)
+                .completeOnTimeout(job, wait.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(Job::snapshot);
+    }
+
+    private void run(Job job, MessageRequest request) {
+        running.incrementAndGet();
+        job.status = MessageJobResponse.Status.RUNNING;
+        long start = System.nanoTime();
+        try {
+            job.done.complete(chatMessageService.sendMessage(request).join());
+        } catch (RuntimeException ex) {
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            logger.warn("Job={} for sessionId={} failed: {}", job.id, job.sessionId, cause.getMessage());
+            job.done.completeExceptionally(cause);
+        } finally {
+            recordDuration(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            running.decrementAndGet();
+            admitted.decrementAndGet();
+            // restart the TTL from completion, so a long queue does not expire a fresh result
+            jobs.put(job.id, job);
+        }
+    }
+
+    // workers finish concurrently, and an unsynchronized read-modify-write would drop some of their samples;
+    // retryAfter() still reads the volatile field without the lock
+    private synchronized void recordDuration(long millis) {
+        averageJobMillis += EWMA_WEIGHT * (millis - averageJobMillis);
+    }
+
+    // roughly how long until the queue ahead of a new job drains by one worker's share
+    private Duration retryAfter() {
+        int queued = Math.max(1, admitted.get() - running.get());
+        return Duration.ofMillis((long) (averageJobMillis * Math.ceil((double) queued / workers)));
+    }
+
+    private static String currentCaller() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : null;
+    }
+
+    private static final class Job {
+
+        private final String id;
+        private final String sessionId;
+        private final String owner;
+        private final CompletableFuture<MessageResponse> done = new CompletableFuture<>();
+        private volatile MessageJobResponse.Status status = MessageJobResponse.Status.QUEUED;
+
+        private Job(String id, String sessionId, String owner) {
+            this.id = id;
+            this.sessionId = sessionId;
+            this.owner = owner;
+        }
+
+        private MessageJobResponse snapshot() {
+            if (!done.isDone()) {
+                return new MessageJobResponse(id, sessionId, status, null, null, null);
+            }
+            try {
+                return new MessageJobResponse(id, sessionId, MessageJobResponse.Status.SUCCEEDED, done.join(), null, null);
+            } catch (CompletionException ex) {
+                Throwable cause = ex.getCause();
+                return new MessageJobResponse(id, sessionId, MessageJobResponse.Status.FAILED, null,
+                        cause.getMessage(), FailureStatus.of(cause));
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.chatbot.service;
+
+import com.chatbot.models.ChatMessage;
+import com.chatbot.repository.ChatMessageRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * One mailbox per session: turns of the same session run one after another, in arrival order, while
+ * different sessions never wait for each other. A lane exists only while it has work, so idle sessions
+ * cost nothing. There is no global lock; a turn on an idle lane runs right away on the calling thread,
+ * otherwise it starts on the thread that finished the turn before it, with the submitter's security
+ * context.
+ * <p>
+ * {@link #stamp(String, List)} numbers a session's messages with an increasing {@code seq} and keeps
+ * their {@code createdAt} from going backwards, so history reads in the order the turns happened even
+ * when two replies finish within the same clock tick. Every stamp first catches up with the session's
+ * last stored {@code seq} and {@code createdAt}, so turns another instance wrote in the meantime are
+ * never numbered over; the local counter only adds what this instance stamped but has not stored yet
+ * (write-behind), and is dropped after {@code app.lanes.sequence-ttl} without use. Lanes are per
+ * instance, so two turns of one session running on different instances at the same moment can still
+ * get the same {@code seq}.
+ */
+@Component
+public class SessionLanes {
+
+    private final ChatMessageRepository messageRepo;
+    private final Map<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+    private final Cache<String, Sequence> sequences;
+    private final Counter queued;
+
+    public SessionLanes(ChatMessageRepository messageRepo, MeterRegistry meterRegistry,
+                        @Value("${app.lanes.max-sequences:100000}") long maxSequences,
+                        @Value("${app.lanes.sequence-ttl:10m}") Duration sequenceTtl) {
+        this.messageRepo = messageRepo;
+        this.sequences = Caffeine.newBuilder()
+                .maximumSize(maxSequences)
+                .expireAfterAccess(sequenceTtl)
+                .build();
+        Gauge.builder("chat.lanes.active", tails, Map::size)
+                .description("Sessions with a turn in progress")
+                .register(meterRegistry);
+        this.queued = Counter.builder("chat.lanes.queued")
+                .description("Turns that waited for an earlier turn of the same session")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs {@code turn} once every turn submitted earlier for the session has completed, successfully or
+     * not. On an idle lane an exception thrown by {@code turn} itself propagates to the caller; on a busy
+     * one it fails the returned future.
+     */
+    public <T> CompletableFuture<T> submit(String sessionId, Supplier<CompletableFuture<T>> turn) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> previous = tails.put(sessionId, done);
+        CompletableFuture<T> result;
+        if (previous == null || previous.isDone()) {
+            try {
+                result = turn.get();
+            } catch (RuntimeException ex) {
+                release(sessionId, done);
+                throw ex;
+            }
+        } else {
+            queued.increment();
+            SecurityContext context = SecurityContextHolder.getContext();
+            result = previous.thenCompose(ignored -> runAs(context, turn));
+        }
+        result.whenComplete((value, ex) -> release(sessionId, done));
+        return result;
+    }
+
+    /**
+     * Gives the messages the session's next sequence numbers, in list order, and moves a
+     * {@code createdAt} that lies before the session's previous message up to it. Stamp a turn only once
+     * it succeeded, and {@link #unstamp(String, List)} it if it then cannot be saved, so failed turns
+     * leave no gaps.
+     */
+    public void stamp(String sessionId, List<ChatMessage> messages) {
+        Sequence sequence = sequences.get(sessionId, id -> new Sequence());
+        synchronized (sequence) {
+            // two index lookups; what this instance has stamped but not yet stored only exists locally
+            sequence.last = Math.max(sequence.last, messageRepo.findLastSeq(sessionId));
+            LocalDateTime stored = messageRepo.findLastCreatedAt(sessionId);
+            if (stored != null && (sequence.lastCreatedAt == null || stored.isAfter(sequence.lastCreatedAt))) {
+                sequence.lastCreatedAt = stored;
+            }
+            for (ChatMessage message : messages) {
+                LocalDateTime createdAt = message.getCreatedAt() != null ? message.getCreatedAt() : LocalDateTime.now();
+                // an equal timestamp is fine: the keyset order falls back to the id, assigned in write order
+                if (sequence.lastCreatedAt != null && createdAt.isBefore(sequence.lastCreatedAt)) {
+                    createdAt = sequence.lastCreatedAt;
+                }
+                message.setSeq(++sequence.last);
+                message.setCreatedAt(createdAt);
+                sequence.lastCreatedAt = createdAt;
+            }
+        }
+    }
+
+    /**
+     * Gives back the numbers of messages stamped last that were never saved. Does nothing once later
+     * messages of the session were stamped, since their numbers are already taken; the gap then stays.
+     */
+    public void unstamp(String sessionId, List<ChatMessage> messages) {
+        Sequence sequence = sequences.getIfPresent(sessionId);
+        if (sequence == null || messages.isEmpty()) {
+            return;
+        }
+        synchronized (sequence) {
+            // lastCreatedAt stays: the clamp only needs a bound the clock has already passed
+            if (sequence.last == messages.get(messages.size() - 1).getSeq()) {
+                sequence.last = messages.get(0).getSeq() - 1;
+            }
+        }
+    }
+
+    int activeLanes() {
+        return tails.size();
+    }
+
+    private void release(String sessionId, CompletableFuture<Void> done) {
+        done.complete(null);
+        tails.remove(sessionId, done);
+    }
+
+    private static <T> CompletableFuture<T> runAs(SecurityContext context, Supplier<CompletableFuture<T>> turn) {
+        SecurityContext original = SecurityContextHolder.getContext();
+        SecurityContextHolder.setContext(context);
+        try {
+            return turn.get();
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        } finally {
+            SecurityContextHolder.setContext(original);
+        }
+    }
+
+    private static final class Sequence {
+        private long last;
+        private LocalDateTime lastCreatedAt;
+    }
+}
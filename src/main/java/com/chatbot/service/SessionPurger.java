@@ -0,0 +1,72 @@
+package com.chatbot.service;
+
+import com.chatbot.repository.ChatMessageRepository;
+import com.chatbot.repository.ChatSessionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Background half of the soft delete in {@link SessionService#deleteSession(String)}: removes the
+ * messages of sessions marked deleted, {@code chunk-size} rows per transaction, then the session
+ * row itself. A purge interrupted by a restart simply continues on the next run.
+ */
+@Component
+public class SessionPurger {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionPurger.class);
+
+    private final ChatSessionRepository sessionRepo;
+    private final ChatMessageRepository messageRepo;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter purgedMessages;
+    private final int chunkSize;
+    private final int sessionsPerRun;
+
+    public SessionPurger(ChatSessionRepository sessionRepo, ChatMessageRepository messageRepo,
+                         PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                         @Value("${app.sessions.purge.chunk-size:1000}") int chunkSize,
+                         @Value("${app.sessions.purge.sessions-per-run:10}") int sessionsPerRun) {
+        this.sessionRepo = sessionRepo;
+        this.messageRepo = messageRepo;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.sessionsPerRun = sessionsPerRun;
+        this.purgedMessages = Counter.builder("sessions.purge.messages")
+                .description("Messages removed by the background purge of deleted sessions")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.sessions.purge.interval-ms:30000}", initialDelayString = "${app.sessions.purge.interval-ms:30000}")
+    public void purgeDeletedSessions() {
+        List<String> sessionIds = sessionRepo.findDeletedSessionIds(PageRequest.of(0, sessionsPerRun));
+        for (String sessionId : sessionIds) {
+            try {
+                purge(sessionId);
+            } catch (RuntimeException ex) {
+                logger.error("Purge of deleted session {} failed, will retry on the next run", sessionId, ex);
+            }
+        }
+    }
+
+    void purge(String sessionId) {
+        long total = 0;
+        int deleted;
+        do {
+            deleted = transactionTemplate.execute(status -> messageRepo.deleteChunkBySessionId(sessionId, chunkSize));
+            total += deleted;
+            purgedMessages.increment(deleted);
+        } while (deleted > 0);
+        transactionTemplate.executeWithoutResult(status -> sessionRepo.deleteById(sessionId));
+        logger.info("Purged deleted session {} with {} messages", sessionId, total);
+    }
+}
@@ -0,0 +1,192 @@
+package com.chatbot.service;
+
+import com.chatbot.common.BloomFilter;
+import com.chatbot.repository.ChatSessionRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Answers "does this session exist?" without a query on the hot path. A bounded LRU of recently
+ * confirmed ids accepts known ones; everything else is looked up in the database. An id stays in the
+ * LRU for {@code app.sessions.registry.ttl} after it was confirmed, so a session deleted through
+ * another instance is still accepted here for up to that long; deletes made through this instance
+ * take effect at once.
+ * <p>
+ * With {@code app.sessions.registry.bloom-enabled=true} a Bloom filter over every session id also
+ * rejects unknown ids without a query. The filter is loaded from the database once the application
+ * is ready and is kept current by {@link #register(String)}, so it is only correct when every session
+ * is created through this instance: with several instances on one database, a session created
+ * elsewhere would be answered with 404. It is therefore off by default.
+ */
+@Component
+public class SessionRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionRegistry.class);
+
+    private final ChatSessionRepository sessionRepo;
+    private final Cache<String, Boolean> knownIds;
+    private final boolean bloomEnabled;
+    private final long expectedSessions;
+    private final double falsePositiveRate;
+    private final Counter bloomRejections;
+    private final Counter databaseLookups;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    // null until the first load completes; until then every miss goes to the database
+    private volatile BloomFilter bloom;
+    // receives registrations while a load is running, so none are lost when it is swapped in
+    private BloomFilter building;
+
+    public SessionRegistry(ChatSessionRepository sessionRepo, MeterRegistry meterRegistry,
+                           @Value("${app.sessions.registry.bloom-enabled:false}") boolean bloomEnabled,
+                           @Value("${app.sessions.registry.expected-sessions:100000}") long expectedSessions,
+                           @Value("${app.sessions.registry.false-positive-rate:0.01}") double falsePositiveRate,
+                           @Value("${app.sessions.registry.max-known:50000}") long maxKnown,
+                           @Value("${app.sessions.registry.ttl:1m}") Duration ttl) {
+        this.sessionRepo = sessionRepo;
+        this.bloomEnabled = bloomEnabled;
+        this.expectedSessions = expectedSessions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.knownIds = Caffeine.newBuilder()
+                .maximumSize(maxKnown)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, knownIds, "sessions.known");
+        this.bloomRejections = Counter.builder("sessions.registry.lookups")
+                .tag("result", "bloom-rejected")
+                .description("Session lookups answered by the Bloom filter")
+                .register(meterRegistry);
+        this.databaseLookups = Counter.builder("sessions.registry.lookups")
+                .tag("result", "database")
+                .description("Session lookups that had to query the database")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (bloomEnabled) {
+            rebuild(expectedSessions);
+        }
+    }
+
+    public boolean exists(String sessionId) {
+        if (isKnownAbsent(sessionId)) {
+            return false;
+        }
+        if (knownIds.getIfPresent(sessionId) != null) {
+            return true;
+        }
+        databaseLookups.increment();
+        boolean exists = sessionRepo.existsBySessionIdAndDeletedFalse(sessionId);
+        if (exists) {
+            knownIds.put(sessionId, Boolean.TRUE);
+        }
+        return exists;
+    }
+
+    /**
+     * Bulk form of {@link #exists(String)}: returns the given ids that exist, with at most one query
+     * for all of those neither the Bloom filter nor the LRU could answer.
+     */
+    public Set<String> existing(Collection<String> sessionIds) {
+        Set<String> existing = new HashSet<>();
+        List<String> unknown = new ArrayList<>();
+        for (String sessionId : new HashSet<>(sessionIds)) {
+            if (isKnownAbsent(sessionId)) {
+                continue;
+            }
+            if (knownIds.getIfPresent(sessionId) != null) {
+                existing.add(sessionId);
+            } else {
+                unknown.add(sessionId);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            databaseLookups.increment();
+            for (String sessionId : sessionRepo.findExistingSessionIds(unknown)) {
+                knownIds.put(sessionId, Boolean.TRUE);
+                existing.add(sessionId);
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * True only when the session certainly does not exist; false means "ask the database".
+     */
+    public boolean isKnownAbsent(String sessionId) {
+        BloomFilter filter = bloom;
+        if (filter != null && !filter.mightContain(sessionId)) {
+            bloomRejections.increment();
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void register(String sessionId) {
+        knownIds.put(sessionId, Boolean.TRUE);
+        if (building != null) {
+            building.add(sessionId);
+        }
+        BloomFilter filter = bloom;
+        if (filter != null) {
+            filter.add(sessionId);
+            if (filter.isSaturated() && rebuilding.compareAndSet(false, true)) {
+                // deleted ids never leave the filter either, so size the new one from the table
+                CompletableFuture.runAsync(() -> rebuild(filter.expectedInsertions() * 2))
+                        .whenComplete((ignored, ex) -> rebuilding.set(false));
+            }
+        }
+    }
+
+    /**
+     * Forgets a deleted session. Its id stays in the Bloom filter until the next rebuild, which only
+     * costs a database lookup if it is asked for again.
+     */
+    public void evict(String sessionId) {
+        knownIds.invalidate(sessionId);
+    }
+
+    private void rebuild(long minExpected) {
+        try {
+            // leave headroom so the filter is not saturated again right away
+            BloomFilter next = new BloomFilter(Math.max(minExpected, sessionRepo.count() * 2), falsePositiveRate);
+            synchronized (this) {
+                building = next;
+            }
+            List<String> ids = sessionRepo.findAllSessionIds();
+            for (String id : ids) {
+                next.add(id);
+            }
+            synchronized (this) {
+                bloom = next;
+                building = null;
+            }
+            logger.info("Session registry loaded {} ids, sized for {}", ids.size(), next.expectedInsertions());
+        } catch (RuntimeException ex) {
+            logger.error("Could not load the session registry, lookups fall back to the database", ex);
+            synchronized (this) {
+                building = null;
+            }
+        }
+    }
+}
@@ -8,23 +8,35 @@ import com.chatbot.repository.ChatSessionRepository;
 import jakarta.transaction.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @Service
 public class SessionService {
     private static final Logger logger = LoggerFactory.getLogger(SessionService.class);
     private final ChatSessionRepository sessionRepository;
     private final ChatMessageRepository chatMessageRepository;
+    private final ConversationContextBuilder contextBuilder;
+    private final SessionRegistry sessionRegistry;
 
-    public SessionService(ChatSessionRepository sessionRepository, ChatMessageRepository chatMessageRepository) {
+    @Value("${app.sessions.delete.soft-threshold:5000}")
+    private long softDeleteThreshold;
+
+    public SessionService(ChatSessionRepository sessionRepository, ChatMessageRepository chatMessageRepository,
+                          ConversationContextBuilder contextBuilder, SessionRegistry sessionRegistry) {
         this.sessionRepository = sessionRepository;
         this.chatMessageRepository = chatMessageRepository;
+        this.contextBuilder = contextBuilder;
+        this.sessionRegistry = sessionRegistry;
     }
 
     public SessionResponse createSession(String name) {
         ChatSession session = new ChatSession();
         session.setName(name);
         session = sessionRepository.save(session);
+        sessionRegistry.register(session.getSessionId());
         logger.info("Created new chat session with ID: {}", session.getSessionId());
         return new SessionResponse(session.getSessionId(), session.getName(), session.isFavorite());
     }
@@ -44,20 +56,49 @@ public class SessionService {
         return saveAndGetSessionResponse(currentSession);
     }
 
+    /**
+     * Sessions with up to {@code app.sessions.delete.soft-threshold} messages are deleted right away,
+     * messages first, with one bulk statement. Larger ones are only marked deleted here, which hides
+     * them at once; {@link SessionPurger} removes their messages in bounded chunks afterwards.
+     */
     @Transactional
     public void deleteSession(String sessionId) {
         findChatSession(sessionId);
-        logger.info("Delete the messages of session: {}.", sessionId);
-        chatMessageRepository.deleteBySessionId(sessionId);
-        logger.info("Delete session: {}.", sessionId);
-        sessionRepository.deleteById(sessionId);
+        if (chatMessageRepository.hasMoreMessagesThan(sessionId, softDeleteThreshold)) {
+            logger.info("Mark session: {} deleted, more than {} messages left for the purge.", sessionId, softDeleteThreshold);
+            sessionRepository.markDeleted(sessionId);
+        } else {
+            logger.info("Delete the messages of session: {}.", sessionId);
+            chatMessageRepository.deleteBySessionId(sessionId);
+            logger.info("Delete session: {}.", sessionId);
+            sessionRepository.deleteById(sessionId);
+        }
+        contextBuilder.evict(sessionId);
+        // once the delete is visible, so a concurrent lookup cannot re-cache the id in between
+        afterCommit(() -> sessionRegistry.evict(sessionId));
     }
 
     private ChatSession findChatSession(String sessionId) {
-        return sessionRepository.findById(sessionId).orElseThrow(
+        if (sessionRegistry.isKnownAbsent(sessionId)) {
+            throw new SessionNotFoundException("Session not found: " + sessionId);
+        }
+        return sessionRepository.findBySessionIdAndDeletedFalse(sessionId).orElseThrow(
                 () -> new SessionNotFoundException("Session not found: " + sessionId));
     }
 
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
     private SessionResponse saveAndGetSessionResponse(ChatSession currentSession) {
         ChatSession session = sessionRepository.save(currentSession);
         return new SessionResponse(session.getSessionId(), session.getName(), session.isFavorite());
@@ -0,0 +1,155 @@
+package com.chatbot.api;
+
+import com.chatbot.integration.ChatbotService;
+import com.chatbot.service.SessionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+
+/**
+ * Runs the async endpoints through the real filter chain on a real server: the response of an async
+ * request is written on an ASYNC dispatch, which must not be turned away by authorization.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"app.rate.capacity=1000", "app.rate.refill-tokens=1000"})
+class AsyncEndpointSecurityIntegrationTest {
+
+    private static final String API_KEY = "test_key";
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private SessionService sessionService;
+    @MockBean
+    private ChatbotService chatbotService;
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private String sessionId;
+
+    @BeforeEach
+    void setUp() {
+        sessionId = sessionService.createSession("secured-async").getSessionId();
+    }
+
+    @Test
+    void givenValidApiKey_whenStreamMessage_thenStreamCompletesWithDoneEvent() throws Exception {
+        given(chatbotService.streamAsk(anyList(), anyBoolean(), any(), any())).willAnswer(invocation -> {
+            Consumer<String> onToken = invocation.getArgument(3);
+            onToken.accept("Hel");
+            onToken.accept("lo");
+            return "Hello";
+        });
+
+        HttpResponse<String> response = send(post("/chat/session/messages/stream", messageBody("hi")));
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("event:token"), response.body());
+        assertTrue(response.body().contains("event:done"), response.body());
+    }
+
+    @Test
+    void givenValidApiKey_whenSendMessage_thenAsyncDispatchReturnsReply() throws Exception {
+        givenUpstreamReplies("Hello");
+
+        HttpResponse<String> response = send(post("/chat/session/messages", messageBody("hi")));
+
+        assertEquals(200, response.statusCode(), response.body());
+        assertTrue(response.body().contains("\"message\":\"Hello\""), response.body());
+    }
+
+    @Test
+    void givenValidApiKey_whenSendBatch_thenAsyncDispatchReturnsItems() throws Exception {
+        givenUpstreamReplies("Hello");
+
+        HttpResponse<String> response = send(post("/chat/session/messages/batch",
+                "{\"messages\":[" + messageBody("one") + "," + messageBody("two") + "]}"));
+
+        assertEquals(200, response.statusCode(), response.body());
+        assertTrue(response.body().contains("\"succeeded\":2"), response.body());
+    }
+
+    @Test
+    void givenValidApiKey_whenPollJob_thenAsyncDispatchReturnsResult() throws Exception {
+        givenUpstreamReplies("Hello");
+        HttpResponse<String> submitted = send(post("/chat/session/messages/async", messageBody("hi")));
+        assertEquals(202, submitted.statusCode(), submitted.body());
+        String location = submitted.headers().firstValue("Location").orElseThrow();
+
+        HttpResponse<String> polled = send(HttpRequest.newBuilder(uri(location + "?waitMs=5000"))
+                .header("X-API-KEY", API_KEY)
+                .GET()
+                .build());
+
+        assertEquals(200, polled.statusCode(), polled.body());
+        assertTrue(polled.body().contains("SUCCEEDED"), polled.body());
+    }
+
+    @Test
+    void givenIdempotencyKey_whenSendMessageTwice_thenSecondIsReplayed() throws Exception {
+        givenUpstreamReplies("Hello");
+        HttpRequest request = HttpRequest.newBuilder(uri("/chat/session/messages"))
+                .header("X-API-KEY", API_KEY)
+                .header("Idempotency-Key", "secured-" + sessionId)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(messageBody("hi")))
+                .build();
+
+        HttpResponse<String> first = send(request);
+        HttpResponse<String> retry = send(request);
+
+        assertEquals(200, first.statusCode(), first.body());
+        assertEquals(200, retry.statusCode(), retry.body());
+        assertEquals("true", retry.headers().firstValue("Idempotent-Replayed").orElse(null));
+    }
+
+    @Test
+    void givenMissingApiKey_whenStreamMessage_thenReturns401() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri("/chat/session/messages/stream"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(messageBody("hi")))
+                .build();
+
+        assertEquals(401, send(request).statusCode());
+    }
+
+    private void givenUpstreamReplies(String reply) {
+        given(chatbotService.askAsync(anyList(), anyBoolean(), any())).willReturn(CompletableFuture.completedFuture(reply));
+    }
+
+    private String messageBody(String message) {
+        return "{\"sessionId\":\"" + sessionId + "\",\"userMessage\":\"" + message + "\"}";
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("X-API-KEY", API_KEY)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws Exception {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,100 @@
+package com.chatbot.api;
+
+import com.chatbot.dto.MessageRequest;
+import com.chatbot.integration.ChatbotService;
+import com.chatbot.service.SessionService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Sends a burst of chats while the (mocked) Groq call is pending and samples the Hikari pool:
+ * no connection may be checked out during the wait, no matter how long the upstream takes.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc(addFilters = false)
+class ChatMessageConnectionPoolIntegrationTest {
+
+    private static final int CONCURRENT_CHATS = 20;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private SessionService sessionService;
+    @Autowired
+    private DataSource dataSource;
+    @MockBean
+    private ChatbotService chatbotService;
+
+    private HikariPoolMXBean pool;
+    private String sessionId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        pool = dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+        sessionId = sessionService.createSession("pool-usage").getSessionId();
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {100, 400, 1200})
+    void givenGrowingUpstreamLatency_whenChatsAreInFlight_thenNoConnectionIsHeld(long upstreamLatencyMs) throws Exception {
+        // upstream "answers" only once the gate opens, so sampling never overlaps the post-call save
+        CompletableFuture<String> upstreamReply = new CompletableFuture<>();
+        given(chatbotService.askAsync(anyList(), anyBoolean(), any())).willAnswer(invocation -> upstreamReply.thenApplyAsync(reply -> reply));
+
+        MessageRequest request = new MessageRequest();
+        request.setSessionId(sessionId);
+        request.setUserMessage("hello");
+        String body = objectMapper.writeValueAsString(request);
+
+        List<MvcResult> pending = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_CHATS; i++) {
+            pending.add(mockMvc.perform(post("/chat/session/messages")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(body))
+                    .andExpect(request().asyncStarted())
+                    .andReturn());
+        }
+
+        int peakActive = 0;
+        long sampleUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(upstreamLatencyMs);
+        while (System.nanoTime() < sampleUntil) {
+            peakActive = Math.max(peakActive, pool.getActiveConnections());
+            Thread.sleep(5);
+        }
+        upstreamReply.complete("reply");
+
+        assertEquals(0, peakActive, "connections held while waiting on upstream");
+        for (MvcResult result : pending) {
+            mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+        }
+    }
+}
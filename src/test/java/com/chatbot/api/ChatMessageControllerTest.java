@@ -1,12 +1,22 @@
 package com.chatbot.api;
 
 import com.chatbot.common.Constants;
+import com.chatbot.dto.MessageJobResponse;
 import com.chatbot.dto.MessageRequest;
 import com.chatbot.dto.MessageResponse;
 import com.chatbot.dto.MessagesResponse;
+import com.chatbot.dto.MessagesSliceResponse;
+import com.chatbot.exception.IdempotencyKeyMismatchException;
+import com.chatbot.exception.InvalidCursorException;
+import com.chatbot.exception.JobQueueFullException;
+import com.chatbot.exception.QuotaExceededException;
 import com.chatbot.models.ChatMessage;
 import com.chatbot.service.ChatMessageService;
+import com.chatbot.service.HistoryETags;
+import com.chatbot.service.IdempotencyService;
+import com.chatbot.service.MessageJobService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -17,13 +27,18 @@ import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.hamcrest.CoreMatchers.is;
 
@@ -36,6 +51,10 @@ class ChatMessageControllerTest {
     private MockMvc mockMvc;
     @MockBean
     private ChatMessageService chatMessageService;
+    @MockBean
+    private MessageJobService messageJobService;
+    @MockBean
+    private IdempotencyService idempotencyService;
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -43,7 +62,12 @@ class ChatMessageControllerTest {
     private static final String MOCK_SESSION_ID = "mock-session-id";
     private static final String MOCK_USER_MESSAGE = "Hello chatbot!";
     private static final String MOCK_AI_MESSAGE = "Hi user, how can I help you?";
+    private static final HistoryETags.PageETags PAGE_ETAGS = new HistoryETags.PageETags("c-page", () -> "o-42-page");
 
+    @BeforeEach
+    void setUp() {
+        given(chatMessageService.historyETags(anyString(), any(Object[].class))).willReturn(PAGE_ETAGS);
+    }
 
     @Test
     void givenValidRequest_whenSendMessage_thenReturnMessageResponse() throws Exception {
@@ -53,11 +77,15 @@ class ChatMessageControllerTest {
         request.setUserMessage(MOCK_USER_MESSAGE);
         MessageResponse mockResponse = new MessageResponse(MOCK_SESSION_ID, MOCK_AI_MESSAGE, Constants.ASSISTANT_ROLE);
 
-        given(chatMessageService.sendMessage(any(MessageRequest.class))).willReturn(mockResponse);
+        given(chatMessageService.sendMessage(any(MessageRequest.class))).willReturn(CompletableFuture.completedFuture(mockResponse));
 
-        mockMvc.perform(post(BASE_URL)
+        MvcResult asyncResult = mockMvc.perform(post(BASE_URL)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(request)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(asyncResult))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.sessionId", is(MOCK_SESSION_ID)))
                 .andExpect(jsonPath("$.role", is(Constants.ASSISTANT_ROLE)))
@@ -67,6 +95,94 @@ class ChatMessageControllerTest {
     }
 
 
+    @Test
+    void givenReplayedIdempotencyKey_whenSendMessage_thenReturnsStoredResponseMarkedAsReplay() throws Exception {
+        MessageRequest request = new MessageRequest();
+        request.setSessionId(MOCK_SESSION_ID);
+        request.setUserMessage(MOCK_USER_MESSAGE);
+        MessageResponse stored = new MessageResponse(MOCK_SESSION_ID, MOCK_AI_MESSAGE, Constants.ASSISTANT_ROLE);
+        given(idempotencyService.execute(eq("retry-1"), any(MessageRequest.class), any()))
+                .willReturn(CompletableFuture.completedFuture(new IdempotencyService.Outcome(stored, true)));
+
+        MvcResult asyncResult = mockMvc.perform(post(BASE_URL)
+                        .header(IdempotencyService.HEADER, "retry-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(asyncResult))
+                .andExpect(status().isOk())
+                .andExpect(header().string(IdempotencyService.REPLAYED_HEADER, "true"))
+                .andExpect(jsonPath("$.message", is(MOCK_AI_MESSAGE)));
+
+        verify(chatMessageService, never()).sendMessage(any(MessageRequest.class));
+    }
+
+    @Test
+    void givenIdempotencyKeyOfOtherRequest_whenSendMessage_thenReturns422() throws Exception {
+        MessageRequest request = new MessageRequest();
+        request.setSessionId(MOCK_SESSION_ID);
+        request.setUserMessage(MOCK_USER_MESSAGE);
+        given(idempotencyService.execute(eq("retry-1"), any(MessageRequest.class), any()))
+                .willThrow(new IdempotencyKeyMismatchException("retry-1"));
+
+        mockMvc.perform(post(BASE_URL)
+                        .header(IdempotencyService.HEADER, "retry-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$.error", is("Idempotency Key Reused")));
+    }
+
+    @Test
+    void givenValidRequest_whenSubmitAsync_thenReturns202WithJobLocation() throws Exception {
+        MessageRequest request = new MessageRequest();
+        request.setSessionId(MOCK_SESSION_ID);
+        request.setUserMessage(MOCK_USER_MESSAGE);
+        given(messageJobService.submit(any(MessageRequest.class))).willReturn(
+                new MessageJobResponse("job-1", MOCK_SESSION_ID, MessageJobResponse.Status.QUEUED, null, null, null));
+
+        mockMvc.perform(post(BASE_URL + "/async")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/jobs/job-1"))
+                .andExpect(jsonPath("$.jobId", is("job-1")))
+                .andExpect(jsonPath("$.status", is("QUEUED")));
+    }
+
+    @Test
+    void givenJobQueueFull_whenSubmitAsync_thenReturns503WithRetryAfter() throws Exception {
+        MessageRequest request = new MessageRequest();
+        request.setSessionId(MOCK_SESSION_ID);
+        request.setUserMessage(MOCK_USER_MESSAGE);
+        given(messageJobService.submit(any(MessageRequest.class))).willThrow(new JobQueueFullException(Duration.ofMillis(4_200)));
+
+        mockMvc.perform(post(BASE_URL + "/async")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "5"))
+                .andExpect(jsonPath("$.error", is("Job Queue Full")));
+    }
+
+    @Test
+    void givenQuotaExceeded_whenSendMessage_thenReturns429WithRetryAfter() throws Exception {
+        MessageRequest request = new MessageRequest();
+        request.setSessionId(MOCK_SESSION_ID);
+        request.setUserMessage(MOCK_USER_MESSAGE);
+        given(chatMessageService.sendMessage(any(MessageRequest.class)))
+                .willThrow(new QuotaExceededException("session " + MOCK_SESSION_ID, Duration.ofMillis(12_300)));
+
+        mockMvc.perform(post(BASE_URL)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "13"))
+                .andExpect(jsonPath("$.error", is("Token Quota Exceeded")));
+    }
+
     @Test
     void givenValidSessionId_whenGetMessages_thenReturnMessagesResponse() throws Exception {
 
@@ -94,10 +210,85 @@ class ChatMessageControllerTest {
                 .andExpect(jsonPath("$.totalElements", is(2)))
                 .andExpect(jsonPath("$.currentPage", is(1)))
                 .andExpect(jsonPath("$.isFirst", is(true)))
-                .andExpect(jsonPath("$.isLast", is(true)));
+                .andExpect(jsonPath("$.isLast", is(true)))
+                .andExpect(header().string("ETag", "\"o-42-page\""))
+                .andExpect(header().string("Cache-Control", "no-cache"));
 
         verify(chatMessageService, times(1)).listMessages(eq(MOCK_SESSION_ID), anyInt(), anyInt());
 
     }
 
-}
\ No newline at end of file
+    @Test
+    void givenNoPageParam_whenGetMessages_thenReturnsCursorSlice() throws Exception {
+        MessagesSliceResponse mockResponse = new MessagesSliceResponse(
+                List.of(new MessageResponse(MOCK_SESSION_ID, MOCK_USER_MESSAGE, Constants.USER_ROLE)),
+                1, true, false, "next-cursor", null);
+        given(chatMessageService.listMessages(MOCK_SESSION_ID, "some-cursor", 1)).willReturn(mockResponse);
+
+        mockMvc.perform(get(BASE_URL + "/" + MOCK_SESSION_ID)
+                        .param("cursor", "some-cursor")
+                        .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data[0].message", is(MOCK_USER_MESSAGE)))
+                .andExpect(jsonPath("$.hasNext", is(true)))
+                .andExpect(jsonPath("$.nextCursor", is("next-cursor")))
+                .andExpect(jsonPath("$.totalElements").doesNotExist())
+                .andExpect(header().string("ETag", "\"c-page\""))
+                .andExpect(header().string("Cache-Control", "max-age=86400, immutable"))
+                .andExpect(header().string("Vary", "X-API-KEY"));
+
+        verify(chatMessageService, never()).listMessages(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    void givenTailPage_whenGetMessages_thenRequiresRevalidation() throws Exception {
+        MessagesSliceResponse mockResponse = new MessagesSliceResponse(
+                List.of(new MessageResponse(MOCK_SESSION_ID, MOCK_USER_MESSAGE, Constants.USER_ROLE)),
+                1, false, false, "next-cursor", null);
+        given(chatMessageService.listMessages(MOCK_SESSION_ID, null, 10)).willReturn(mockResponse);
+
+        mockMvc.perform(get(BASE_URL + "/" + MOCK_SESSION_ID))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"o-42-page\""))
+                .andExpect(header().string("Cache-Control", "no-cache"));
+    }
+
+    @Test
+    void givenMatchingIfNoneMatch_whenGetMessages_thenReturns304WithoutReadingThePage() throws Exception {
+        mockMvc.perform(get(BASE_URL + "/" + MOCK_SESSION_ID)
+                        .param("cursor", "some-cursor")
+                        .header("If-None-Match", "\"c-other\", \"c-page\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"c-page\""));
+
+        mockMvc.perform(get(BASE_URL + "/" + MOCK_SESSION_ID)
+                        .param("page", "2")
+                        .header("If-None-Match", "W/\"o-42-page\""))
+                .andExpect(status().isNotModified());
+
+        verify(chatMessageService, never()).listMessages(anyString(), any(), anyInt());
+        verify(chatMessageService, never()).listMessages(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    void givenWildcardIfNoneMatch_whenGetMessages_thenReturns304WithoutImmutableCaching() throws Exception {
+        mockMvc.perform(get(BASE_URL + "/" + MOCK_SESSION_ID)
+                        .param("cursor", "some-cursor")
+                        .header("If-None-Match", "*"))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"o-42-page\""))
+                .andExpect(header().string("Cache-Control", "no-cache"));
+
+        verify(chatMessageService, never()).listMessages(anyString(), any(), anyInt());
+    }
+
+    @Test
+    void givenMalformedCursor_whenGetMessages_thenReturn400() throws Exception {
+        given(chatMessageService.listMessages(MOCK_SESSION_ID, "garbage", 10))
+                .willThrow(new InvalidCursorException("garbage"));
+
+        mockMvc.perform(get(BASE_URL + "/" + MOCK_SESSION_ID).param("cursor", "garbage"))
+                .andExpect(status().isBadRequest());
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.chatbot.bench;
+
+import com.chatbot.integration.GroqReply;
+import com.chatbot.integration.GroqResponseParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares bytes allocated per parsed Groq completion between the former {@code Map.class} binding
+ * (walking the nested maps for content and usage) and {@link GroqResponseParser}. Allocation is read
+ * from the thread's allocation counter, so results are stable across runs unlike wall-clock timings.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark -Dtest=GroqResponseParsingBenchmark}; tune with
+ * {@code -Dbench.iterations=200000 -Dbench.replyChars=2000}.
+ */
+@Tag("benchmark")
+class GroqResponseParsingBenchmark {
+
+    private static final int ITERATIONS = Integer.getInteger("bench.iterations", 200_000);
+    private static final int REPLY_CHARS = Integer.getInteger("bench.replyChars", 2_000);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final GroqResponseParser parser = new GroqResponseParser(objectMapper.getFactory());
+    private final byte[] body = completion("x".repeat(REPLY_CHARS)).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void streamingParserAllocatesLessThanMapBinding() throws Exception {
+        // warm both paths up so the JIT's escape analysis applies to the measured runs
+        measure(this::mapBinding, ITERATIONS / 10);
+        measure(this::streaming, ITERATIONS / 10);
+
+        long mapBytes = measure(this::mapBinding, ITERATIONS);
+        long streamingBytes = measure(this::streaming, ITERATIONS);
+
+        System.out.printf("%-12s %14s%n", "parser", "bytes/call");
+        System.out.printf("%-12s %,14d%n", "Map.class", mapBytes);
+        System.out.printf("%-12s %,14d%n", "streaming", streamingBytes);
+        assertTrue(streamingBytes < mapBytes, "streaming parser allocated " + streamingBytes + " bytes vs " + mapBytes);
+    }
+
+    private long mapBinding() throws Exception {
+        Map<?, ?> response = objectMapper.readValue(body, Map.class);
+        var choices = (List<Map<String, Object>>) response.get("choices");
+        Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
+        String content = (String) message.get("content");
+        long totalTokens = ((Number) ((Map<?, ?>) response.get("usage")).get("total_tokens")).longValue();
+        return content.length() + totalTokens;
+    }
+
+    private long streaming() throws Exception {
+        GroqReply reply = parser.parseCompletion(body);
+        return reply.content().length() + reply.usage().totalTokens();
+    }
+
+    private static long measure(ParseCall call, int iterations) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long sink = 0;
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            sink += call.parse();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertEquals((REPLY_CHARS + 57L) * iterations, sink);
+        return allocated / iterations;
+    }
+
+    private static String completion(String content) {
+        return """
+                {"id":"chatcmpl-0f1b","object":"chat.completion","created":1730000000,"model":"allam-2-7b",
+                 "choices":[{"index":0,"message":{"role":"assistant","content":"%s"},"logprobs":null,"finish_reason":"stop"}],
+                 "usage":{"queue_time":0.018,"prompt_tokens":21,"prompt_time":0.002,"completion_tokens":36,
+                          "completion_time":0.09,"total_tokens":57,"total_time":0.092},
+                 "system_fingerprint":"fp_8a8b3a6c3e","x_groq":{"id":"req_01jbd6g2qdfw2adyrt2az8hz4w"}}
+                """.formatted(content);
+    }
+
+    @FunctionalInterface
+    private interface ParseCall {
+        long parse() throws Exception;
+    }
+}
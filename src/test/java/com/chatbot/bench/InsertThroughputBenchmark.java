@@ -0,0 +1,83 @@
+package com.chatbot.bench;
+
+import com.chatbot.common.Constants;
+import com.chatbot.models.ChatMessage;
+import com.chatbot.repository.ChatMessageRepository;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures chat message inserts/sec for the three write paths: one {@code save} per row in its own
+ * transaction (how every turn was written before), one batched {@code saveAll} per user/assistant
+ * turn, and {@link ChatMessageRepository#bulkInsert(List)}.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark -Dtest=InsertThroughputBenchmark} against the in-memory H2
+ * database; add {@code -Dspring.profiles.active=prod -DDB_URL=jdbc:postgresql://localhost:5432/chatdb}
+ * to measure Postgres. Tune with {@code -Dbench.rows=20000}.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+class InsertThroughputBenchmark {
+
+    private static final int ROWS = Integer.getInteger("bench.rows", 20000);
+
+    @Autowired
+    private ChatMessageRepository messageRepo;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void compareInsertPaths() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+
+        // warm up the JIT, connection pool and sequence before measuring
+        messageRepo.bulkInsert(messages("warmup", ROWS / 10));
+
+        report("per-row save", measure(() -> {
+            for (ChatMessage message : messages("row", ROWS)) {
+                tx.executeWithoutResult(status -> messageRepo.save(message));
+            }
+        }));
+
+        report("saveAll per turn", measure(() -> {
+            List<ChatMessage> messages = messages("turn", ROWS);
+            for (int i = 0; i < messages.size(); i += 2) {
+                List<ChatMessage> turn = messages.subList(i, Math.min(i + 2, messages.size()));
+                tx.executeWithoutResult(status -> messageRepo.saveAll(turn));
+            }
+        }));
+
+        report("bulkInsert", measure(() -> messageRepo.bulkInsert(messages("bulk", ROWS))));
+    }
+
+    private static long measure(Runnable inserts) {
+        long start = System.nanoTime();
+        inserts.run();
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String path, long elapsedNanos) {
+        System.out.printf("%-18s rows=%d elapsed=%dms inserts/sec=%.0f%n",
+                path, ROWS, elapsedNanos / 1_000_000, ROWS / (elapsedNanos / 1e9));
+    }
+
+    private static List<ChatMessage> messages(String sessionId, int count) {
+        List<ChatMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ChatMessage message = new ChatMessage();
+            message.setSessionId(sessionId);
+            message.setRole(i % 2 == 0 ? Constants.USER_ROLE : Constants.ASSISTANT_ROLE);
+            message.setMessage("message " + i + " of a benchmark conversation");
+            messages.add(message);
+        }
+        return messages;
+    }
+}
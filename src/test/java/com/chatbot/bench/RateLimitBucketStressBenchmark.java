@@ -0,0 +1,80 @@
+package com.chatbot.bench;
+
+import com.chatbot.security.BucketStore;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Feeds millions of distinct client addresses through the rate-limit bucket store and checks that
+ * retained heap stops growing once the store is full.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark -Dtest=RateLimitBucketStressBenchmark}; tune with
+ * {@code -Dbench.clients=5000000 -Dbench.maxBuckets=100000}.
+ */
+@Tag("benchmark")
+class RateLimitBucketStressBenchmark {
+
+    private static final int CLIENTS = Integer.getInteger("bench.clients", 5_000_000);
+    private static final int MAX_BUCKETS = Integer.getInteger("bench.maxBuckets", 100_000);
+    private static final int CHECKPOINTS = 10;
+
+    @Test
+    void heapStaysFlatAcrossDistinctClients() {
+        BucketStore store = new BucketStore(key -> bucket(), MAX_BUCKETS, Duration.ofMinutes(1));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        store.bindTo(meterRegistry);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        // fill the store once so the baseline already holds MAX_BUCKETS entries
+        int client = 0;
+        for (; client < MAX_BUCKETS * 2; client++) {
+            store.resolve(address(client)).tryConsume(1);
+        }
+        long baseline = retainedHeap(memory);
+        long peak = baseline;
+
+        int step = (CLIENTS - client) / CHECKPOINTS;
+        for (int checkpoint = 1; checkpoint <= CHECKPOINTS; checkpoint++) {
+            for (int end = client + step; client < end; client++) {
+                store.resolve(address(client)).tryConsume(1);
+            }
+            long used = retainedHeap(memory);
+            peak = Math.max(peak, used);
+            System.out.printf("clients=%,d heap=%,dKB buckets=%,.0f evictions=%,.0f%n", client, used / 1024,
+                    meterRegistry.get("cache.size").gauge().value(),
+                    meterRegistry.get("cache.evictions").functionCounter().count());
+        }
+
+        long growth = peak - baseline;
+        System.out.printf("baseline=%,dKB peak=%,dKB growth=%,dKB%n", baseline / 1024, peak / 1024, growth / 1024);
+        // generous slack for GC noise; an unbounded map would grow by hundreds of MB here
+        assertTrue(growth < 32L * 1024 * 1024, "heap grew by " + growth / 1024 + "KB");
+    }
+
+    private static long retainedHeap(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static String address(int i) {
+        return (i >>> 24) + "." + ((i >>> 16) & 0xff) + "." + ((i >>> 8) & 0xff) + "." + (i & 0xff);
+    }
+
+    private static Bucket bucket() {
+        return Bucket.builder()
+                .addLimit(Bandwidth.classic(5, Refill.intervally(5, Duration.ofMinutes(1))))
+                .build();
+    }
+}
@@ -0,0 +1,148 @@
+package com.chatbot.bench;
+
+import com.chatbot.integration.ChatResponseCache;
+import com.chatbot.integration.RequestCoalescer;
+import com.chatbot.integration.AdaptiveConcurrencyLimiter;
+import com.chatbot.integration.UpstreamCircuitBreaker;
+import com.chatbot.integration.UpstreamRouter;
+import com.chatbot.integration.UpstreamResilience;
+import com.chatbot.integration.ChatbotService;
+import com.chatbot.integration.ChatTurn;
+import com.chatbot.common.Constants;
+import com.chatbot.security.TokenQuota;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares platform-thread request handling (a 200-thread pool, Tomcat's default) with one virtual
+ * thread per request, both driving the blocking Groq client against a stub upstream with fixed latency.
+ * <p>
+ * Run with {@code mvn test -Pbenchmark -Dtest=ThreadModeBenchmark}; tune with
+ * {@code -Dbench.chats=2000 -Dbench.upstreamLatencyMs=500}.
+ */
+@Tag("benchmark")
+class ThreadModeBenchmark {
+
+    private static final int CHATS = Integer.getInteger("bench.chats", 2000);
+    private static final int UPSTREAM_LATENCY_MS = Integer.getInteger("bench.upstreamLatencyMs", 500);
+    private static final int PLATFORM_THREADS = 200;
+    private static final byte[] REPLY = """
+            {"choices":[{"index":0,"message":{"role":"assistant","content":"ok"}}]}
+            """.getBytes(StandardCharsets.UTF_8);
+
+    private static HttpServer upstream;
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final AtomicInteger peakInFlight = new AtomicInteger();
+
+    @BeforeAll
+    static void startUpstream() throws Exception {
+        upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 4096);
+        upstream.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        upstream.createContext("/chat", exchange -> {
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                exchange.getRequestBody().readAllBytes();
+                Thread.sleep(UPSTREAM_LATENCY_MS);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, REPLY.length);
+                exchange.getResponseBody().write(REPLY);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+                exchange.close();
+            }
+        });
+        upstream.start();
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.stop(0);
+    }
+
+    @Test
+    void comparePlatformAndVirtualThreads() throws Exception {
+        ChatbotService chatbotService = blockingClient();
+        // warm up connections and JIT
+        run(Executors.newFixedThreadPool(PLATFORM_THREADS), chatbotService, Math.min(CHATS, 400));
+
+        Result platform = run(Executors.newFixedThreadPool(PLATFORM_THREADS), chatbotService, CHATS);
+        Result virtual = run(Executors.newVirtualThreadPerTaskExecutor(), chatbotService, CHATS);
+
+        System.out.printf("%n%d chats, upstream latency %d ms%n", CHATS, UPSTREAM_LATENCY_MS);
+        System.out.printf("%-10s %18s %10s %10s %12s%n", "mode", "max concurrent", "p50 ms", "p99 ms", "chats/s");
+        platform.print("platform");
+        virtual.print("virtual");
+    }
+
+    private Result run(ExecutorService requestThreads, ChatbotService chatbotService, int chats) throws Exception {
+        peakInFlight.set(0);
+        long[] latencies = new long[chats];
+        long start = System.nanoTime();
+        try (requestThreads) {
+            List<Future<?>> futures = new ArrayList<>(chats);
+            for (int i = 0; i < chats; i++) {
+                int index = i;
+                long submitted = System.nanoTime();
+                futures.add(requestThreads.submit(() -> {
+                    chatbotService.askAsync(List.of(new ChatTurn(Constants.USER_ROLE, "chat " + index)), true,
+                            TokenQuota.Reservation.NONE).join();
+                    latencies[index] = System.nanoTime() - submitted;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        return new Result(peakInFlight.get(), percentile(latencies, 0.50), percentile(latencies, 0.99),
+                chats / (elapsed / 1_000_000_000.0));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[(int) Math.ceil(p * sorted.length) - 1] / 1_000_000.0;
+    }
+
+    private ChatbotService blockingClient() {
+        ChatResponseCache noCache = new ChatResponseCache(false, 0, Duration.ZERO, new SimpleMeterRegistry());
+        ChatbotService chatbotService = new ChatbotService(new RestTemplateBuilder(), new ObjectMapper(),
+                // runs the blocking exchange on the request thread, as the thread model under test would
+                Runnable::run, noCache,
+                new RequestCoalescer(new SimpleMeterRegistry()),
+                // disabled, so the benchmark measures the thread model rather than the limiter
+                new AdaptiveConcurrencyLimiter(false, 1, 1, 1, 1, 0, 0, 0, new SimpleMeterRegistry()),
+                new UpstreamRouter(List.of(new UpstreamRouter.TargetProperties("bench",
+                        "http://localhost:" + upstream.getAddress().getPort() + "/chat", "bench-key", "bench-model", false)),
+                        UpstreamRouter.Strategy.LEAST_OUTSTANDING, 3, 30_000, Integer.MAX_VALUE, false, 0, new SimpleMeterRegistry()),
+                new UpstreamResilience(new UpstreamCircuitBreaker(false, 20, 10, 50, 30_000, 2, new SimpleMeterRegistry()),
+                        1, 0, 0, 0, 0, false, 0, new SimpleMeterRegistry()), 5_000, 60_000);
+        ReflectionTestUtils.setField(chatbotService, "clientMode", ChatbotService.ClientMode.BLOCKING);
+        return chatbotService;
+    }
+
+    private record Result(int maxConcurrent, double p50Ms, double p99Ms, double throughput) {
+        void print(String mode) {
+            System.out.printf("%-10s %18d %10.1f %10.1f %12.1f%n", mode, maxConcurrent, p50Ms, p99Ms, throughput);
+        }
+    }
+}
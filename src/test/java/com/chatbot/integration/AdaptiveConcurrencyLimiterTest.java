@@ -0,0 +1,140 @@
+package com.chatbot.integration;
+
+import com.chatbot.exception.UpstreamOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.net.http.HttpTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void givenSaturatedSuccessfulCalls_whenReleased_thenLimitGrowsAdditively() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 2, 50);
+
+        List<AdaptiveConcurrencyLimiter.Permit> permits = acquire(limiter, 4);
+        permits.forEach(permit -> permit.release(null));
+
+        // only releases made while at least half the limit was in use count as growth signals
+        assertEquals(6, limiter.limit());
+        assertEquals(6.0, meterRegistry.get("groq.limiter.limit").gauge().value());
+    }
+
+    @Test
+    void givenRateLimitedCall_whenReleased_thenLimitBacksOffMultiplicatively() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 2, 50);
+
+        limiter.acquire().join().release(HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "", null, null, null));
+
+        assertEquals(9, limiter.limit());
+    }
+
+    @Test
+    void givenOrdinaryClientError_whenReleased_thenLimitIsUnchanged() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 2, 50);
+
+        limiter.acquire().join().release(HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "", null, null, null));
+
+        assertEquals(10, limiter.limit());
+    }
+
+    @Test
+    void givenRepeatedOverload_whenReleased_thenLimitStopsAtMinimum() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 2, 50);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire().join().release(new CompletionException(new HttpTimeoutException("slow")));
+        }
+
+        assertEquals(2, limiter.limit());
+    }
+
+    @Test
+    void givenLimitReached_whenPermitReleased_thenQueuedCallerIsGranted() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 2, 50);
+        List<AdaptiveConcurrencyLimiter.Permit> permits = acquire(limiter, 2);
+
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> queued = limiter.acquire();
+        assertFalse(queued.isDone());
+        assertEquals(1, limiter.queued());
+
+        permits.get(0).release(null);
+
+        assertTrue(queued.isDone());
+        assertEquals(0, limiter.queued());
+    }
+
+    @Test
+    void givenQueueFull_whenAcquire_thenShedsImmediately() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 2, 1);
+        acquire(limiter, 2);
+        limiter.acquire();
+
+        CompletionException ex = assertThrows(CompletionException.class, () -> limiter.acquire().join());
+
+        assertInstanceOf(UpstreamOverloadedException.class, ex.getCause());
+        assertEquals(1.0, meterRegistry.get("groq.limiter.rejected").counter().count());
+    }
+
+    @Test
+    void givenNoSlotFreedInTime_whenWaiting_thenFailsWithOverload() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 2, 2, 64, 0.9, 20_000, 10, 50, meterRegistry);
+        List<AdaptiveConcurrencyLimiter.Permit> permits = acquire(limiter, 2);
+
+        CompletionException ex = assertThrows(CompletionException.class, () -> limiter.acquire().join());
+        assertInstanceOf(UpstreamOverloadedException.class, ex.getCause());
+        assertEquals(0, limiter.queued());
+
+        // the slot freed later is not lost to the timed-out waiter
+        permits.get(0).release(null);
+        assertEquals(1, limiter.inFlight());
+    }
+
+    @Test
+    void givenSlowCall_whenReleased_thenLimitBacksOff() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 10, 2, 64, 0.9, 10, 50, 5_000, meterRegistry);
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire().join();
+
+        Thread.sleep(30);
+        permit.release(null);
+
+        assertEquals(9, limiter.limit());
+    }
+
+    @Test
+    void givenLongStreamWithQuickFirstToken_whenReleased_thenNotCountedAsSlow() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 10, 2, 64, 0.9, 10, 50, 5_000, meterRegistry);
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire().join();
+
+        permit.firstToken();
+        Thread.sleep(30);
+        permit.firstToken();
+        permit.release(null);
+
+        assertEquals(10, limiter.limit());
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int initialLimit, int minLimit, int maxQueue) {
+        return new AdaptiveConcurrencyLimiter(true, initialLimit, minLimit, 64, 0.9, 20_000, maxQueue, 5_000, meterRegistry);
+    }
+
+    private static List<AdaptiveConcurrencyLimiter.Permit> acquire(AdaptiveConcurrencyLimiter limiter, int count) {
+        List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            CompletableFuture<AdaptiveConcurrencyLimiter.Permit> permit = limiter.acquire();
+            assertTrue(permit.isDone());
+            permits.add(permit.join());
+        }
+        return permits;
+    }
+}
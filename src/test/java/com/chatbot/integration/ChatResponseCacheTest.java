@@ -0,0 +1,74 @@
+package com.chatbot.integration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatResponseCacheTest {
+
+    private static final String MODEL = "mock-model";
+    private static final double TEMPERATURE = 0.7;
+
+    private final AtomicLong nanos = new AtomicLong();
+    private SimpleMeterRegistry meterRegistry;
+    private ChatResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new ChatResponseCache(true, 2, Duration.ofMinutes(5), meterRegistry, nanos::get, Runnable::run);
+    }
+
+    @Test
+    void givenStoredReply_whenPromptDiffersOnlyInCaseAndSpacing_thenHits() {
+        cache.put(key("Hello   World"), "reply");
+
+        assertEquals(Optional.of("reply"), cache.get(key("  hello world ")));
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "groq.responses").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void givenStoredReply_whenModelOrTemperatureDiffers_thenMisses() {
+        cache.put(key("hi"), "reply");
+
+        assertTrue(cache.get(ChatResponseCache.Key.of("hi", "other-model", TEMPERATURE)).isEmpty());
+        assertTrue(cache.get(ChatResponseCache.Key.of("hi", MODEL, 0.2)).isEmpty());
+    }
+
+    @Test
+    void givenTtlElapsed_whenGet_thenMisses() {
+        cache.put(key("hi"), "reply");
+
+        nanos.addAndGet(Duration.ofMinutes(6).toNanos());
+
+        assertTrue(cache.get(key("hi")).isEmpty());
+    }
+
+    @Test
+    void givenMaxSizeExceeded_whenPut_thenEvictsAndCountsEviction() {
+        cache.put(key("one"), "1");
+        cache.put(key("two"), "2");
+        cache.put(key("three"), "3");
+
+        assertEquals(2, cache.size());
+        assertEquals(1.0, meterRegistry.get("cache.evictions").tag("cache", "groq.responses").functionCounter().count());
+    }
+
+    @Test
+    void givenDisabledCache_whenPutThenGet_thenAlwaysMisses() {
+        ChatResponseCache disabled = new ChatResponseCache(false, 10, Duration.ofMinutes(5), new SimpleMeterRegistry());
+        disabled.put(key("hi"), "reply");
+
+        assertTrue(disabled.get(key("hi")).isEmpty());
+    }
+
+    private static ChatResponseCache.Key key(String prompt) {
+        return ChatResponseCache.Key.of(prompt, MODEL, TEMPERATURE);
+    }
+}
@@ -0,0 +1,240 @@
+package com.chatbot.integration;
+
+import com.chatbot.common.Constants;
+import com.chatbot.config.AsyncConfig;
+import com.chatbot.exception.QuotaExceededException;
+import com.chatbot.exception.UpstreamException;
+import com.chatbot.exception.UpstreamOverloadedException;
+import com.chatbot.security.TokenQuota;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.client.RestClientTest;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+@RestClientTest(value = ChatbotService.class, properties = "app.groq.client-mode=blocking")
+@Import({AsyncConfig.class, ChatResponseCache.class, RequestCoalescer.class, AdaptiveConcurrencyLimiter.class, UpstreamRouter.class,
+        UpstreamCircuitBreaker.class, UpstreamResilience.class, SimpleMeterRegistry.class})
+class ChatbotServiceTest {
+
+    @Autowired
+    private ChatbotService chatbotService;
+    @Autowired
+    private MockRestServiceServer server;
+
+    private static final String GROQ_URL = "https://api.groq.com/openai/v1/chat/completions";
+
+    @Test
+    void givenCompletion_whenAsk_thenReturnsFirstChoiceContent() {
+        server.expect(requestTo(GROQ_URL))
+                .andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.stream").value(false))
+                .andExpect(jsonPath("$.model").value("allam-2-7b"))
+                .andRespond(withSuccess("""
+                        {"choices":[{"index":0,"message":{"role":"assistant","content":"Hello!"}}]}
+                        """, MediaType.APPLICATION_JSON));
+
+        assertEquals("Hello!", chatbotService.askAsync(List.of(userTurn("Hi")), false, TokenQuota.Reservation.NONE).join());
+        server.verify();
+    }
+
+    @Test
+    void givenConversation_whenAskAsync_thenSendsAllTurnsInOrder() {
+        server.expect(requestTo(GROQ_URL))
+                .andExpect(jsonPath("$.messages.length()").value(3))
+                .andExpect(jsonPath("$.messages[0].content").value("My name is Sam"))
+                .andExpect(jsonPath("$.messages[1].role").value("assistant"))
+                .andExpect(jsonPath("$.messages[2].content").value("What is my name?"))
+                .andRespond(withSuccess("""
+                        {"choices":[{"index":0,"message":{"role":"assistant","content":"Sam."}}]}
+                        """, MediaType.APPLICATION_JSON));
+
+        List<ChatTurn> conversation = List.of(
+                userTurn("My name is Sam"),
+                new ChatTurn(Constants.ASSISTANT_ROLE, "Nice to meet you, Sam!"),
+                userTurn("What is my name?"));
+
+        assertEquals("Sam.", chatbotService.askAsync(conversation, false, TokenQuota.Reservation.NONE).join());
+        server.verify();
+    }
+
+    @Test
+    void givenCachedReply_whenAskAgainWithDifferentSpacing_thenAnswersWithoutUpstreamCall() {
+        server.expect(requestTo(GROQ_URL))
+                .andRespond(withSuccess("""
+                        {"choices":[{"index":0,"message":{"role":"assistant","content":"Cached!"}}]}
+                        """, MediaType.APPLICATION_JSON));
+
+        assertEquals("Cached!", chatbotService.askAsync(List.of(userTurn("What is  Groq?")), false, TokenQuota.Reservation.NONE).join());
+        assertEquals("Cached!", chatbotService.askAsync(List.of(userTurn("  what is groq? ")), false, TokenQuota.Reservation.NONE).join());
+        server.verify();
+    }
+
+    @Test
+    void givenCachedReply_whenBypassCache_thenCallsUpstreamAgain() {
+        server.expect(ExpectedCount.twice(), requestTo(GROQ_URL))
+                .andRespond(withSuccess("""
+                        {"choices":[{"index":0,"message":{"role":"assistant","content":"Fresh!"}}]}
+                        """, MediaType.APPLICATION_JSON));
+
+        chatbotService.askAsync(List.of(userTurn("regenerate me")), false, TokenQuota.Reservation.NONE).join();
+        assertEquals("Fresh!", chatbotService.askAsync(List.of(userTurn("regenerate me")), true, TokenQuota.Reservation.NONE).join());
+        server.verify();
+    }
+
+    @Test
+    void givenUsageInResponse_whenAskAsyncWithQuota_thenSettlesReportedTokensAndReleasesOnCacheHit() {
+        server.expect(requestTo(GROQ_URL))
+                .andRespond(withSuccess("""
+                        {"choices":[{"index":0,"message":{"role":"assistant","content":"Costly."}}],
+                         "usage":{"prompt_tokens":70,"completion_tokens":20,"total_tokens":90}}
+                        """, MediaType.APPLICATION_JSON));
+        TokenQuota quota = new TokenQuota(true, 1000, 100, 10, new SimpleMeterRegistry());
+
+        chatbotService.askAsync(List.of(userTurn("expensive")), false, quota.reserve("s1", 10)).join();
+        // a cache hit gives its estimate back instead of being charged
+        chatbotService.askAsync(List.of(userTurn("expensive")), false, quota.reserve("s1", 5)).join();
+
+        assertDoesNotThrow(() -> quota.reserve("s1", 10));
+        assertThrows(QuotaExceededException.class, () -> quota.reserve("s1", 1));
+        server.verify();
+    }
+
+    @Test
+    void givenEventStream_whenStreamAsk_thenForwardsEachDeltaAndReturnsFullReply() {
+        String events = """
+                data: {"choices":[{"index":0,"delta":{"role":"assistant"}}]}
+
+                data: {"choices":[{"index":0,"delta":{"content":"Hel"}}]}
+
+                data: {"choices":[{"index":0,"delta":{"content":"lo!"}}]}
+
+                data: [DONE]
+
+                """;
+        server.expect(requestTo(GROQ_URL))
+                .andExpect(jsonPath("$.stream").value(true))
+                .andRespond(withSuccess(events, MediaType.TEXT_EVENT_STREAM));
+
+        List<String> tokens = new ArrayList<>();
+        String reply = chatbotService.streamAsk(List.of(userTurn("Stream to me")), true, TokenQuota.Reservation.NONE, tokens::add);
+
+        assertEquals(List.of("Hel", "lo!"), tokens);
+        assertEquals("Hello!", reply);
+        server.verify();
+    }
+
+    @Test
+    void givenAsyncMode_whenAskAsync_thenCompletesFromNonBlockingClient() throws Exception {
+        HttpServer upstream = startUpstream(200, """
+                {"choices":[{"index":0,"message":{"role":"assistant","content":"Async hello!"}}]}
+                """);
+        try {
+            ChatbotService asyncService = asyncServiceFor(upstream);
+
+            assertEquals("Async hello!", asyncService.askAsync(List.of(userTurn("Hi")), false, TokenQuota.Reservation.NONE).get());
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    @Test
+    void givenAsyncModeAndRateLimited_whenAskAsync_thenRetriesThenFailsAsOverloaded() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        HttpServer upstream = startUpstream(429, "{\"error\":{\"message\":\"rate limited\"}}", calls);
+        try {
+            ChatbotService asyncService = asyncServiceFor(upstream);
+
+            CompletionException ex = assertThrows(CompletionException.class,
+                    () -> asyncService.askAsync(List.of(userTurn("Hi")), false, TokenQuota.Reservation.NONE).join());
+            UpstreamOverloadedException overloaded = assertInstanceOf(UpstreamOverloadedException.class, ex.getCause());
+            assertInstanceOf(HttpClientErrorException.TooManyRequests.class, overloaded.getCause());
+            assertEquals(3, calls.get());
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    @Test
+    void givenAsyncModeAndBadRequest_whenAskAsync_thenFailsAsBadGatewayWithoutRetry() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        HttpServer upstream = startUpstream(400, "{\"error\":{\"message\":\"bad\"}}", calls);
+        try {
+            ChatbotService asyncService = asyncServiceFor(upstream);
+
+            CompletionException ex = assertThrows(CompletionException.class,
+                    () -> asyncService.askAsync(List.of(userTurn("Hi")), false, TokenQuota.Reservation.NONE).join());
+            UpstreamException upstreamError = assertInstanceOf(UpstreamException.class, ex.getCause());
+            assertEquals(HttpStatus.BAD_GATEWAY, upstreamError.getStatus());
+            assertEquals(1, calls.get());
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    private static ChatTurn userTurn(String content) {
+        return new ChatTurn(Constants.USER_ROLE, content);
+    }
+
+    private static UpstreamResilience resilience() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        UpstreamCircuitBreaker circuitBreaker = new UpstreamCircuitBreaker(true, 20, 10, 50, 30_000, 2, meterRegistry);
+        return new UpstreamResilience(circuitBreaker, 3, 10, 50, 0.1, 10, false, 1000, meterRegistry);
+    }
+
+    private static UpstreamRouter routerFor(String url) {
+        return new UpstreamRouter(List.of(new UpstreamRouter.TargetProperties("test", url, "test-key", "allam-2-7b", false)),
+                UpstreamRouter.Strategy.EWMA, 3, 30_000, 8, false, 0, new SimpleMeterRegistry());
+    }
+
+    private ChatbotService asyncServiceFor(HttpServer upstream) {
+        ChatResponseCache noCache = new ChatResponseCache(false, 0, Duration.ZERO, new SimpleMeterRegistry());
+        ChatbotService asyncService = new ChatbotService(new RestTemplateBuilder(), new ObjectMapper(),
+                Executors.newSingleThreadExecutor(), noCache, new RequestCoalescer(new SimpleMeterRegistry()),
+                new AdaptiveConcurrencyLimiter(false, 1, 1, 1, 1, 0, 0, 0, new SimpleMeterRegistry()),
+                routerFor("http://localhost:" + upstream.getAddress().getPort() + "/chat"), resilience(), 1000, 5000);
+        ReflectionTestUtils.setField(asyncService, "clientMode", ChatbotService.ClientMode.ASYNC);
+        return asyncService;
+    }
+
+    private HttpServer startUpstream(int status, String body) throws Exception {
+        return startUpstream(status, body, new AtomicInteger());
+    }
+
+    private HttpServer startUpstream(int status, String body, AtomicInteger calls) throws Exception {
+        HttpServer upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext("/chat", exchange -> {
+            calls.incrementAndGet();
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        upstream.start();
+        return upstream;
+    }
+}
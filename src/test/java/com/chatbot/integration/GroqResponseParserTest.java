@@ -0,0 +1,65 @@
+package com.chatbot.integration;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroqResponseParserTest {
+
+    private final GroqResponseParser parser = new GroqResponseParser(new JsonFactory());
+
+    @Test
+    void givenCompletion_whenParsed_thenKeepsFirstChoiceFinishReasonAndUsage() throws Exception {
+        GroqReply reply = parser.parseCompletion(bytes("""
+                {"id":"chatcmpl-1","object":"chat.completion","model":"allam-2-7b",
+                 "choices":[{"index":0,"message":{"role":"assistant","content":"Hi there","tool_calls":[{"id":"t"}]},
+                             "logprobs":null,"finish_reason":"length"},
+                            {"index":1,"message":{"role":"assistant","content":"ignored"},"finish_reason":"stop"}],
+                 "usage":{"queue_time":0.01,"prompt_tokens":12,"completion_tokens":30,"total_tokens":42},
+                 "system_fingerprint":"fp","x_groq":{"id":"req_1"}}
+                """));
+
+        assertEquals("Hi there", reply.content());
+        assertEquals("length", reply.finishReason());
+        assertTrue(reply.truncated());
+        assertEquals(new GroqUsage(12, 30, 42), reply.usage());
+    }
+
+    @Test
+    void givenNoChoicesOrUsage_whenParsed_thenReturnsEmptyReply() throws Exception {
+        GroqReply reply = parser.parseCompletion(bytes("{\"choices\":[],\"usage\":null}"));
+
+        assertNull(reply.content());
+        assertNull(reply.finishReason());
+        assertEquals(GroqUsage.NONE, reply.usage());
+        assertEquals(GroqReply.EMPTY, parser.parseCompletion(new byte[0]));
+    }
+
+    @Test
+    void givenStreamChunks_whenParsed_thenReadsDeltaAndPrefersGroqUsage() throws Exception {
+        assertEquals("Hel", parser.parseChunk("{\"choices\":[{\"index\":0,\"delta\":{\"content\":\"Hel\"},\"finish_reason\":null}]}").content());
+
+        GroqReply last = parser.parseChunk("""
+                {"choices":[{"index":0,"delta":{},"finish_reason":"stop"}],
+                 "usage":{"total_tokens":1},
+                 "x_groq":{"id":"req_1","usage":{"prompt_tokens":5,"completion_tokens":7,"total_tokens":12}}}
+                """);
+
+        assertNull(last.content());
+        assertEquals("stop", last.finishReason());
+        assertEquals(12, last.usage().totalTokens());
+    }
+
+    @Test
+    void givenNonObjectBody_whenParsed_thenFails() {
+        assertThrows(JsonParseException.class, () -> parser.parseCompletion(bytes("[1,2]")));
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,87 @@
+package com.chatbot.integration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestCoalescerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private RequestCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new RequestCoalescer(meterRegistry);
+    }
+
+    @Test
+    void givenIdenticalKeysInFlight_whenCoalesce_thenOnlyOneUpstreamCall() {
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        List<CompletableFuture<String>> replies = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            replies.add(coalescer.coalesce("same-key", () -> {
+                upstreamCalls.incrementAndGet();
+                return upstream;
+            }));
+        }
+        upstream.complete("shared reply");
+
+        assertEquals(1, upstreamCalls.get());
+        replies.forEach(reply -> assertEquals("shared reply", reply.join()));
+        assertEquals(9.0, meterRegistry.get("groq.requests.coalesced").counter().count());
+        assertEquals(0, coalescer.inFlightCount());
+    }
+
+    @Test
+    void givenDifferentKeys_whenCoalesce_thenEachCallsUpstream() {
+        AtomicInteger upstreamCalls = new AtomicInteger();
+
+        coalescer.coalesce("a", () -> {
+            upstreamCalls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        coalescer.coalesce("b", () -> {
+            upstreamCalls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+
+        assertEquals(2, upstreamCalls.get());
+        assertEquals(2, coalescer.inFlightCount());
+    }
+
+    @Test
+    void givenFailedCall_whenCoalesce_thenFollowersFailAndNextCallGoesUpstream() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> leader = coalescer.coalesce("key", () -> upstream);
+        CompletableFuture<String> follower = coalescer.coalesce("key", CompletableFuture::new);
+
+        upstream.completeExceptionally(new IllegalStateException("boom"));
+
+        assertThrows(CompletionException.class, leader::join);
+        assertThrows(CompletionException.class, follower::join);
+        assertEquals("retried", coalescer.coalesce("key", () -> CompletableFuture.completedFuture("retried")).join());
+    }
+
+    @Test
+    void givenFollowerCancels_whenLeaderCompletes_thenOtherCallersStillGetReply() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> leader = coalescer.coalesce("key", () -> upstream);
+        CompletableFuture<String> follower = coalescer.coalesce("key", CompletableFuture::new);
+
+        follower.cancel(true);
+        upstream.complete("reply");
+
+        assertEquals("reply", leader.join());
+    }
+}
@@ -0,0 +1,89 @@
+package com.chatbot.integration;
+
+import com.chatbot.exception.UpstreamOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpstreamCircuitBreakerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong nanos = new AtomicLong();
+    private final UpstreamCircuitBreaker breaker =
+            new UpstreamCircuitBreaker(true, 10, 4, 50, 30_000, 2, meterRegistry, nanos::get);
+
+    @Test
+    void givenTooFewCalls_whenAllFail_thenStaysClosed() {
+        fail(3);
+
+        assertEquals(UpstreamCircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void givenFailureRateAboveThreshold_whenRecorded_thenOpensAndFailsFast() {
+        succeed(2);
+        fail(2);
+
+        assertEquals(UpstreamCircuitBreaker.State.OPEN, breaker.state());
+        UpstreamOverloadedException ex = assertThrows(UpstreamOverloadedException.class, breaker::acquire);
+        assertEquals(Duration.ofSeconds(30), ex.getRetryAfter());
+        assertEquals(1.0, meterRegistry.get("groq.circuit.state").gauge().value());
+        assertEquals(1.0, meterRegistry.get("groq.circuit.rejected").counter().count());
+    }
+
+    @Test
+    void givenOpenCircuit_whenTrialCallsSucceed_thenCloses() {
+        fail(4);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        breaker.acquire();
+        breaker.acquire();
+        assertEquals(UpstreamCircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertThrows(UpstreamOverloadedException.class, breaker::acquire);
+
+        breaker.onSuccess();
+        breaker.onSuccess();
+        assertEquals(UpstreamCircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void givenHalfOpenCircuit_whenTrialFails_thenOpensAgain() {
+        fail(4);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(31));
+
+        breaker.acquire();
+        breaker.onFailure();
+
+        assertEquals(UpstreamCircuitBreaker.State.OPEN, breaker.state());
+        assertThrows(UpstreamOverloadedException.class, breaker::acquire);
+    }
+
+    @Test
+    void givenOldFailures_whenWindowRollsOver_thenOnlyRecentOutcomesCount() {
+        succeed(7);
+        fail(3);
+        succeed(10);
+        fail(4);
+
+        assertEquals(UpstreamCircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.acquire();
+            breaker.onFailure();
+        }
+    }
+
+    private void succeed(int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.acquire();
+            breaker.onSuccess();
+        }
+    }
+}
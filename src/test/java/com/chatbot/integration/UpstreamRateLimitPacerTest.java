@@ -0,0 +1,111 @@
+package com.chatbot.integration;
+
+import com.chatbot.exception.UpstreamOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpstreamRateLimitPacerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong nanos = new AtomicLong(1_000_000_000L);
+
+    @Test
+    void givenGoStyleDurations_whenParsed_thenConvertsAllUnits() {
+        assertEquals(Duration.ofMillis(179_560), UpstreamRateLimitPacer.parseDuration("2m59.56s"));
+        assertEquals(Duration.ofMillis(7_660), UpstreamRateLimitPacer.parseDuration("7.66s"));
+        assertEquals(Duration.ofMillis(120), UpstreamRateLimitPacer.parseDuration("120ms"));
+        assertEquals(Duration.ofMinutes(61), UpstreamRateLimitPacer.parseDuration("1h1m"));
+        assertNull(UpstreamRateLimitPacer.parseDuration("soon"));
+    }
+
+    @Test
+    void givenNoHeadersSeen_whenAdmit_thenPassesImmediately() {
+        UpstreamRateLimitPacer pacer = pacer(5_000);
+
+        assertTrue(pacer.admit(1_000_000).isDone());
+    }
+
+    @Test
+    void givenTokensRunningOut_whenAdmit_thenWaitsForTokenReset() {
+        UpstreamRateLimitPacer pacer = pacer(5_000);
+        pacer.observe(headers("100", "50", "7.66s"));
+
+        assertEquals(0, pacer.tryReserve(40));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(7_660), pacer.tryReserve(40));
+    }
+
+    @Test
+    void givenRequestsExhausted_whenResetPassed_thenWindowIsFullAgain() {
+        UpstreamRateLimitPacer pacer = pacer(5_000);
+        HttpHeaders headers = headers("0", "5000", "1s");
+        headers.set(UpstreamRateLimitPacer.LIMIT_REQUESTS, "2");
+        headers.set(UpstreamRateLimitPacer.RESET_REQUESTS, "2s");
+        pacer.observe(headers);
+
+        assertEquals(TimeUnit.SECONDS.toNanos(2), pacer.tryReserve(10));
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertEquals(0, pacer.tryReserve(10));
+        assertEquals(0, pacer.tryReserve(10));
+        // counted down locally from the window's limit until Groq answers again
+        assertEquals(0.0, meterRegistry.get("groq.ratelimit.remaining").tag("kind", "requests").gauge().value());
+    }
+
+    @Test
+    void givenResetBeyondDeadline_whenAdmit_thenFailsFastWithRetryAfter() {
+        UpstreamRateLimitPacer pacer = pacer(1_000);
+        pacer.observe(headers("100", "0", "30s"));
+
+        CompletionException ex = assertThrows(CompletionException.class, () -> pacer.admit(10).join());
+
+        UpstreamOverloadedException overloaded = assertInstanceOf(UpstreamOverloadedException.class, ex.getCause());
+        assertEquals(Duration.ofSeconds(30), overloaded.getRetryAfter());
+        assertEquals(1.0, meterRegistry.get("groq.pacing.rejected").counter().count());
+    }
+
+    @Test
+    void givenRetryAfterOn429_whenAdmit_thenHoldsEveryCallBack() {
+        UpstreamRateLimitPacer pacer = pacer(5_000);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "3");
+        pacer.observe(headers);
+
+        assertTrue(pacer.throttled());
+        assertEquals(TimeUnit.SECONDS.toNanos(3), pacer.tryReserve(1));
+    }
+
+    @Test
+    void givenShortReset_whenAdmit_thenCompletesAfterWindowResets() {
+        UpstreamRateLimitPacer pacer = new UpstreamRateLimitPacer(true, 2_000, "test", meterRegistry, System::nanoTime);
+        HttpHeaders headers = headers("100", "0", "50ms");
+        headers.set(UpstreamRateLimitPacer.LIMIT_TOKENS, "6000");
+        pacer.observe(headers);
+
+        CompletableFuture<Void> admitted = pacer.admit(10);
+
+        assertFalse(admitted.isDone());
+        assertDoesNotThrow(() -> admitted.get(1, TimeUnit.SECONDS));
+        assertEquals(1.0, meterRegistry.get("groq.pacing.delayed").counter().count());
+    }
+
+    private UpstreamRateLimitPacer pacer(long maxWaitMs) {
+        return new UpstreamRateLimitPacer(true, maxWaitMs, "test", meterRegistry, nanos::get);
+    }
+
+    private static HttpHeaders headers(String remainingRequests, String remainingTokens, String tokensReset) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(UpstreamRateLimitPacer.REMAINING_REQUESTS, remainingRequests);
+        headers.set(UpstreamRateLimitPacer.REMAINING_TOKENS, remainingTokens);
+        headers.set(UpstreamRateLimitPacer.RESET_TOKENS, tokensReset);
+        return headers;
+    }
+}
@@ -0,0 +1,154 @@
+package com.chatbot.integration;
+
+import com.chatbot.exception.UpstreamException;
+import com.chatbot.exception.UpstreamOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpstreamResilienceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void givenTransientServerErrors_whenExecute_thenRetriesUntilSuccess() {
+        UpstreamResilience resilience = resilience(3, 10, false);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String reply = resilience.execute(() -> attempts.incrementAndGet() < 3
+                ? CompletableFuture.<String>failedFuture(serverError(HttpStatus.BAD_GATEWAY))
+                : CompletableFuture.completedFuture("ok")).join();
+
+        assertEquals("ok", reply);
+        assertEquals(3, attempts.get());
+        assertEquals(2.0, meterRegistry.get("groq.retries").tag("outcome", "attempted").counter().count());
+    }
+
+    @Test
+    void givenNonRetryableStatus_whenExecute_thenFailsOnceAsBadGateway() {
+        UpstreamResilience resilience = resilience(3, 10, false);
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletionException ex = assertThrows(CompletionException.class, () -> resilience.execute(() -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.<String>failedFuture(HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "", null, null, null));
+        }).join());
+
+        assertEquals(HttpStatus.BAD_GATEWAY, assertInstanceOf(UpstreamException.class, ex.getCause()).getStatus());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void givenBudgetSpent_whenUpstreamKeepsFailing_thenStopsRetrying() {
+        UpstreamResilience resilience = resilience(5, 2, false);
+        AtomicInteger attempts = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(UpstreamOverloadedException.class, () -> resilience.executeBlocking(() -> {
+                attempts.incrementAndGet();
+                throw serverError(HttpStatus.SERVICE_UNAVAILABLE);
+            }, () -> true));
+        }
+
+        // three calls, but only the two budgeted retries on top of them
+        assertEquals(5, attempts.get());
+        assertTrue(meterRegistry.get("groq.retries").tag("outcome", "budget-exhausted").counter().count() >= 1);
+    }
+
+    @Test
+    void givenOverloadFromGroq_whenRetriesExhausted_thenSurfacesAsServiceUnavailable() {
+        UpstreamResilience resilience = resilience(2, 10, false);
+
+        UpstreamOverloadedException ex = assertThrows(UpstreamOverloadedException.class, () -> resilience.executeBlocking(() -> {
+            throw HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "", null, null, null);
+        }, () -> true));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ex.getStatus());
+    }
+
+    @Test
+    void givenCallerVetoesRetry_whenAttemptFails_thenDoesNotRetry() {
+        UpstreamResilience resilience = resilience(3, 10, false);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(UpstreamException.class, () -> resilience.executeBlocking(() -> {
+            attempts.incrementAndGet();
+            throw serverError(HttpStatus.INTERNAL_SERVER_ERROR);
+        }, () -> false));
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void givenSlowAttempt_whenHedgingEnabled_thenFasterHedgeWins() throws InterruptedException {
+        UpstreamResilience resilience = resilience(1, 10, true);
+        for (int i = 0; i < 20; i++) {
+            resilience.execute(() -> CompletableFuture.completedFuture("warm-up")).join();
+        }
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<String> slow = new CompletableFuture<>();
+
+        String reply = resilience.execute(() -> attempts.incrementAndGet() == 1
+                ? slow
+                : CompletableFuture.supplyAsync(() -> "hedge")).orTimeout(5, TimeUnit.SECONDS).join();
+
+        assertEquals("hedge", reply);
+        // the winner is counted right after it completes the reply, on the hedge's thread
+        Counter won = meterRegistry.get("groq.hedges").tag("outcome", "won").counter();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (won.count() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1.0, won.count());
+    }
+
+    @Test
+    void givenOpenCircuit_whenExecute_thenFailsFastWithoutCallingUpstream() {
+        UpstreamCircuitBreaker breaker = new UpstreamCircuitBreaker(true, 4, 2, 50, 30_000, 1, meterRegistry);
+        UpstreamResilience resilience = new UpstreamResilience(breaker, 1, 1, 1, 0.1, 10, false, 10, meterRegistry);
+        for (int i = 0; i < 2; i++) {
+            assertThrows(UpstreamException.class, () -> resilience.executeBlocking(() -> {
+                throw serverError(HttpStatus.BAD_GATEWAY);
+            }, () -> true));
+        }
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletionException ex = assertThrows(CompletionException.class, () -> resilience.execute(() -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture("never");
+        }).join());
+
+        assertInstanceOf(UpstreamOverloadedException.class, ex.getCause());
+        assertEquals(0, attempts.get());
+    }
+
+    @Test
+    void givenTransportOrParseFailure_whenIsRetryable_thenRetriesOnlyTransport() {
+        assertTrue(UpstreamResilience.isRetryable(new HttpTimeoutException("timeout")));
+        assertTrue(UpstreamResilience.isRetryable(new IOException("reset")));
+        assertFalse(UpstreamResilience.isRetryable(new UncheckedIOException(new IOException("bad json"))));
+        assertFalse(UpstreamResilience.isRetryable(HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "", null, null, null)));
+    }
+
+    private UpstreamResilience resilience(int maxAttempts, int budgetBurst, boolean hedging) {
+        UpstreamCircuitBreaker breaker = new UpstreamCircuitBreaker(false, 20, 10, 50, 30_000, 2, meterRegistry);
+        return new UpstreamResilience(breaker, maxAttempts, 1, 5, 0.0, budgetBurst, hedging, 10, meterRegistry);
+    }
+
+    private static HttpServerErrorException serverError(HttpStatus status) {
+        return HttpServerErrorException.create(status, "", null, null, null);
+    }
+}
@@ -0,0 +1,145 @@
+package com.chatbot.integration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpstreamRouterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    void givenLeastOutstanding_whenCallsOverlap_thenSpreadsOverTargets() {
+        UpstreamRouter router = router(UpstreamRouter.Strategy.LEAST_OUTSTANDING, 8, target("a"), target("b"));
+
+        UpstreamRouter.Lease first = router.acquire();
+        UpstreamRouter.Lease second = router.acquire();
+
+        assertNotEquals(first.target().name(), second.target().name());
+    }
+
+    @Test
+    void givenEwma_whenOneTargetIsSlower_thenPrefersTheFasterOne() {
+        UpstreamRouter router = router(UpstreamRouter.Strategy.EWMA, 8, target("slow"), target("fast"));
+        sample(router, "slow", 900);
+        sample(router, "fast", 100);
+
+        for (int i = 0; i < 3; i++) {
+            UpstreamRouter.Lease lease = router.acquire();
+            assertEquals("fast", lease.target().name());
+            lease.release(null);
+        }
+        assertEquals(100.0, meterRegistry.get("groq.upstream.latency").tag("target", "fast").gauge().value());
+    }
+
+    @Test
+    void givenStream_whenReleased_thenSamplesTimeToFirstToken() {
+        UpstreamRouter router = router(UpstreamRouter.Strategy.EWMA, 8, target("a"));
+
+        UpstreamRouter.Lease lease = router.acquire();
+        lease.started();
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        lease.firstToken();
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        lease.firstToken();
+        lease.release(null);
+
+        assertEquals(200.0, meterRegistry.get("groq.upstream.latency").tag("target", "a").gauge().value());
+    }
+
+    @Test
+    void givenRepeatedFailures_whenThresholdReached_thenEjectsUntilEjectionEnds() {
+        UpstreamRouter router = router(UpstreamRouter.Strategy.LEAST_OUTSTANDING, 8, target("flaky"), target("steady"));
+        UpstreamTarget flaky = router.targets().get(0);
+
+        for (int i = 0; i < 3; i++) {
+            fail(router, flaky, HttpServerErrorException.create(HttpStatus.BAD_GATEWAY, "", null, null, null));
+        }
+
+        assertTrue(router.ejected(flaky));
+        assertEquals("steady", router.acquire().target().name());
+        assertEquals(1.0, meterRegistry.get("groq.upstream.ejections").tag("target", "flaky").counter().count());
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        assertFalse(router.ejected(flaky));
+        assertEquals("flaky", router.acquire().target().name());
+    }
+
+    @Test
+    void givenClientErrors_whenRecorded_thenTargetStaysInRotation() {
+        UpstreamRouter router = router(UpstreamRouter.Strategy.LEAST_OUTSTANDING, 8, target("a"));
+        UpstreamTarget target = router.targets().get(0);
+
+        for (int i = 0; i < 5; i++) {
+            fail(router, target, HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "", null, null, null));
+        }
+
+        assertFalse(router.ejected(target));
+    }
+
+    @Test
+    void givenBusyPrimary_whenFallbackConfigured_thenRoutesOverflowToFallbackModel() {
+        UpstreamRouter router = router(UpstreamRouter.Strategy.LEAST_OUTSTANDING, 2,
+                target("primary"), new UpstreamRouter.TargetProperties("cheap", "http://cheap", "key", "small-model", true));
+
+        assertEquals("primary", router.acquire().target().name());
+        assertEquals("primary", router.acquire().target().name());
+        UpstreamRouter.Lease overflow = router.acquire();
+
+        assertTrue(overflow.target().fallback());
+        assertEquals("small-model", overflow.target().model());
+        assertEquals("model-primary", router.defaultModel());
+        assertEquals(1.0, meterRegistry.get("groq.upstream.fallbacks").counter().count());
+    }
+
+    @Test
+    void givenThrottledTarget_whenAnotherHasRoom_thenSkipsTheThrottledOne() {
+        UpstreamRouter router = router(UpstreamRouter.Strategy.LEAST_OUTSTANDING, 8, target("limited"), target("free"));
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "10");
+        router.targets().get(0).pacer().observe(headers);
+
+        assertEquals("free", router.acquire().target().name());
+        assertEquals("free", router.acquire().target().name());
+    }
+
+    private UpstreamRouter router(UpstreamRouter.Strategy strategy, int fallbackOutstanding,
+                                  UpstreamRouter.TargetProperties... targets) {
+        return new UpstreamRouter(List.of(targets), strategy, 3, 30_000, fallbackOutstanding, true, 5_000,
+                meterRegistry, nanos::get);
+    }
+
+    private static UpstreamRouter.TargetProperties target(String name) {
+        return new UpstreamRouter.TargetProperties(name, "http://" + name, "key-" + name, "model-" + name, false);
+    }
+
+    private void sample(UpstreamRouter router, String name, long latencyMillis) {
+        UpstreamRouter.Lease lease;
+        do {
+            lease = router.acquire();
+            if (!lease.target().name().equals(name)) {
+                lease.release(null);
+            }
+        } while (!lease.target().name().equals(name));
+        lease.started();
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        lease.release(null);
+    }
+
+    private void fail(UpstreamRouter router, UpstreamTarget target, RuntimeException failure) {
+        UpstreamRouter.Lease lease = router.acquire();
+        assertSame(target, lease.target());
+        lease.started();
+        lease.release(failure);
+    }
+}
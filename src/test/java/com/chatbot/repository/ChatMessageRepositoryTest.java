@@ -0,0 +1,134 @@
+package com.chatbot.repository;
+
+import com.chatbot.models.ChatMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class ChatMessageRepositoryTest {
+
+    @Autowired
+    private ChatMessageRepository messageRepo;
+
+    private static final String MOCK_SESSION_ID = "mock-session-id";
+    private static final LocalDateTime BASE_TIME = LocalDateTime.of(2025, 1, 1, 12, 0);
+
+    private final List<ChatMessage> saved = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // two messages share a timestamp, so the id tie-breaker is exercised
+        for (int i = 0; i < 5; i++) {
+            saved.add(messageRepo.save(message("m" + i, BASE_TIME.plusSeconds(Math.min(i, 3)))));
+        }
+        messageRepo.save(messageInOtherSession());
+    }
+
+    @Test
+    void givenSession_whenFindFirstSlice_thenReturnsOldestWithoutCounting() {
+        Slice<ChatMessage> slice = messageRepo.findFirstSlice(MOCK_SESSION_ID, PageRequest.of(0, 2));
+
+        assertEquals(List.of("m0", "m1"), texts(slice));
+        assertTrue(slice.hasNext());
+    }
+
+    @Test
+    void givenCursorOnTiedTimestamp_whenFindSliceAfter_thenContinuesById() {
+        ChatMessage cursor = saved.get(3);
+
+        Slice<ChatMessage> slice = messageRepo.findSliceAfter(MOCK_SESSION_ID, cursor.getCreatedAt(), cursor.getId(), PageRequest.of(0, 2));
+
+        assertEquals(List.of("m4"), texts(slice));
+        assertFalse(slice.hasNext());
+    }
+
+    @Test
+    void givenCursor_whenFindSliceBefore_thenReturnsNewestFirst() {
+        ChatMessage cursor = saved.get(4);
+
+        Slice<ChatMessage> slice = messageRepo.findSliceBefore(MOCK_SESSION_ID, cursor.getCreatedAt(), cursor.getId(), PageRequest.of(0, 2));
+
+        assertEquals(List.of("m3", "m2"), texts(slice));
+        assertTrue(slice.hasNext());
+    }
+
+    @Test
+    void givenManyMessages_whenBulkInsert_thenStoresAllAcrossBatches() {
+        List<ChatMessage> imported = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            imported.add(message("import" + i, BASE_TIME.plusMinutes(1).plusSeconds(i)));
+        }
+
+        int count = messageRepo.bulkInsert(imported);
+
+        assertEquals(2500, count);
+        assertTrue(imported.stream().allMatch(m -> m.getId() != null));
+        assertEquals(2505, messageRepo.findBySessionIdOrderByCreatedAtAsc(MOCK_SESSION_ID).size());
+    }
+
+    @Test
+    void givenUnnumberedRows_whenFindLastSeq_thenCountsThemUntilOneIsNumbered() {
+        assertEquals(5, messageRepo.findLastSeq(MOCK_SESSION_ID));
+        assertEquals(0, messageRepo.findLastSeq("unknown-session-id"));
+
+        ChatMessage numbered = message("m5", BASE_TIME.plusSeconds(5));
+        numbered.setSeq(6L);
+        messageRepo.save(numbered);
+
+        assertEquals(6, messageRepo.findLastSeq(MOCK_SESSION_ID));
+    }
+
+    @Test
+    void givenSession_whenHasMoreMessagesThan_thenComparesWithoutCounting() {
+        assertTrue(messageRepo.hasMoreMessagesThan(MOCK_SESSION_ID, 4));
+        assertFalse(messageRepo.hasMoreMessagesThan(MOCK_SESSION_ID, 5));
+        assertFalse(messageRepo.hasMoreMessagesThan("unknown-session-id", 0));
+    }
+
+    @Test
+    void givenSession_whenDeleteBySessionId_thenRemovesOnlyItsMessages() {
+        int deleted = messageRepo.deleteBySessionId(MOCK_SESSION_ID);
+
+        assertEquals(5, deleted);
+        assertEquals(0, messageRepo.countBySessionId(MOCK_SESSION_ID));
+        assertEquals(1, messageRepo.countBySessionId("other-session-id"));
+    }
+
+    @Test
+    void givenSession_whenDeleteChunkBySessionId_thenRemovesAtMostTheLimit() {
+        assertEquals(2, messageRepo.deleteChunkBySessionId(MOCK_SESSION_ID, 2));
+        assertEquals(2, messageRepo.deleteChunkBySessionId(MOCK_SESSION_ID, 2));
+        assertEquals(1, messageRepo.deleteChunkBySessionId(MOCK_SESSION_ID, 2));
+        assertEquals(0, messageRepo.deleteChunkBySessionId(MOCK_SESSION_ID, 2));
+        assertEquals(1, messageRepo.countBySessionId("other-session-id"));
+    }
+
+    private static List<String> texts(Slice<ChatMessage> slice) {
+        return slice.getContent().stream().map(ChatMessage::getMessage).toList();
+    }
+
+    private static ChatMessage message(String text, LocalDateTime createdAt) {
+        ChatMessage message = new ChatMessage();
+        message.setSessionId(MOCK_SESSION_ID);
+        message.setRole("user");
+        message.setMessage(text);
+        message.setCreatedAt(createdAt);
+        return message;
+    }
+
+    private static ChatMessage messageInOtherSession() {
+        ChatMessage message = message("other", BASE_TIME.plusSeconds(1));
+        message.setSessionId("other-session-id");
+        return message;
+    }
+}
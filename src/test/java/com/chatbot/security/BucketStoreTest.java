@@ -0,0 +1,91 @@
+package com.chatbot.security;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BucketStoreTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    void givenSameClient_whenResolvedTwice_thenSharesBucket() {
+        BucketStore store = store(100, Duration.ofMinutes(1));
+
+        Bucket first = store.resolve("10.0.0.1");
+        first.tryConsume(1);
+
+        assertSame(first, store.resolve("10.0.0.1"));
+        assertNotSame(first, store.resolve("10.0.0.2"));
+    }
+
+    @Test
+    void givenIdleClient_whenRefillWindowPasses_thenBucketIsDropped() {
+        BucketStore store = store(100, Duration.ofMinutes(1));
+        Bucket bucket = store.resolve("10.0.0.1");
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(61));
+
+        assertEquals(0, store.size());
+        assertNotSame(bucket, store.resolve("10.0.0.1"));
+    }
+
+    @Test
+    void givenActiveClient_whenWithinRefillWindow_thenBucketIsKept() {
+        BucketStore store = store(100, Duration.ofMinutes(1));
+        Bucket bucket = store.resolve("10.0.0.1");
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(45));
+        store.resolve("10.0.0.1");
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(45));
+
+        assertSame(bucket, store.resolve("10.0.0.1"));
+    }
+
+    @Test
+    void givenBucketInDebt_whenTouched_thenKeptUntilItsDebtIsRepaid() {
+        BucketStore store = new BucketStore(key -> bucket(), 100,
+                bucket -> bucket.getAvailableTokens() < 0 ? TimeUnit.MINUTES.toNanos(10) : TimeUnit.MINUTES.toNanos(1),
+                nanos::get, Runnable::run);
+        Bucket bucket = store.resolve("10.0.0.1");
+
+        bucket.consumeIgnoringRateLimits(20);
+        store.touch("10.0.0.1");
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(5));
+
+        assertSame(bucket, store.resolve("10.0.0.1"));
+    }
+
+    @Test
+    void givenManyDistinctClients_whenResolved_thenSizeStaysCappedAndEvictionsAreCounted() {
+        BucketStore store = store(1000, Duration.ofHours(1));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        store.bindTo(meterRegistry);
+
+        for (int i = 0; i < 100_000; i++) {
+            store.resolve("10." + (i >> 16) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff));
+        }
+
+        assertTrue(store.size() <= 1000);
+        double evictions = meterRegistry.get("cache.evictions").tag("cache", "rate.limit.buckets").functionCounter().count();
+        assertTrue(evictions >= 99_000);
+    }
+
+    private BucketStore store(long maxBuckets, Duration idleTimeout) {
+        return new BucketStore(key -> bucket(), maxBuckets, idleTimeout, nanos::get, Runnable::run);
+    }
+
+    private static Bucket bucket() {
+        return Bucket.builder()
+                .addLimit(Bandwidth.classic(5, Refill.intervally(5, Duration.ofMinutes(1))))
+                .build();
+    }
+}
@@ -0,0 +1,104 @@
+package com.chatbot.security;
+
+import com.chatbot.config.DistributedRateLimitConfig;
+import io.github.bucket4j.distributed.proxy.RemoteBucketBuilder;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.core.ResolvableType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DistributedRateLimitTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            // what SpringApplication installs, so "batching" and "1s" bind as in the running app
+            .withInitializer(context -> context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance()))
+            .withUserConfiguration(DistributedRateLimitConfig.class)
+            .withBean(DataSource.class, DistributedRateLimitTest::h2);
+
+    @Test
+    void givenTwoReplicas_whenSameClientCallsBoth_thenLimitIsShared() {
+        contextRunner.withPropertyValues("app.rate.mode=distributed", "app.rate.distributed.optimization=none")
+                .run(context -> {
+                    ObjectProvider<RemoteBucketBuilder<String>> buckets = context.getBeanProvider(
+                            ResolvableType.forClassWithGenerics(RemoteBucketBuilder.class, String.class));
+                    RateLimitFilter replicaA = new RateLimitFilter(5, 5, 60, 1000, buckets);
+                    RateLimitFilter replicaB = new RateLimitFilter(5, 5, 60, 1000, buckets);
+
+                    for (int i = 0; i < 3; i++) {
+                        assertThat(call(replicaA, "10.0.0.1")).isEqualTo(200);
+                    }
+                    assertThat(call(replicaB, "10.0.0.1")).isEqualTo(200);
+                    assertThat(call(replicaB, "10.0.0.1")).isEqualTo(200);
+
+                    assertThat(call(replicaA, "10.0.0.1")).isEqualTo(429);
+                    assertThat(call(replicaB, "10.0.0.1")).isEqualTo(429);
+                    assertThat(call(replicaB, "10.0.0.2")).isEqualTo(200);
+                });
+    }
+
+    @Test
+    void givenBatchingOptimization_whenLimitReached_thenStillEnforced() {
+        contextRunner.withPropertyValues("app.rate.mode=distributed")
+                .run(context -> {
+                    ObjectProvider<RemoteBucketBuilder<String>> buckets = context.getBeanProvider(
+                            ResolvableType.forClassWithGenerics(RemoteBucketBuilder.class, String.class));
+                    RateLimitFilter replica = new RateLimitFilter(5, 5, 60, 1000, buckets);
+
+                    for (int i = 0; i < 5; i++) {
+                        assertThat(call(replica, "10.0.0.3")).isEqualTo(200);
+                    }
+                    assertThat(call(replica, "10.0.0.3")).isEqualTo(429);
+                });
+    }
+
+    @Test
+    void givenIdleBucket_whenCleanupRuns_thenOnlyIdleRowIsDeleted() {
+        contextRunner.withPropertyValues("app.rate.mode=distributed", "app.rate.distributed.optimization=none")
+                .run(context -> {
+                    ObjectProvider<RemoteBucketBuilder<String>> buckets = context.getBeanProvider(
+                            ResolvableType.forClassWithGenerics(RemoteBucketBuilder.class, String.class));
+                    RateLimitFilter replica = new RateLimitFilter(5, 5, 60, 1000, buckets);
+                    JdbcTemplate jdbcTemplate = new JdbcTemplate(context.getBean(DataSource.class));
+                    assertThat(call(replica, "10.0.0.4")).isEqualTo(200);
+                    assertThat(call(replica, "10.0.0.5")).isEqualTo(200);
+                    jdbcTemplate.update("UPDATE rate_limit_buckets SET touched_at = ? WHERE id = ?",
+                            LocalDateTime.now().minusMinutes(2), "10.0.0.4");
+
+                    context.getBean(DistributedRateLimitConfig.class).deleteIdleBuckets();
+
+                    assertThat(jdbcTemplate.queryForList("SELECT id FROM rate_limit_buckets", String.class))
+                            .containsExactly("10.0.0.5");
+                });
+    }
+
+    @Test
+    void givenLocalMode_whenContextStarts_thenNoDistributedBuckets() {
+        contextRunner.run(context -> assertThat(context).doesNotHaveBean(RemoteBucketBuilder.class));
+    }
+
+    private static int call(RateLimitFilter filter, String clientIp) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/chat/session");
+        request.setRemoteAddr(clientIp);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response.getStatus();
+    }
+
+    private static DataSource h2() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:ratelimit-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        return dataSource;
+    }
+}
@@ -0,0 +1,96 @@
+package com.chatbot.security;
+
+import com.chatbot.exception.QuotaExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenQuotaTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TokenQuota quota = new TokenQuota(true, 1000, 100, 1000, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void givenSessionBudgetSpent_whenReserve_thenRejectsWithRetryAfterAndRefundsApiKey() {
+        quota.reserve("s1", 80);
+
+        QuotaExceededException ex = assertThrows(QuotaExceededException.class, () -> quota.reserve("s1", 40));
+
+        assertTrue(ex.getRetryAfter().toSeconds() > 0);
+        assertEquals(1.0, meterRegistry.get("chat.quota.rejected").tag("scope", "session").counter().count());
+        // the API key charge of the refused turn was given back: 80 + 900 still fits in 1000
+        assertDoesNotThrow(() -> quota.reserve("s2", 900));
+    }
+
+    @Test
+    void givenUsageAboveEstimate_whenSettle_thenChargesTheDifference() {
+        TokenQuota.Reservation reservation = quota.reserve("s1", 10);
+
+        reservation.settle(95);
+
+        assertThrows(QuotaExceededException.class, () -> quota.reserve("s1", 10));
+    }
+
+    @Test
+    void givenReleasedReservation_whenReserveAgain_thenEstimateWasReturned() {
+        quota.reserve("s1", 100).release();
+
+        assertDoesNotThrow(() -> quota.reserve("s1", 100));
+    }
+
+    @Test
+    void givenSettledReservation_whenReleased_thenSecondCallIsIgnored() {
+        TokenQuota.Reservation reservation = quota.reserve("s1", 60);
+        reservation.settle(60);
+        reservation.release();
+
+        assertThrows(QuotaExceededException.class, () -> quota.reserve("s1", 60));
+    }
+
+    @Test
+    void givenDifferentApiKeys_whenReserve_thenBudgetsAreSeparate() {
+        authenticate("key-a");
+        quota.reserve("s1", 100);
+        quota.reserve("s2", 100);
+        authenticate("key-b");
+
+        assertDoesNotThrow(() -> quota.reserve("s3", 100));
+        authenticate("key-a");
+        for (int i = 0; i < 8; i++) {
+            quota.reserve("a" + i, 100);
+        }
+        assertThrows(QuotaExceededException.class, () -> quota.reserve("a9", 100));
+        assertEquals(1.0, meterRegistry.get("chat.quota.rejected").tag("scope", "api-key").counter().count());
+    }
+
+    @Test
+    void givenPromptLargerThanBudget_whenReserve_thenChargesWholeBudget() {
+        TokenQuota.Reservation reservation = quota.reserve("s1", 5000);
+
+        assertEquals(1000, reservation.estimatedTokens());
+        assertThrows(QuotaExceededException.class, () -> quota.reserve("s1", 1));
+    }
+
+    @Test
+    void givenDisabledQuota_whenReserve_thenNeverRejects() {
+        TokenQuota disabled = new TokenQuota(false, 1, 1, 10, meterRegistry);
+
+        assertSame(TokenQuota.Reservation.NONE, disabled.reserve("s1", 1_000_000));
+    }
+
+    private void authenticate(String fingerprint) {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(fingerprint, null, List.of()));
+    }
+}
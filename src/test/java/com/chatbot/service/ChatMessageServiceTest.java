@@ -1,23 +1,49 @@
 package com.chatbot.service;
 
+import com.chatbot.common.Constants;
+import com.chatbot.dto.MessageBatchItemResponse;
+import com.chatbot.dto.MessageBatchRequest;
+import com.chatbot.dto.MessageBatchResponse;
+import com.chatbot.dto.MessageImportRequest;
 import com.chatbot.dto.MessageRequest;
 import com.chatbot.dto.MessageResponse;
+import com.chatbot.dto.MessageCursor;
 import com.chatbot.dto.MessagesResponse;
+import com.chatbot.dto.MessagesSliceResponse;
+import com.chatbot.exception.InvalidCursorException;
+import com.chatbot.exception.QuotaExceededException;
 import com.chatbot.exception.SessionNotFoundException;
+import com.chatbot.exception.UpstreamException;
+import com.chatbot.integration.ChatTurn;
 import com.chatbot.integration.ChatbotService;
 import com.chatbot.models.ChatMessage;
 import com.chatbot.repository.ChatMessageRepository;
-import com.chatbot.repository.ChatSessionRepository;
+import com.chatbot.security.TokenQuota;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.data.domain.*;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.BDDMockito.given;
@@ -30,15 +56,37 @@ public class ChatMessageServiceTest {
     private ChatMessageRepository messageRepo;
 
     @Mock
-    private ChatSessionRepository sessionRepo;
+    private SessionRegistry sessionRegistry;
 
     @Mock
     private ChatbotService chatbotService;
 
+    @Mock
+    private ConversationContextBuilder contextBuilder;
+
+    @Mock
+    private ChatMessageWriter messageWriter;
+
+    @Mock
+    private TokenQuota tokenQuota;
+
+    @Spy
+    private SessionLanes sessionLanes = new SessionLanes(mock(ChatMessageRepository.class), new SimpleMeterRegistry(), 100, Duration.ofMinutes(1));
+
+    @Mock
+    private HistoryETags historyETags;
+
+    @Spy
+    private TaskExecutor streamExecutor = new SyncTaskExecutor();
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private ChatMessageService chatMessageService;
 
     private MessageRequest messageRequest;
+    private List<ChatTurn> conversation;
     private ChatMessage returnedMessage;
     private static final String MOCK_SESSION_ID = "mock-session-id";
     private static final String MOCK_USER_MESSAGE = "mock-user-message";
@@ -49,6 +97,8 @@ public class ChatMessageServiceTest {
         messageRequest.setSessionId(MOCK_SESSION_ID);
         messageRequest.setUserMessage(MOCK_USER_MESSAGE);
 
+        conversation = List.of(new ChatTurn(Constants.USER_ROLE, MOCK_USER_MESSAGE));
+
         returnedMessage = new ChatMessage();
         returnedMessage.setSessionId(MOCK_SESSION_ID);
         returnedMessage.setMessage("LLM response to: " + MOCK_USER_MESSAGE);
@@ -59,34 +109,224 @@ public class ChatMessageServiceTest {
 
     @Test
     void givenValidSession_whenSendMessage_thenReturnsMessageResponse() {
-        given(sessionRepo.existsById(MOCK_SESSION_ID)).willReturn(true);
-        given(messageRepo.save(any(ChatMessage.class))).willReturn(returnedMessage);
-        given(chatbotService.ask(MOCK_USER_MESSAGE)).willReturn("BOT response to: " + MOCK_USER_MESSAGE);
+        given(sessionRegistry.exists(MOCK_SESSION_ID)).willReturn(true);
+        given(contextBuilder.prepare(eq(MOCK_SESSION_ID), any(ChatTurn.class))).willReturn(conversation);
+        given(chatbotService.askAsync(eq(conversation), eq(false), any()))
+                .willReturn(CompletableFuture.completedFuture("BOT response to: " + MOCK_USER_MESSAGE));
 
-        MessageResponse response = chatMessageService.sendMessage(messageRequest);
+        MessageResponse response = chatMessageService.sendMessage(messageRequest).join();
 
         assertNotNull(response);
         assertEquals("BOT response to: " + MOCK_USER_MESSAGE, response.getMessage());
 
-        verify(messageRepo, times(2)).save(any(ChatMessage.class));
-        verify(sessionRepo, times(1)).existsById(MOCK_SESSION_ID);
+        verify(messageWriter, times(1)).write(argThat(messages -> isTurn(messages, "BOT response to: " + MOCK_USER_MESSAGE)));
+        verify(sessionRegistry, times(1)).exists(MOCK_SESSION_ID);
+        verify(contextBuilder).record(MOCK_SESSION_ID, new ChatTurn(Constants.ASSISTANT_ROLE, "BOT response to: " + MOCK_USER_MESSAGE), 2L);
+    }
+
+    @Test
+    void givenTurnInFlight_whenSendMessageToSameSession_thenWaitsAndSavesInOrder() {
+        CompletableFuture<String> firstReply = new CompletableFuture<>();
+        given(sessionRegistry.exists(MOCK_SESSION_ID)).willReturn(true);
+        given(contextBuilder.prepare(eq(MOCK_SESSION_ID), any(ChatTurn.class))).willReturn(conversation);
+        given(chatbotService.askAsync(eq(conversation), eq(false), any()))
+                .willReturn(firstReply, CompletableFuture.completedFuture("second"));
+
+        CompletableFuture<MessageResponse> first = chatMessageService.sendMessage(messageRequest);
+        CompletableFuture<MessageResponse> second = chatMessageService.sendMessage(messageRequest);
+
+        // the second turn has not even read the context yet
+        verify(contextBuilder, times(1)).prepare(eq(MOCK_SESSION_ID), any(ChatTurn.class));
+
+        firstReply.complete("first");
+        assertEquals("second", second.join().getMessage());
+        assertTrue(first.isDone());
+        verify(messageWriter).write(argThat(messages -> isTurn(messages, "first") && messages.get(1).getSeq() == 2L));
+        verify(messageWriter).write(argThat(messages -> isTurn(messages, "second") && messages.get(0).getSeq() == 3L));
+    }
+
+    @Test
+    void givenFailedWrite_whenNextTurnSaved_thenItReusesTheSequenceNumbers() {
+        given(sessionRegistry.exists(MOCK_SESSION_ID)).willReturn(true);
+        given(contextBuilder.prepare(eq(MOCK_SESSION_ID), any(ChatTurn.class))).willReturn(conversation);
+        given(chatbotService.askAsync(eq(conversation), eq(false), any()))
+                .willReturn(CompletableFuture.completedFuture("lost"), CompletableFuture.completedFuture("kept"));
+        doThrow(new IllegalStateException("database down")).doNothing().when(messageWriter).write(anyList());
+
+        assertThrows(CompletionException.class, () -> chatMessageService.sendMessage(messageRequest).join());
+        chatMessageService.sendMessage(messageRequest).join();
+
+        verify(messageWriter).write(argThat(messages -> isTurn(messages, "kept") && messages.get(0).getSeq() == 1L));
+        verify(contextBuilder).evict(MOCK_SESSION_ID);
+    }
+
+    @Test
+    void givenUpstreamFailure_whenSendMessage_thenPersistsNothingAndEvictsContext() {
+        given(sessionRegistry.exists(MOCK_SESSION_ID)).willReturn(true);
+        given(contextBuilder.prepare(eq(MOCK_SESSION_ID), any(ChatTurn.class))).willReturn(conversation);
+        given(chatbotService.askAsync(eq(conversation), eq(false), any()))
+                .willReturn(CompletableFuture.failedFuture(new IllegalStateException("boom")));
+
+        CompletableFuture<MessageResponse> response = chatMessageService.sendMessage(messageRequest);
+
+        assertThrows(CompletionException.class, response::join);
+        verify(messageWriter, never()).write(anyList());
+        verify(contextBuilder).evict(MOCK_SESSION_ID);
+    }
+
+    @Test
+    void givenQuotaExhausted_whenSendMessage_thenFailsBeforeUpstreamCallAndEvictsContext() {
+        given(sessionRegistry.exists(MOCK_SESSION_ID)).willReturn(true);
+        given(contextBuilder.prepare(eq(MOCK_SESSION_ID), any(ChatTurn.class))).willReturn(conversation);
+        given(tokenQuota.reserve(eq(MOCK_SESSION_ID), anyLong()))
+                .willThrow(new QuotaExceededException("session " + MOCK_SESSION_ID, Duration.ofSeconds(12)));
+
+        assertThrows(QuotaExceededException.class, () -> chatMessageService.sendMessage(messageRequest));
+
+        verify(chatbotService, never()).askAsync(anyList(), anyBoolean(), any());
+        verify(contextBuilder).evict(MOCK_SESSION_ID);
+    }
+
+    @Test
+    void givenMixedSessions_whenSendMessages_thenReportsPerItemAndSavesAllTurnsInOneWrite() {
+        ReflectionTestUtils.setField(chatMessageService, "batchMaxConcurrency", 4);
+        given(sessionRegistry.existing(anyCollection())).willReturn(Set.of("s1", "s2"));
+        given(contextBuilder.prepare(anyString(), any(ChatTurn.class))).willAnswer(call -> List.of(call.getArgument(1, ChatTurn.class)));
+        given(chatbotService.askAsync(anyList(), eq(false), any())).willAnswer(call ->
+                CompletableFuture.completedFuture("re: " + call.<List<ChatTurn>>getArgument(0).get(0).content()));
+
+        MessageBatchResponse response = chatMessageService.sendMessages(batch("s1:a", "ghost:b", "s2:c", "s1:d")).join();
+
+        assertEquals(List.of(200, 404, 200, 200), response.getItems().stream().map(MessageBatchItemResponse::getStatus).toList());
+        assertEquals("re: d", response.getItems().get(3).getMessage());
+        assertEquals(3, response.getSucceeded());
+        assertEquals(1, response.getFailed());
+        verify(messageWriter, times(1)).write(argThat(messages -> messages.size() == 6));
+        verify(sessionRegistry, never()).exists(anyString());
+        verify(chatbotService, times(3)).askAsync(anyList(), anyBoolean(), any());
+    }
+
+    @Test
+    void givenUpstreamFailureForOneItem_whenSendMessages_thenOthersStillSucceed() {
+        given(sessionRegistry.existing(anyCollection())).willReturn(Set.of("s1", "s2"));
+        given(contextBuilder.prepare(anyString(), any(ChatTurn.class))).willAnswer(call -> List.of(call.getArgument(1, ChatTurn.class)));
+        given(chatbotService.askAsync(anyList(), eq(false), any())).willAnswer(call ->
+                "fail".equals(call.<List<ChatTurn>>getArgument(0).get(0).content())
+                        ? CompletableFuture.failedFuture(new UpstreamException(HttpStatus.BAD_GATEWAY, "Groq returned 500", null))
+                        : CompletableFuture.completedFuture("ok"));
+
+        MessageBatchResponse response = chatMessageService.sendMessages(batch("s1:fail", "s2:fine")).join();
+
+        assertEquals(502, response.getItems().get(0).getStatus());
+        assertEquals("Groq returned 500", response.getItems().get(0).getError());
+        assertEquals(200, response.getItems().get(1).getStatus());
+        verify(messageWriter).write(argThat(messages -> messages.size() == 2));
+        verify(contextBuilder).evict("s1");
+    }
+
+    @Test
+    void givenTwoTurnsOfOneSession_whenSendMessages_thenSecondWaitsForFirstReply() {
+        ReflectionTestUtils.setField(chatMessageService, "batchMaxConcurrency", 4);
+        CompletableFuture<String> firstReply = new CompletableFuture<>();
+        given(sessionRegistry.existing(anyCollection())).willReturn(Set.of("s1", "s2"));
+        given(contextBuilder.prepare(anyString(), any(ChatTurn.class))).willAnswer(call -> List.of(call.getArgument(1, ChatTurn.class)));
+        given(chatbotService.askAsync(anyList(), eq(false), any())).willAnswer(call ->
+                "first".equals(call.<List<ChatTurn>>getArgument(0).get(0).content()) ? firstReply : CompletableFuture.completedFuture("ok"));
+
+        CompletableFuture<MessageBatchResponse> response = chatMessageService.sendMessages(batch("s1:first", "s2:other", "s1:second"));
+
+        // the other session went ahead; the session's second turn did not
+        verify(chatbotService, times(2)).askAsync(anyList(), anyBoolean(), any());
+        assertFalse(response.isDone());
+
+        firstReply.complete("one");
+        assertEquals(3, response.join().getSucceeded());
+        verify(contextBuilder).record(eq("s1"), eq(new ChatTurn(Constants.ASSISTANT_ROLE, "one")), anyLong());
+    }
+
+    @Test
+    void givenValidSession_whenImportMessages_thenBulkInsertsAndEvictsContext() {
+        MessageImportRequest.ImportedMessage question = new MessageImportRequest.ImportedMessage();
+        question.setRole(Constants.USER_ROLE);
+        question.setMessage("hi");
+        MessageImportRequest.ImportedMessage answer = new MessageImportRequest.ImportedMessage();
+        answer.setRole(Constants.ASSISTANT_ROLE);
+        answer.setMessage("hello");
+        MessageImportRequest importRequest = new MessageImportRequest();
+        importRequest.setMessages(List.of(question, answer));
+        given(sessionRegistry.exists(MOCK_SESSION_ID)).willReturn(true);
+        given(messageRepo.bulkInsert(anyList())).willReturn(2);
+
+        int imported = chatMessageService.importMessages(MOCK_SESSION_ID, importRequest);
+
+        assertEquals(2, imported);
+        verify(messageRepo).bulkInsert(argThat(messages -> messages.size() == 2
+                && messages.stream().allMatch(m -> MOCK_SESSION_ID.equals(m.getSessionId()))));
+        verify(contextBuilder).evict(MOCK_SESSION_ID);
     }
 
     @Test
     void givenInvalidSession_whenSendMessage_thenThrowsSessionNotFoundException() {
-        given(sessionRepo.existsById(MOCK_SESSION_ID)).willReturn(false);
+        given(sessionRegistry.exists(MOCK_SESSION_ID)).willReturn(false);
 
         assertThrows(SessionNotFoundException.class, () -> chatMessageService.sendMessage(messageRequest));
 
-        verify(messageRepo, never()).save(any(ChatMessage.class));
-        verify(chatbotService, never()).ask(anyString());
+        verify(messageWriter, never()).write(anyList());
+        verify(chatbotService, never()).askAsync(anyList(), anyBoolean(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenValidSession_whenStreamMessage_thenPersistsUserAndFullAssistantReply() {
+        given(sessionRegistry.exists(MOCK_SESSION_ID)).willReturn(true);
+        given(contextBuilder.prepare(eq(MOCK_SESSION_ID), any(ChatTurn.class))).willReturn(conversation);
+        given(chatbotService.streamAsk(eq(conversation), eq(false), any(), any())).willAnswer(invocation -> {
+            Consumer<String> onToken = invocation.getArgument(3);
+            onToken.accept("BOT ");
+            onToken.accept("response");
+            return "BOT response";
+        });
+
+        SseEmitter emitter = chatMessageService.streamMessage(messageRequest);
+
+        assertNotNull(emitter);
+        verify(chatbotService, times(1)).streamAsk(eq(conversation), eq(false), any(), any(Consumer.class));
+        verify(messageWriter, times(1)).write(argThat(messages -> isTurn(messages, "BOT response")));
+    }
+
+    @Test
+    void givenInvalidSession_whenStreamMessage_thenThrowsBeforeStreaming() {
+        given(sessionRegistry.exists(MOCK_SESSION_ID)).willReturn(false);
+
+        assertThrows(SessionNotFoundException.class, () -> chatMessageService.streamMessage(messageRequest));
+
+        verify(chatbotService, never()).streamAsk(anyList(), anyBoolean(), any(), any());
+        verify(messageWriter, never()).write(anyList());
+    }
+
+    @Test
+    void givenStreamExecutorSaturated_whenStreamMessage_thenReleasesQuotaAndEvictsContext() {
+        TokenQuota realQuota = new TokenQuota(true, 1000, 100, 1000, new SimpleMeterRegistry());
+        TokenQuota.Reservation reservation = realQuota.reserve(MOCK_SESSION_ID, 100);
+        given(sessionRegistry.exists(MOCK_SESSION_ID)).willReturn(true);
+        given(contextBuilder.prepare(eq(MOCK_SESSION_ID), any(ChatTurn.class))).willReturn(conversation);
+        given(tokenQuota.reserve(eq(MOCK_SESSION_ID), anyLong())).willReturn(reservation);
+        doThrow(new TaskRejectedException("stream executor is full")).when(streamExecutor).execute(any(Runnable.class));
+
+        assertThrows(TaskRejectedException.class, () -> chatMessageService.streamMessage(messageRequest));
+
+        verify(contextBuilder).evict(MOCK_SESSION_ID);
+        verify(chatbotService, never()).streamAsk(anyList(), anyBoolean(), any(), any());
+        // the session budget is 100, so this only fits if the rejected turn gave its estimate back
+        assertDoesNotThrow(() -> realQuota.reserve(MOCK_SESSION_ID, 100));
+        assertEquals(0, sessionLanes.activeLanes());
     }
 
     @Test
     void givenValidSessionId_whenListMessages_thenReturnsMessages() {
         Page<ChatMessage> page = new PageImpl<>(List.of(returnedMessage));
-        Pageable pageable = PageRequest.of(0, 10, Sort.Direction.ASC, "createdAt");
-        given(sessionRepo.existsById(MOCK_SESSION_ID)).willReturn(true);
+        Pageable pageable = PageRequest.of(0, 10, Sort.Direction.ASC, "createdAt", "id");
+        given(sessionRegistry.exists(MOCK_SESSION_ID)).willReturn(true);
         when(messageRepo.findBySessionId(MOCK_SESSION_ID, pageable)).thenReturn(page);
 
 
@@ -100,11 +340,87 @@ public class ChatMessageServiceTest {
 
     @Test
     void givenInvalidSessionId_whenListMessages_thenThrowsException() {
-        when(sessionRepo.existsById(MOCK_SESSION_ID)).thenReturn(false);
+        when(sessionRegistry.exists(MOCK_SESSION_ID)).thenReturn(false);
 
         assertThrows(SessionNotFoundException.class, () ->
                 chatMessageService.listMessages(MOCK_SESSION_ID, 1, 10));
 
         verify(messageRepo, never()).findBySessionId(anyString(), any(Pageable.class));
     }
+
+    @Test
+    void givenNoCursor_whenListMessagesByCursor_thenReturnsFirstSliceWithNextCursor() {
+        given(sessionRegistry.exists(MOCK_SESSION_ID)).willReturn(true);
+        given(messageRepo.findFirstSlice(MOCK_SESSION_ID, PageRequest.of(0, 1)))
+                .willReturn(new SliceImpl<>(List.of(returnedMessage), PageRequest.of(0, 1), true));
+
+        MessagesSliceResponse response = chatMessageService.listMessages(MOCK_SESSION_ID, null, 1);
+
+        assertEquals(1, response.getData().size());
+        assertTrue(response.isHasNext());
+        assertFalse(response.isHasPrevious());
+        assertNull(response.getPrevCursor());
+        assertEquals(MessageCursor.after(returnedMessage), MessageCursor.decode(response.getNextCursor()));
+        verify(messageRepo, never()).findBySessionId(anyString(), any(Pageable.class));
+    }
+
+    @Test
+    void givenAfterCursor_whenListMessagesByCursor_thenSeeksPastCursor() {
+        MessageCursor cursor = MessageCursor.after(returnedMessage);
+        given(sessionRegistry.exists(MOCK_SESSION_ID)).willReturn(true);
+        given(messageRepo.findSliceAfter(MOCK_SESSION_ID, cursor.createdAt(), cursor.id(), PageRequest.of(0, 10)))
+                .willReturn(new SliceImpl<>(List.of()));
+
+        MessagesSliceResponse response = chatMessageService.listMessages(MOCK_SESSION_ID, cursor.encode(), 10);
+
+        assertTrue(response.getData().isEmpty());
+        assertTrue(response.isHasPrevious());
+        assertEquals(cursor.encode(), response.getNextCursor());
+    }
+
+    @Test
+    void givenBeforeCursor_whenListMessagesByCursor_thenReturnsOlderMessagesInAscendingOrder() {
+        ChatMessage older = new ChatMessage();
+        older.setSessionId(MOCK_SESSION_ID);
+        older.setMessage("older");
+        older.setCreatedAt(returnedMessage.getCreatedAt().minusSeconds(1));
+        older.setId(0L);
+        MessageCursor cursor = new MessageCursor(MessageCursor.Direction.BEFORE, returnedMessage.getCreatedAt().plusSeconds(1), 2L);
+        given(sessionRegistry.exists(MOCK_SESSION_ID)).willReturn(true);
+        given(messageRepo.findSliceBefore(MOCK_SESSION_ID, cursor.createdAt(), cursor.id(), PageRequest.of(0, 2)))
+                .willReturn(new SliceImpl<>(List.of(returnedMessage, older), PageRequest.of(0, 2), false));
+
+        MessagesSliceResponse response = chatMessageService.listMessages(MOCK_SESSION_ID, cursor.encode(), 2);
+
+        assertEquals("older", response.getData().get(0).getMessage());
+        assertTrue(response.isHasNext());
+        assertFalse(response.isHasPrevious());
+    }
+
+    @Test
+    void givenMalformedCursor_whenListMessagesByCursor_thenThrowsInvalidCursorException() {
+        given(sessionRegistry.exists(MOCK_SESSION_ID)).willReturn(true);
+
+        assertThrows(InvalidCursorException.class, () -> chatMessageService.listMessages(MOCK_SESSION_ID, "not-a-cursor", 10));
+    }
+    // each item is "sessionId:message"
+    private static MessageBatchRequest batch(String... items) {
+        MessageBatchRequest batch = new MessageBatchRequest();
+        batch.setMessages(Arrays.stream(items).map(item -> {
+            MessageRequest request = new MessageRequest();
+            request.setSessionId(item.substring(0, item.indexOf(':')));
+            request.setUserMessage(item.substring(item.indexOf(':') + 1));
+            return request;
+        }).toList());
+        return batch;
+    }
+
+    private static boolean isTurn(List<ChatMessage> messages, String botReply) {
+        return messages.size() == 2
+                && Constants.USER_ROLE.equals(messages.get(0).getRole())
+                && MOCK_USER_MESSAGE.equals(messages.get(0).getMessage())
+                && Constants.ASSISTANT_ROLE.equals(messages.get(1).getRole())
+                && botReply.equals(messages.get(1).getMessage());
+    }
+
 }
@@ -0,0 +1,173 @@
+package com.chatbot.service;
+
+import com.chatbot.models.ChatMessage;
+import com.chatbot.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChatMessageWriterTest {
+
+    @Mock
+    private ChatMessageRepository messageRepo;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ChatMessageWriter writer;
+
+    @AfterEach
+    void tearDown() {
+        writer.close();
+    }
+
+    @Test
+    void givenSyncMode_whenWrite_thenSavesOnCallingThread() {
+        writer = writer(ChatMessageWriter.WriteMode.SYNC, 100, 10, Duration.ofSeconds(5));
+        List<ChatMessage> turn = turn();
+
+        writer.write(turn);
+
+        verify(messageRepo).saveAll(turn);
+    }
+
+    @Test
+    void givenWriteBehind_whenTurnQueued_thenFlushedWithinMaxLag() {
+        writer = writer(ChatMessageWriter.WriteMode.WRITE_BEHIND, 100, 10, Duration.ofMillis(50));
+
+        writer.write(turn());
+
+        verify(messageRepo, timeout(2000)).saveAll(argThat(messages -> sizeOf(messages) == 2));
+        writer.close();
+        assertEquals(1.0, meterRegistry.get("chat.messages.writebehind.flush").timer().count());
+    }
+
+    @Test
+    void givenWriteBehind_whenBatchFills_thenFlushesTurnsTogetherBeforeMaxLag() {
+        writer = writer(ChatMessageWriter.WriteMode.WRITE_BEHIND, 4, 10, Duration.ofMinutes(1));
+
+        writer.write(turn());
+        writer.write(turn());
+
+        verify(messageRepo, timeout(2000)).saveAll(argThat(messages -> sizeOf(messages) == 4));
+    }
+
+    @Test
+    void givenQueuedTurns_whenClose_thenDrainsBeforeReturning() {
+        writer = writer(ChatMessageWriter.WriteMode.WRITE_BEHIND, 100, 10, Duration.ofMinutes(1));
+        writer.write(turn());
+        writer.write(turn());
+        assertEquals(4, writer.unsaved("s1").size());
+
+        writer.close();
+
+        verify(messageRepo).saveAll(argThat(messages -> sizeOf(messages) == 4));
+        assertEquals(0, writer.queueDepth());
+        assertTrue(writer.unsaved("s1").isEmpty());
+    }
+
+    @Test
+    void givenFullQueue_whenWrite_thenFallsBackToInlineSave() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch flushing = new CountDownLatch(1);
+        given(messageRepo.saveAll(anyList())).willAnswer(invocation -> {
+            if (!"chat-message-writer".equals(Thread.currentThread().getName())) {
+                return invocation.getArgument(0);
+            }
+            flushing.countDown();
+            release.await();
+            return invocation.getArgument(0);
+        });
+        writer = writer(ChatMessageWriter.WriteMode.WRITE_BEHIND, 2, 1, Duration.ofMillis(10));
+
+        writer.write(turn());
+        assertTrue(flushing.await(2, TimeUnit.SECONDS));
+        writer.write(turn());
+        writer.write(turn());
+
+        assertEquals(1.0, meterRegistry.get("chat.messages.writebehind.overflow").counter().count());
+        assertEquals(1.0, meterRegistry.get("chat.messages.writebehind.queue.depth").gauge().value());
+        release.countDown();
+    }
+
+    @Test
+    void givenRejectedMessage_whenBatchKeepsFailing_thenSavesTheRestAndDropsIt() {
+        ChatMessage good = message();
+        ChatMessage poison = message();
+        given(messageRepo.saveAll(anyList())).willAnswer(invocation -> {
+            if (invocation.<List<ChatMessage>>getArgument(0).contains(poison)) {
+                throw new DataIntegrityViolationException("value too long");
+            }
+            return invocation.getArgument(0);
+        });
+        writer = writer(ChatMessageWriter.WriteMode.WRITE_BEHIND, 100, 10, Duration.ofMillis(10));
+
+        writer.write(List.of(good, poison));
+
+        verify(messageRepo, timeout(2000)).saveAll(List.of(good));
+        verify(messageRepo, timeout(2000)).saveAll(List.of(poison));
+        writer.close();
+        assertEquals(1.0, meterRegistry.get("chat.messages.writebehind.dropped").counter().count());
+        assertTrue(writer.unsaved("s1").isEmpty());
+    }
+
+    @Test
+    void givenTransientFailure_whenSavingOneByOne_thenKeepsMessageForRetry() {
+        ChatMessage message = message();
+        given(messageRepo.saveAll(anyList()))
+                .willThrow(new QueryTimeoutException("timeout"))
+                .willThrow(new QueryTimeoutException("timeout"))
+                .willThrow(new QueryTimeoutException("timeout"))
+                .willReturn(List.of(message));
+        writer = writer(ChatMessageWriter.WriteMode.WRITE_BEHIND, 100, 10, Duration.ofMillis(10));
+
+        writer.write(List.of(message));
+
+        verify(messageRepo, timeout(2000).times(4)).saveAll(anyList());
+        writer.close();
+        assertEquals(0.0, meterRegistry.get("chat.messages.writebehind.dropped").counter().count());
+        assertTrue(writer.unsaved("s1").isEmpty());
+    }
+
+    private ChatMessageWriter writer(ChatMessageWriter.WriteMode mode, int batchSize, int queueCapacity, Duration maxLag) {
+        return new ChatMessageWriter(messageRepo, transactionManager, meterRegistry, mode, batchSize, queueCapacity,
+                maxLag, 2, Duration.ofMillis(50), Duration.ofSeconds(5));
+    }
+
+    private static List<ChatMessage> turn() {
+        return List.of(message(), message());
+    }
+
+    private static ChatMessage message() {
+        ChatMessage message = new ChatMessage();
+        message.setSessionId("s1");
+        return message;
+    }
+
+    private static int sizeOf(Iterable<ChatMessage> messages) {
+        int size = 0;
+        for (ChatMessage ignored : messages) {
+            size++;
+        }
+        return size;
+    }
+}
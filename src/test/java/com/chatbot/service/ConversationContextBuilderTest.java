@@ -0,0 +1,140 @@
+package com.chatbot.service;
+
+import com.chatbot.common.Constants;
+import com.chatbot.integration.ChatTurn;
+import com.chatbot.models.ChatMessage;
+import com.chatbot.repository.ChatMessageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ConversationContextBuilderTest {
+
+    @Mock
+    private ChatMessageRepository messageRepo;
+
+    @Mock
+    private ChatMessageWriter messageWriter;
+
+    private ConversationContextBuilder contextBuilder;
+
+    private static final String MOCK_SESSION_ID = "mock-session-id";
+
+    @BeforeEach
+    void setUp() {
+        // 100-character messages estimate at 29 tokens each, so a 100-token budget holds three of them
+        contextBuilder = new ConversationContextBuilder(messageRepo, messageWriter, 100, 50, 100, Duration.ofMinutes(30));
+    }
+
+    @Test
+    void givenColdSession_whenPrepare_thenLoadsLatestMessagesOnceOldestFirst() {
+        given(messageRepo.findBySessionIdOrderByCreatedAtDescIdDesc(eq(MOCK_SESSION_ID), any(Pageable.class)))
+                .willReturn(List.of(message(Constants.ASSISTANT_ROLE, "hello"), message(Constants.USER_ROLE, "hi")));
+
+        List<ChatTurn> first = contextBuilder.prepare(MOCK_SESSION_ID, user("how are you?"));
+        contextBuilder.record(MOCK_SESSION_ID, new ChatTurn(Constants.ASSISTANT_ROLE, "fine"), 4L);
+        List<ChatTurn> second = contextBuilder.prepare(MOCK_SESSION_ID, user("great"));
+
+        assertEquals(List.of("hi", "hello", "how are you?"), contents(first));
+        assertEquals(List.of("hi", "hello", "how are you?", "fine", "great"), contents(second));
+        verify(messageRepo, times(1)).findBySessionIdOrderByCreatedAtDescIdDesc(eq(MOCK_SESSION_ID), any(Pageable.class));
+    }
+
+    @Test
+    void givenWindowOverBudget_whenPrepare_thenDropsOldestTurns() {
+        given(messageRepo.findBySessionIdOrderByCreatedAtDescIdDesc(eq(MOCK_SESSION_ID), any(Pageable.class))).willReturn(List.of());
+
+        for (int i = 0; i < 5; i++) {
+            contextBuilder.prepare(MOCK_SESSION_ID, user(i + "x".repeat(99)));
+        }
+        List<ChatTurn> conversation = contextBuilder.prepare(MOCK_SESSION_ID, user("5" + "x".repeat(99)));
+
+        assertEquals(3, conversation.size());
+        assertTrue(conversation.get(0).content().startsWith("3"));
+        assertTrue(conversation.get(2).content().startsWith("5"));
+    }
+
+    @Test
+    void givenSingleMessageOverBudget_whenPrepare_thenStillSendsIt() {
+        given(messageRepo.findBySessionIdOrderByCreatedAtDescIdDesc(eq(MOCK_SESSION_ID), any(Pageable.class))).willReturn(List.of());
+
+        List<ChatTurn> conversation = contextBuilder.prepare(MOCK_SESSION_ID, user("x".repeat(1000)));
+
+        assertEquals(1, conversation.size());
+    }
+
+    @Test
+    void givenEvictedSession_whenPrepare_thenReloadsFromRepository() {
+        given(messageRepo.findBySessionIdOrderByCreatedAtDescIdDesc(eq(MOCK_SESSION_ID), any(Pageable.class))).willReturn(List.of());
+
+        contextBuilder.prepare(MOCK_SESSION_ID, user("one"));
+        contextBuilder.evict(MOCK_SESSION_ID);
+        contextBuilder.prepare(MOCK_SESSION_ID, user("two"));
+
+        verify(messageRepo, times(2)).findBySessionIdOrderByCreatedAtDescIdDesc(eq(MOCK_SESSION_ID), any(Pageable.class));
+    }
+
+    @Test
+    void givenTurnsStoredByAnotherInstance_whenPrepare_thenReloadsTheWindow() {
+        given(messageRepo.findLastSeq(MOCK_SESSION_ID)).willReturn(0L, 2L, 4L);
+        given(messageRepo.findBySessionIdOrderByCreatedAtDescIdDesc(eq(MOCK_SESSION_ID), any(Pageable.class)))
+                .willReturn(List.of(), List.of(message(Constants.ASSISTANT_ROLE, "elsewhere"), message(Constants.USER_ROLE, "hi"),
+                        message(Constants.ASSISTANT_ROLE, "here"), message(Constants.USER_ROLE, "one")));
+
+        contextBuilder.prepare(MOCK_SESSION_ID, user("one"));
+        contextBuilder.record(MOCK_SESSION_ID, new ChatTurn(Constants.ASSISTANT_ROLE, "here"), 2L);
+        // the window has seen up to seq 2, which is what is stored: no reload
+        List<ChatTurn> second = contextBuilder.prepare(MOCK_SESSION_ID, user("hi"));
+        contextBuilder.evict("unrelated");
+        List<ChatTurn> third = contextBuilder.prepare(MOCK_SESSION_ID, user("again"));
+
+        assertEquals(List.of("one", "here", "hi"), contents(second));
+        assertEquals(List.of("one", "here", "hi", "elsewhere", "again"), contents(third));
+        verify(messageRepo, times(2)).findBySessionIdOrderByCreatedAtDescIdDesc(eq(MOCK_SESSION_ID), any(Pageable.class));
+    }
+
+    @Test
+    void givenTurnStillQueuedForWriteBehind_whenColdLoad_thenIncludesIt() {
+        ChatMessage queued = message(Constants.ASSISTANT_ROLE, "queued reply");
+        queued.setSeq(3L);
+        ChatMessage flushedMeanwhile = message(Constants.USER_ROLE, "already stored");
+        flushedMeanwhile.setSeq(2L);
+        given(messageRepo.findLastSeq(MOCK_SESSION_ID)).willReturn(2L);
+        given(messageRepo.findBySessionIdOrderByCreatedAtDescIdDesc(eq(MOCK_SESSION_ID), any(Pageable.class)))
+                .willReturn(List.of(message(Constants.USER_ROLE, "already stored")));
+        given(messageWriter.unsaved(MOCK_SESSION_ID)).willReturn(List.of(flushedMeanwhile, queued));
+
+        List<ChatTurn> conversation = contextBuilder.prepare(MOCK_SESSION_ID, user("next"));
+
+        assertEquals(List.of("already stored", "queued reply", "next"), contents(conversation));
+    }
+
+    private static ChatTurn user(String content) {
+        return new ChatTurn(Constants.USER_ROLE, content);
+    }
+
+    private static ChatMessage message(String role, String content) {
+        ChatMessage message = new ChatMessage();
+        message.setSessionId(MOCK_SESSION_ID);
+        message.setRole(role);
+        message.setMessage(content);
+        return message;
+    }
+
+    private static List<String> contents(List<ChatTurn> turns) {
+        return turns.stream().map(ChatTurn::content).toList();
+    }
+}
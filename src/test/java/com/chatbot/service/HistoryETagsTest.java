@@ -0,0 +1,74 @@
+package com.chatbot.service;
+
+import com.chatbot.repository.ChatMessageRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class HistoryETagsTest {
+
+    @Mock
+    private ChatMessageRepository messageRepo;
+
+    @Test
+    void givenSamePageBounds_whenForPage_thenClosedTagIgnoresAppendsWithoutQuerying() {
+        HistoryETags etags = new HistoryETags(messageRepo);
+
+        HistoryETags.PageETags before = etags.forPage("s1", "cursor", 10);
+        HistoryETags.PageETags after = etags.forPage("s1", "cursor", 10);
+
+        assertEquals(before.closed(), after.closed());
+        assertTrue(before.closed().startsWith("c-"));
+        assertNotEquals(before.closed(), etags.forPage("s1", "cursor", 20).closed());
+        assertNotEquals(before.closed(), etags.forPage("s2", "cursor", 10).closed());
+        verifyNoInteractions(messageRepo);
+    }
+
+    @Test
+    void givenMessageStoredElsewhere_whenForPage_thenOpenTagChangesRightAway() {
+        HistoryETags etags = new HistoryETags(messageRepo);
+        LocalDateTime last = LocalDateTime.of(2025, 1, 1, 12, 0);
+        given(messageRepo.findLastSeq("s1")).willReturn(7L, 9L);
+        given(messageRepo.findLastCreatedAt("s1")).willReturn(last, last.plusSeconds(1));
+
+        String before = etags.forPage("s1", "cursor", 10).open();
+        String after = etags.forPage("s1", "cursor", 10).open();
+
+        assertTrue(before.startsWith("o-7-"));
+        assertTrue(after.startsWith("o-9-"));
+    }
+
+    @Test
+    void givenSameSeqButNewerMessage_whenForPage_thenOpenTagStillChanges() {
+        HistoryETags etags = new HistoryETags(messageRepo);
+        LocalDateTime last = LocalDateTime.of(2025, 1, 1, 12, 0);
+        given(messageRepo.findLastSeq("s1")).willReturn(7L);
+        given(messageRepo.findLastCreatedAt("s1")).willReturn(last, last.plusSeconds(1));
+
+        assertNotEquals(etags.forPage("s1", "cursor", 10).open(), etags.forPage("s1", "cursor", 10).open());
+    }
+
+    @Test
+    void givenIfNoneMatchHeader_whenMatches_thenComparesQuotedTagsWeakly() {
+        assertTrue(HistoryETags.matches("\"a\", \"c-1\"", "c-1"));
+        assertTrue(HistoryETags.matches("W/\"c-1\"", "c-1"));
+        assertTrue(HistoryETags.matches("*", "c-1"));
+        assertFalse(HistoryETags.matches("\"c-12\"", "c-1"));
+        assertFalse(HistoryETags.matches(null, "c-1"));
+    }
+
+    @Test
+    void givenWildcard_whenNames_thenOnlyAnExplicitTagCounts() {
+        assertFalse(HistoryETags.names("*", "c-1"));
+        assertTrue(HistoryETags.names("*, W/\"c-1\"", "c-1"));
+        assertFalse(HistoryETags.names(null, "c-1"));
+    }
+}
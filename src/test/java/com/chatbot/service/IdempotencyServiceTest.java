@@ -0,0 +1,123 @@
+package com.chatbot.service;
+
+import com.chatbot.common.Constants;
+import com.chatbot.dto.MessageRequest;
+import com.chatbot.dto.MessageResponse;
+import com.chatbot.exception.IdempotencyKeyMismatchException;
+import com.chatbot.exception.InvalidIdempotencyKeyException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger calls = new AtomicInteger();
+    private EmbeddedDatabase database;
+
+    @AfterEach
+    void tearDown() {
+        if (database != null) {
+            database.shutdown();
+        }
+    }
+
+    @Test
+    void givenCompletedRequest_whenSameKeyRetried_thenReplaysWithoutCallingAgain() {
+        IdempotencyService service = service(IdempotencyService.StoreMode.MEMORY);
+
+        IdempotencyService.Outcome first = service.execute("k1", request("hi"), reply("hello")).join();
+        IdempotencyService.Outcome retry = service.execute("k1", request("hi"), reply("other")).join();
+
+        assertFalse(first.replayed());
+        assertTrue(retry.replayed());
+        assertEquals("hello", retry.response().getMessage());
+        assertEquals(1, calls.get());
+        assertEquals(1.0, meterRegistry.get("chat.idempotency.replayed").counter().count());
+    }
+
+    @Test
+    void givenRequestInFlight_whenDuplicateArrives_thenWaitsForTheFirstOutcome() {
+        IdempotencyService service = service(IdempotencyService.StoreMode.MEMORY);
+        CompletableFuture<MessageResponse> pending = new CompletableFuture<>();
+
+        CompletableFuture<IdempotencyService.Outcome> first = service.execute("k1", request("hi"), () -> pending);
+        CompletableFuture<IdempotencyService.Outcome> duplicate = service.execute("k1", request("hi"), reply("other"));
+
+        assertFalse(duplicate.isDone());
+        pending.complete(new MessageResponse("s1", "hello", Constants.ASSISTANT_ROLE));
+
+        assertEquals("hello", duplicate.join().response().getMessage());
+        assertFalse(first.join().replayed());
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    void givenFailedRequest_whenRetried_thenRunsAgain() {
+        IdempotencyService service = service(IdempotencyService.StoreMode.MEMORY);
+
+        CompletableFuture<IdempotencyService.Outcome> failed = service.execute("k1", request("hi"),
+                () -> CompletableFuture.failedFuture(new IllegalStateException("boom")));
+        assertThrows(CompletionException.class, failed::join);
+
+        IdempotencyService.Outcome retry = service.execute("k1", request("hi"), reply("hello")).join();
+
+        assertFalse(retry.replayed());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void givenKeyUsedForOtherMessage_whenExecute_thenRefuses() {
+        IdempotencyService service = service(IdempotencyService.StoreMode.MEMORY);
+        service.execute("k1", request("hi"), reply("hello")).join();
+
+        assertThrows(IdempotencyKeyMismatchException.class, () -> service.execute("k1", request("bye"), reply("other")));
+        assertThrows(InvalidIdempotencyKeyException.class, () -> service.execute(" ", request("hi"), reply("other")));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void givenJdbcStore_whenNewInstanceSeesKey_thenReplaysFromTable() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        service(IdempotencyService.StoreMode.JDBC).execute("k1", request("hi"), reply("hello")).join();
+
+        // e.g. another replica, or this one after a restart
+        IdempotencyService other = service(IdempotencyService.StoreMode.JDBC);
+        IdempotencyService.Outcome retry = other.execute("k1", request("hi"), reply("other")).join();
+
+        assertTrue(retry.replayed());
+        assertEquals("hello", retry.response().getMessage());
+        assertEquals(1, calls.get());
+        assertThrows(IdempotencyKeyMismatchException.class,
+                () -> service(IdempotencyService.StoreMode.JDBC).execute("k1", request("bye"), reply("other")));
+    }
+
+    private IdempotencyService service(IdempotencyService.StoreMode store) {
+        return new IdempotencyService(database, meterRegistry, store, 100, Duration.ofHours(1));
+    }
+
+    private Supplier<CompletableFuture<MessageResponse>> reply(String message) {
+        return () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(new MessageResponse("s1", message, Constants.ASSISTANT_ROLE));
+        };
+    }
+
+    private static MessageRequest request(String message) {
+        MessageRequest request = new MessageRequest();
+        request.setSessionId("s1");
+        request.setUserMessage(message);
+        return request;
+    }
+}
@@ -0,0 +1,128 @@
+package com.chatbot.service;
+
+import com.chatbot.common.Constants;
+import com.chatbot.dto.MessageJobResponse;
+import com.chatbot.dto.MessageRequest;
+import com.chatbot.dto.MessageResponse;
+import com.chatbot.exception.JobNotFoundException;
+import com.chatbot.exception.JobQueueFullException;
+import com.chatbot.exception.QuotaExceededException;
+import com.chatbot.exception.SessionNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+class MessageJobServiceTest {
+
+    private static final String MOCK_SESSION_ID = "mock-session-id";
+
+    private final ChatMessageService chatMessageService = mock(ChatMessageService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<Runnable> pending = new ArrayList<>();
+
+    @AfterEach
+    void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void givenSubmittedJob_whenWorkerFinishes_thenPollReturnsResult() {
+        MessageJobService service = service(1, 1, pending::add);
+        given(chatMessageService.sendMessage(any(MessageRequest.class))).willReturn(
+                CompletableFuture.completedFuture(new MessageResponse(MOCK_SESSION_ID, "Hi!", Constants.ASSISTANT_ROLE)));
+
+        MessageJobResponse queued = service.submit(request());
+        CompletableFuture<MessageJobResponse> poll = service.poll(queued.getJobId(), Duration.ofSeconds(5));
+
+        assertEquals(MessageJobResponse.Status.QUEUED, queued.getStatus());
+        assertFalse(poll.isDone());
+        pending.forEach(Runnable::run);
+
+        MessageJobResponse done = poll.join();
+        assertEquals(MessageJobResponse.Status.SUCCEEDED, done.getStatus());
+        assertEquals("Hi!", done.getResult().getMessage());
+    }
+
+    @Test
+    void givenUnfinishedJob_whenPollTimesOut_thenReturnsCurrentState() {
+        MessageJobService service = service(1, 1, pending::add);
+
+        MessageJobResponse queued = service.submit(request());
+
+        assertEquals(MessageJobResponse.Status.QUEUED, service.poll(queued.getJobId(), Duration.ofMillis(20)).join().getStatus());
+        assertEquals(MessageJobResponse.Status.QUEUED, service.poll(queued.getJobId(), Duration.ZERO).join().getStatus());
+    }
+
+    @Test
+    void givenWorkersAndQueueFull_whenSubmit_thenRejectsWithRetryAfter() {
+        MessageJobService service = service(1, 1, pending::add);
+        service.submit(request());
+        service.submit(request());
+
+        JobQueueFullException ex = assertThrows(JobQueueFullException.class, () -> service.submit(request()));
+
+        assertTrue(ex.getRetryAfter().toMillis() > 0);
+        assertEquals(1.0, meterRegistry.get("chat.jobs.rejected").counter().count());
+        assertEquals(2.0, meterRegistry.get("chat.jobs.queued").gauge().value());
+    }
+
+    @Test
+    void givenFailingTurn_whenJobRuns_thenReportsFailureWithHttpStatus() {
+        MessageJobService service = service(1, 1, new SyncTaskExecutor());
+        given(chatMessageService.sendMessage(any(MessageRequest.class)))
+                .willThrow(new QuotaExceededException("session " + MOCK_SESSION_ID, Duration.ofSeconds(3)));
+
+        MessageJobResponse job = service.poll(service.submit(request()).getJobId(), Duration.ZERO).join();
+
+        assertEquals(MessageJobResponse.Status.FAILED, job.getStatus());
+        assertEquals(429, job.getErrorStatus());
+        // the slot is free again
+        assertDoesNotThrow(() -> service.submit(request()));
+    }
+
+    @Test
+    void givenUnknownSession_whenSubmit_thenFailsBeforeQueueing() {
+        MessageJobService service = service(1, 1, pending::add);
+        doThrow(new SessionNotFoundException(MOCK_SESSION_ID)).when(chatMessageService).validateSession(MOCK_SESSION_ID);
+
+        assertThrows(SessionNotFoundException.class, () -> service.submit(request()));
+        assertTrue(pending.isEmpty());
+    }
+
+    @Test
+    void givenJobOfAnotherCaller_whenPoll_thenNotFound() {
+        MessageJobService service = service(1, 1, pending::add);
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("key-alice", null));
+        String jobId = service.submit(request()).getJobId();
+
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("key-bob", null));
+
+        assertThrows(JobNotFoundException.class, () -> service.poll(jobId, Duration.ZERO));
+        assertThrows(JobNotFoundException.class, () -> service.poll("missing", Duration.ZERO));
+    }
+
+    private MessageJobService service(int workers, int queueCapacity, TaskExecutor executor) {
+        return new MessageJobService(chatMessageService, executor, meterRegistry, workers, queueCapacity, 100, Duration.ofMinutes(10));
+    }
+
+    private static MessageRequest request() {
+        MessageRequest request = new MessageRequest();
+        request.setSessionId(MOCK_SESSION_ID);
+        request.setUserMessage("Hello chatbot!");
+        return request;
+    }
+}
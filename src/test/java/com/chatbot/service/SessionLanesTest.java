@@ -0,0 +1,184 @@
+package com.chatbot.service;
+
+import com.chatbot.models.ChatMessage;
+import com.chatbot.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SessionLanesTest {
+
+    @Mock
+    private ChatMessageRepository messageRepo;
+
+    private SimpleMeterRegistry meterRegistry;
+    private SessionLanes lanes;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        lanes = new SessionLanes(messageRepo, meterRegistry, 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void givenBusySession_whenSubmit_thenWaitsForEarlierTurnWhileOtherSessionsRun() {
+        List<String> started = new ArrayList<>();
+        CompletableFuture<String> first = new CompletableFuture<>();
+
+        lanes.submit("s1", () -> { started.add("s1-first"); return first; });
+        CompletableFuture<String> second = lanes.submit("s1", () -> { started.add("s1-second"); return CompletableFuture.completedFuture("two"); });
+        lanes.submit("s2", () -> { started.add("s2"); return CompletableFuture.completedFuture("other"); });
+
+        assertEquals(List.of("s1-first", "s2"), started);
+        assertEquals(1, lanes.activeLanes());
+
+        first.complete("one");
+
+        assertEquals("two", second.join());
+        assertEquals(List.of("s1-first", "s2", "s1-second"), started);
+        assertEquals(0, lanes.activeLanes());
+        assertEquals(1.0, meterRegistry.get("chat.lanes.queued").counter().count());
+    }
+
+    @Test
+    void givenFailedTurn_whenNextTurnQueued_thenStillRuns() {
+        CompletableFuture<String> first = new CompletableFuture<>();
+        lanes.submit("s1", () -> first);
+        CompletableFuture<String> second = lanes.submit("s1", () -> CompletableFuture.completedFuture("two"));
+
+        first.completeExceptionally(new IllegalStateException("boom"));
+
+        assertEquals("two", second.join());
+    }
+
+    @Test
+    void givenIdleSession_whenTurnThrows_thenPropagatesAndFreesTheLane() {
+        assertThrows(IllegalStateException.class, () -> lanes.submit("s1", () -> { throw new IllegalStateException("boom"); }));
+
+        assertEquals(0, lanes.activeLanes());
+        assertEquals("ok", lanes.submit("s1", () -> CompletableFuture.completedFuture("ok")).join());
+    }
+
+    @Test
+    void givenQueuedTurnThatThrows_whenRun_thenFailsItsFutureWithSubmittersContext() {
+        CompletableFuture<String> first = new CompletableFuture<>();
+        lanes.submit("s1", () -> first);
+        AtomicReference<String> caller = new AtomicReference<>();
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("key-1", null));
+        CompletableFuture<String> second;
+        try {
+            second = lanes.submit("s1", () -> {
+                caller.set(SecurityContextHolder.getContext().getAuthentication().getName());
+                throw new IllegalStateException("boom");
+            });
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+
+        first.complete("one");
+
+        CompletionException ex = assertThrows(CompletionException.class, second::join);
+        assertInstanceOf(IllegalStateException.class, ex.getCause());
+        assertEquals("key-1", caller.get());
+    }
+
+    @Test
+    void givenExistingHistory_whenStamp_thenContinuesSequenceAndNeverGoesBackInTime() {
+        given(messageRepo.findLastSeq("s1")).willReturn(4L);
+        LocalDateTime now = LocalDateTime.of(2025, 1, 1, 12, 0);
+        ChatMessage user = message(now);
+        ChatMessage assistant = message(now.plusSeconds(2));
+        ChatMessage late = message(now.plusSeconds(1));
+
+        lanes.stamp("s1", List.of(user, assistant));
+        lanes.stamp("s1", List.of(late));
+
+        assertEquals(List.of(5L, 6L, 7L), List.of(user.getSeq(), assistant.getSeq(), late.getSeq()));
+        assertEquals(now.plusSeconds(2), late.getCreatedAt());
+        verify(messageRepo, times(2)).findLastSeq("s1");
+    }
+
+    @Test
+    void givenTurnsWrittenByAnotherInstance_whenStamp_thenContinuesAfterThem() {
+        LocalDateTime now = LocalDateTime.of(2025, 1, 1, 12, 0);
+        given(messageRepo.findLastSeq("s1")).willReturn(2L, 6L);
+        given(messageRepo.findLastCreatedAt("s1")).willReturn(now, now.plusSeconds(10));
+        ChatMessage here = message(now.plusSeconds(1));
+        ChatMessage afterElsewhere = message(now.plusSeconds(2));
+
+        lanes.stamp("s1", List.of(here));
+        lanes.stamp("s1", List.of(afterElsewhere));
+
+        assertEquals(3L, here.getSeq());
+        assertEquals(7L, afterElsewhere.getSeq());
+        assertEquals(now.plusSeconds(10), afterElsewhere.getCreatedAt());
+    }
+
+    @Test
+    void givenTurnNotYetStored_whenStampAgain_thenLocalCounterWins() {
+        LocalDateTime now = LocalDateTime.of(2025, 1, 1, 12, 0);
+        given(messageRepo.findLastSeq("s1")).willReturn(2L);
+        ChatMessage queued = message(now);
+        ChatMessage next = message(now);
+
+        lanes.stamp("s1", List.of(queued));
+        lanes.stamp("s1", List.of(next));
+
+        assertEquals(4L, next.getSeq());
+    }
+
+    @Test
+    void givenSequenceSeededFromDatabase_whenStamp_thenClampsToStoredHistory() {
+        LocalDateTime lastStored = LocalDateTime.of(2025, 1, 1, 12, 0);
+        given(messageRepo.findLastSeq("s1")).willReturn(4L);
+        given(messageRepo.findLastCreatedAt("s1")).willReturn(lastStored);
+        ChatMessage skewed = message(lastStored.minusSeconds(5));
+
+        lanes.stamp("s1", List.of(skewed));
+
+        assertEquals(5L, skewed.getSeq());
+        assertEquals(lastStored, skewed.getCreatedAt());
+    }
+
+    @Test
+    void givenUnsavedTurn_whenUnstamp_thenOnlyTheLastTurnGivesItsNumbersBack() {
+        LocalDateTime now = LocalDateTime.of(2025, 1, 1, 12, 0);
+        List<ChatMessage> first = List.of(message(now), message(now));
+        List<ChatMessage> second = List.of(message(now), message(now));
+        lanes.stamp("s1", first);
+        lanes.stamp("s1", second);
+
+        lanes.unstamp("s1", first);
+        lanes.unstamp("s1", second);
+        ChatMessage next = message(now);
+        lanes.stamp("s1", List.of(next));
+
+        // the first turn was followed by another one, so its numbers stay taken
+        assertEquals(3L, next.getSeq());
+    }
+
+    private static ChatMessage message(LocalDateTime createdAt) {
+        ChatMessage message = new ChatMessage();
+        message.setSessionId("s1");
+        message.setCreatedAt(createdAt);
+        return message;
+    }
+}
@@ -0,0 +1,68 @@
+package com.chatbot.service;
+
+import com.chatbot.repository.ChatMessageRepository;
+import com.chatbot.repository.ChatSessionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SessionPurgerTest {
+
+    @Mock
+    private ChatSessionRepository sessionRepo;
+
+    @Mock
+    private ChatMessageRepository messageRepo;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SessionPurger purger;
+
+    private static final String DELETED_SESSION_ID = "deleted-session-id";
+
+    @BeforeEach
+    void setUp() {
+        purger = new SessionPurger(sessionRepo, messageRepo, transactionManager, meterRegistry, 1000, 10);
+    }
+
+    @Test
+    void givenDeletedSession_whenPurge_thenDeletesMessagesInChunksThenSession() {
+        given(sessionRepo.findDeletedSessionIds(any(Pageable.class))).willReturn(List.of(DELETED_SESSION_ID));
+        given(messageRepo.deleteChunkBySessionId(DELETED_SESSION_ID, 1000)).willReturn(1000, 1000, 250, 0);
+
+        purger.purgeDeletedSessions();
+
+        InOrder inOrder = inOrder(messageRepo, sessionRepo);
+        inOrder.verify(messageRepo, times(4)).deleteChunkBySessionId(DELETED_SESSION_ID, 1000);
+        inOrder.verify(sessionRepo).deleteById(DELETED_SESSION_ID);
+        assertEquals(2250.0, meterRegistry.get("sessions.purge.messages").counter().count());
+    }
+
+    @Test
+    void givenFailingSession_whenPurge_thenContinuesWithTheNextOne() {
+        given(sessionRepo.findDeletedSessionIds(any(Pageable.class))).willReturn(List.of("broken-session-id", DELETED_SESSION_ID));
+        given(messageRepo.deleteChunkBySessionId("broken-session-id", 1000)).willThrow(new IllegalStateException("boom"));
+        given(messageRepo.deleteChunkBySessionId(DELETED_SESSION_ID, 1000)).willReturn(0);
+
+        purger.purgeDeletedSessions();
+
+        verify(sessionRepo, never()).deleteById("broken-session-id");
+        verify(sessionRepo).deleteById(DELETED_SESSION_ID);
+    }
+}
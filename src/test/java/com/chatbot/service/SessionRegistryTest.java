@@ -0,0 +1,126 @@
+package com.chatbot.service;
+
+import com.chatbot.repository.ChatSessionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SessionRegistryTest {
+
+    @Mock
+    private ChatSessionRepository sessionRepo;
+
+    private SimpleMeterRegistry meterRegistry;
+    private SessionRegistry registry;
+
+    private static final String EXISTING_ID = "existing-session-id";
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        registry = registry(true);
+    }
+
+    @Test
+    void givenLoadedFilter_whenUnknownId_thenRejectedWithoutQuery() {
+        given(sessionRepo.findAllSessionIds()).willReturn(List.of(EXISTING_ID));
+        registry.load();
+
+        assertFalse(registry.exists("never-created"));
+
+        verify(sessionRepo, never()).existsBySessionIdAndDeletedFalse(anyString());
+        assertEquals(1.0, lookups("bloom-rejected"));
+    }
+
+    @Test
+    void givenManyIds_whenExisting_thenQueriesOnlyUnansweredOnesInOneGo() {
+        given(sessionRepo.findAllSessionIds()).willReturn(List.of(EXISTING_ID, "other-id", "deleted-id"));
+        given(sessionRepo.findExistingSessionIds(anyCollection())).willReturn(List.of(EXISTING_ID, "other-id"));
+        registry.load();
+        registry.register("fresh-id");
+
+        Set<String> existing = registry.existing(List.of(EXISTING_ID, "other-id", "deleted-id", "fresh-id", "never-created"));
+
+        assertEquals(Set.of(EXISTING_ID, "other-id", "fresh-id"), existing);
+        verify(sessionRepo, times(1)).findExistingSessionIds(argThat(ids ->
+                ids.size() == 3 && ids.containsAll(List.of(EXISTING_ID, "other-id", "deleted-id"))));
+        assertTrue(registry.exists("other-id"));
+        verify(sessionRepo, never()).existsBySessionIdAndDeletedFalse(anyString());
+    }
+
+    @Test
+    void givenLoadedFilter_whenExistingIdLookedUpTwice_thenQueriesOnce() {
+        given(sessionRepo.findAllSessionIds()).willReturn(List.of(EXISTING_ID));
+        given(sessionRepo.existsBySessionIdAndDeletedFalse(EXISTING_ID)).willReturn(true);
+        registry.load();
+
+        assertTrue(registry.exists(EXISTING_ID));
+        assertTrue(registry.exists(EXISTING_ID));
+
+        verify(sessionRepo, times(1)).existsBySessionIdAndDeletedFalse(EXISTING_ID);
+    }
+
+    @Test
+    void givenRegisteredSession_whenExists_thenAnsweredFromMemory() {
+        given(sessionRepo.findAllSessionIds()).willReturn(List.of());
+        registry.load();
+
+        registry.register("new-session-id");
+
+        assertTrue(registry.exists("new-session-id"));
+        verify(sessionRepo, never()).existsBySessionIdAndDeletedFalse(anyString());
+    }
+
+    @Test
+    void givenEvictedSession_whenExists_thenFallsBackToDatabase() {
+        given(sessionRepo.findAllSessionIds()).willReturn(List.of());
+        given(sessionRepo.existsBySessionIdAndDeletedFalse("deleted-session-id")).willReturn(false);
+        registry.load();
+        registry.register("deleted-session-id");
+
+        registry.evict("deleted-session-id");
+
+        assertFalse(registry.exists("deleted-session-id"));
+        verify(sessionRepo, times(1)).existsBySessionIdAndDeletedFalse("deleted-session-id");
+    }
+
+    @Test
+    void givenFilterNotLoaded_whenUnknownId_thenAsksDatabase() {
+        given(sessionRepo.existsBySessionIdAndDeletedFalse("created-elsewhere")).willReturn(true);
+
+        assertTrue(registry.exists("created-elsewhere"));
+        assertFalse(registry.isKnownAbsent("anything"));
+    }
+
+    @Test
+    void givenBloomDisabled_whenLoad_thenNeverRejectsUpFront() {
+        registry = registry(false);
+        given(sessionRepo.existsBySessionIdAndDeletedFalse("created-elsewhere")).willReturn(true);
+
+        registry.load();
+
+        assertTrue(registry.exists("created-elsewhere"));
+        verify(sessionRepo, never()).findAllSessionIds();
+    }
+
+    private SessionRegistry registry(boolean bloomEnabled) {
+        return new SessionRegistry(sessionRepo, meterRegistry, bloomEnabled, 1000, 0.01, 100, Duration.ofMinutes(5));
+    }
+
+    private double lookups(String result) {
+        return meterRegistry.get("sessions.registry.lookups").tag("result", result).counter().count();
+    }
+}
@@ -11,6 +11,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Optional;
 
@@ -26,6 +27,10 @@ public class SessionServiceTest {
     private ChatSessionRepository sessionRepository;
     @Mock
     private ChatMessageRepository chatMessageRepository;
+    @Mock
+    private ConversationContextBuilder contextBuilder;
+    @Mock
+    private SessionRegistry sessionRegistry;
 
     @InjectMocks
     private SessionService sessionService;
@@ -40,6 +45,7 @@ public class SessionServiceTest {
         mockSession = new ChatSession();
         mockSession.setSessionId(MOCK_SESSION_ID);
         mockSession.setName(MOCK_SESSION_NAME);
+        ReflectionTestUtils.setField(sessionService, "softDeleteThreshold", 1000L);
     }
 
     @Test
@@ -53,11 +59,12 @@ public class SessionServiceTest {
         assertEquals(MOCK_SESSION_NAME, response.getName());
 
         verify(sessionRepository, times(1)).save(any(ChatSession.class));
+        verify(sessionRegistry, times(1)).register(MOCK_SESSION_ID);
     }
 
     @Test
     void givenValidSessionId_whenRename_thenReturnsUpdatedSessionResponse() {
-        given(sessionRepository.findById(MOCK_SESSION_ID)).willReturn(Optional.of(mockSession));
+        given(sessionRepository.findBySessionIdAndDeletedFalse(MOCK_SESSION_ID)).willReturn(Optional.of(mockSession));
         given(sessionRepository.save(any(ChatSession.class))).willReturn(mockSession);
 
         String newName = "New Name";
@@ -67,24 +74,24 @@ public class SessionServiceTest {
         assertEquals(MOCK_SESSION_ID, response.getSessionId());
         assertEquals(newName, response.getName());
 
-        verify(sessionRepository, times(1)).findById(MOCK_SESSION_ID);
+        verify(sessionRepository, times(1)).findBySessionIdAndDeletedFalse(MOCK_SESSION_ID);
         verify(sessionRepository, times(1)).save(any(ChatSession.class));
     }
 
     @Test
     void givenInvalidSessionId_whenRename_thenThrowsSessionNotFoundException() {
-        given(sessionRepository.findById(MOCK_SESSION_ID)).willReturn(Optional.empty());
+        given(sessionRepository.findBySessionIdAndDeletedFalse(MOCK_SESSION_ID)).willReturn(Optional.empty());
 
         assertThrows(SessionNotFoundException.class, () ->
                 sessionService.rename(MOCK_SESSION_ID, "New Name"));
 
-        verify(sessionRepository, times(1)).findById(MOCK_SESSION_ID);
+        verify(sessionRepository, times(1)).findBySessionIdAndDeletedFalse(MOCK_SESSION_ID);
         verify(sessionRepository, never()).save(any());
     }
 
     @Test
     void givenValidSessionId_whenSetFavorite_thenReturnsUpdatedSessionResponse() {
-        given(sessionRepository.findById(MOCK_SESSION_ID)).willReturn(Optional.of(mockSession));
+        given(sessionRepository.findBySessionIdAndDeletedFalse(MOCK_SESSION_ID)).willReturn(Optional.of(mockSession));
         given(sessionRepository.save(any(ChatSession.class))).willReturn(mockSession);
 
         SessionResponse response = sessionService.setFavorite(MOCK_SESSION_ID, true);
@@ -92,36 +99,62 @@ public class SessionServiceTest {
         assertNotNull(response);
         assertTrue(response.isFavorite());
 
-        verify(sessionRepository, times(1)).findById(MOCK_SESSION_ID);
+        verify(sessionRepository, times(1)).findBySessionIdAndDeletedFalse(MOCK_SESSION_ID);
         verify(sessionRepository, times(1)).save(any(ChatSession.class));
     }
 
     @Test
     void givenInvalidSessionId_whenSetFavorite_thenThrowsSessionNotFoundException() {
-        given(sessionRepository.findById(MOCK_SESSION_ID)).willReturn(Optional.empty());
+        given(sessionRepository.findBySessionIdAndDeletedFalse(MOCK_SESSION_ID)).willReturn(Optional.empty());
 
         assertThrows(SessionNotFoundException.class, () ->
                 sessionService.setFavorite(MOCK_SESSION_ID, true));
 
-        verify(sessionRepository, times(1)).findById(MOCK_SESSION_ID);
+        verify(sessionRepository, times(1)).findBySessionIdAndDeletedFalse(MOCK_SESSION_ID);
         verify(sessionRepository, never()).save(any());
     }
 
     @Test
     void givenValidSessionId_whenDeleteSession_thenDeletesMessagesAndSession() {
-        doNothing().when(chatMessageRepository).deleteBySessionId(MOCK_SESSION_ID);
+        given(chatMessageRepository.hasMoreMessagesThan(eq(MOCK_SESSION_ID), anyLong())).willReturn(false);
         doNothing().when(sessionRepository).deleteById(MOCK_SESSION_ID);
-        given(sessionRepository.findById(MOCK_SESSION_ID)).willReturn(Optional.of(mockSession));
+        given(sessionRepository.findBySessionIdAndDeletedFalse(MOCK_SESSION_ID)).willReturn(Optional.of(mockSession));
 
         sessionService.deleteSession(MOCK_SESSION_ID);
 
         verify(chatMessageRepository, times(1)).deleteBySessionId(MOCK_SESSION_ID);
         verify(sessionRepository, times(1)).deleteById(MOCK_SESSION_ID);
+        verify(contextBuilder, times(1)).evict(MOCK_SESSION_ID);
+        verify(sessionRegistry, times(1)).evict(MOCK_SESSION_ID);
+    }
+
+    @Test
+    void givenIdRejectedByRegistry_whenRename_thenThrowsWithoutQuery() {
+        given(sessionRegistry.isKnownAbsent(MOCK_SESSION_ID)).willReturn(true);
+
+        assertThrows(SessionNotFoundException.class, () -> sessionService.rename(MOCK_SESSION_ID, "New Name"));
+
+        verify(sessionRepository, never()).findBySessionIdAndDeletedFalse(any());
+        verify(sessionRepository, never()).save(any());
+    }
+
+    @Test
+    void givenSessionAboveSoftThreshold_whenDeleteSession_thenOnlyMarksItDeleted() {
+        given(sessionRepository.findBySessionIdAndDeletedFalse(MOCK_SESSION_ID)).willReturn(Optional.of(mockSession));
+        given(chatMessageRepository.hasMoreMessagesThan(eq(MOCK_SESSION_ID), anyLong())).willReturn(true);
+
+        sessionService.deleteSession(MOCK_SESSION_ID);
+
+        verify(sessionRepository, times(1)).markDeleted(MOCK_SESSION_ID);
+        verify(chatMessageRepository, never()).deleteBySessionId(anyString());
+        verify(sessionRepository, never()).deleteById(anyString());
+        verify(sessionRegistry, times(1)).evict(MOCK_SESSION_ID);
+        verify(contextBuilder, times(1)).evict(MOCK_SESSION_ID);
     }
 
     @Test
     void givenInvalidSessionId_whenDeleteSession_thenThrowsSessionNotFoundException() {
-        given(sessionRepository.findById(MOCK_SESSION_ID)).willReturn(Optional.empty());
+        given(sessionRepository.findBySessionIdAndDeletedFalse(MOCK_SESSION_ID)).willReturn(Optional.empty());
 
         assertThrows(SessionNotFoundException.class, () -> sessionService.deleteSession(MOCK_SESSION_ID));
 